@@ -0,0 +1,20 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+dependencies {
+    jmhImplementation(project(":core"))
+}
+
+// Run with ./gradlew :benchmarks:jmh, or e.g. -Pjmh.includes=processFile to run a subset
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Reports allocation rates (gc.alloc.rate.norm is bytes per operation)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    findProperty("jmh.includes")?.let { includes.add(it.toString()) }
+}
@@ -0,0 +1,121 @@
+package com.rlogman.varrefactoring.benchmarks;
+
+import com.rlogman.varrefactoring.core.DeclarationScanner;
+import com.rlogman.varrefactoring.core.Declarations;
+import com.rlogman.varrefactoring.core.EditScript;
+import com.rlogman.varrefactoring.core.InitializerTypeClassifier;
+import com.rlogman.varrefactoring.core.JavaParserTypeReplacer;
+import com.rlogman.varrefactoring.core.JavaTypeReplacer;
+import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.ScopeIndex;
+import com.rlogman.varrefactoring.core.VarEligibilityChecker;
+import com.rlogman.varrefactoring.core.VarRefactoringProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the 'var' refactoring pipeline and the whole of it, on
+ * generated files from 1 KB to 5 MB.
+ * <p>
+ * The stages run on inputs prepared in {@link #setUp()}, so each benchmark measures
+ * one stage only: scanning declarations, classifying offsets as local scope,
+ * inferring initializer types, checking eligibility, and {@code processFile}.
+ * The syntactic and JavaParser engines are also compared on the same files; both infer
+ * initializer types with an {@link InitializerTypeClassifier}, so they differ only in how
+ * declarations are found. Run with the GC profiler (configured in the build) to see bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CorePipelineBenchmark {
+
+    @Param({"1KB", "16KB", "256KB", "1MB", "5MB"})
+    public String size;
+
+    private String source;
+    private Declarations declarations;
+    private ScopeIndex scopes;
+    private String[] declarationTypes;
+    private String[] initializerTypes;
+    private boolean[] locals;
+
+    private final DeclarationScanner scanner = new DeclarationScanner();
+    private final InitializerTypeClassifier classifier = new InitializerTypeClassifier();
+    private final VarEligibilityChecker checker = new VarEligibilityChecker(new RefactoringOptions());
+    private final VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions());
+    private final JavaTypeReplacer syntacticEngine = new JavaTypeReplacer();
+    private final JavaParserTypeReplacer javaParserEngine = new JavaParserTypeReplacer();
+
+    @Setup
+    public void setUp() {
+        source = SourceFiles.generate(SourceFiles.parseSize(size));
+        declarations = scanner.scan(source);
+        scopes = ScopeIndex.build(source);
+
+        int count = declarations.size();
+        declarationTypes = new String[count];
+        initializerTypes = new String[count];
+        locals = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            declarationTypes[i] = classifier.typeName(source, declarations.typeStart(i), declarations.typeEnd(i));
+            String initializerType = classifier.classify(
+                source, declarations.initializerStart(i), declarations.initializerEnd(i));
+            initializerTypes[i] = initializerType == null ? JavaTypeReplacer.UNKNOWN_TYPE : initializerType;
+            locals[i] = scopes.isInCodeBody(declarations.typeStart(i));
+        }
+    }
+
+    @Benchmark
+    public Declarations scanDeclarations() {
+        return scanner.scan(source);
+    }
+
+    @Benchmark
+    public void classifyLocalScope(Blackhole blackhole) {
+        ScopeIndex index = ScopeIndex.build(source);
+        for (int i = 0; i < declarations.size(); i++) {
+            blackhole.consume(index.isInCodeBody(declarations.typeStart(i)));
+        }
+    }
+
+    @Benchmark
+    public void inferInitializerTypes(Blackhole blackhole) {
+        for (int i = 0; i < declarations.size(); i++) {
+            blackhole.consume(classifier.typeName(source, declarations.typeStart(i), declarations.typeEnd(i)));
+            blackhole.consume(classifier.classify(
+                source, declarations.initializerStart(i), declarations.initializerEnd(i)));
+        }
+    }
+
+    @Benchmark
+    public void checkEligibility(Blackhole blackhole) {
+        for (int i = 0; i < declarationTypes.length; i++) {
+            blackhole.consume(checker.isEligibleForVarReplacement(
+                declarationTypes[i], initializerTypes[i], locals[i], declarations.isLoopVariable(i)));
+        }
+    }
+
+    @Benchmark
+    public String processFile() {
+        return processor.processFile(source, "17");
+    }
+
+    @Benchmark
+    public EditScript syntacticEngine() {
+        return syntacticEngine.findReplacements(source, checker::isEligibleForVarReplacement);
+    }
+
+    @Benchmark
+    public EditScript javaParserEngine() {
+        return javaParserEngine.findReplacements(source, checker::isEligibleForVarReplacement);
+    }
+}
@@ -0,0 +1,145 @@
+package com.rlogman.varrefactoring.benchmarks;
+
+import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.TypeSymbolTable;
+import com.rlogman.varrefactoring.core.VarEligibilityChecker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compiled eligibility decision table with the chain of option tests and
+ * string comparisons it replaced, over a million declarations.
+ * <p>
+ * Type names are shared instances, as they are when they come from an
+ * {@code InitializerTypeClassifier}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EligibilityBenchmark {
+    private static final int DECLARATIONS = 1_000_000;
+
+    private static final String[][] TYPE_PAIRS = {
+        {"String", "String"}, {"int", "int"}, {"long", "long"}, {"int", "long"},
+        {"boolean", "boolean"}, {"StringBuilder", "StringBuilder"}, {"Object", "String"},
+        {"List<String>", "ArrayList<String>"}, {"Map<String, Integer>", "Object"},
+        {"Map<String, List<Integer>>", "Map<String, List<Integer>>"}, {"CharSequence", "Object"},
+    };
+
+    private final RefactoringOptions options = new RefactoringOptions();
+    private final VarEligibilityChecker checker = new VarEligibilityChecker(options);
+
+    private String[] declarationTypes;
+    private String[] initializerTypes;
+    private boolean[] locals;
+    private boolean[] loopVariables;
+    private int[] features;
+    private int[] declarationTypeIds;
+    private int[] initializerTypeIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        declarationTypes = new String[DECLARATIONS];
+        initializerTypes = new String[DECLARATIONS];
+        locals = new boolean[DECLARATIONS];
+        loopVariables = new boolean[DECLARATIONS];
+        features = new int[DECLARATIONS];
+        declarationTypeIds = new int[DECLARATIONS];
+        initializerTypeIds = new int[DECLARATIONS];
+        TypeSymbolTable symbols = new TypeSymbolTable();
+        for (int i = 0; i < DECLARATIONS; i++) {
+            String[] pair = TYPE_PAIRS[random.nextInt(TYPE_PAIRS.length)];
+            declarationTypes[i] = pair[0];
+            initializerTypes[i] = pair[1];
+            locals[i] = random.nextInt(10) != 0;
+            loopVariables[i] = random.nextInt(20) == 0;
+            features[i] = VarEligibilityChecker.features(pair[0], pair[1], locals[i], loopVariables[i]);
+            declarationTypeIds[i] = symbols.id(pair[0]);
+            initializerTypeIds[i] = symbols.id(pair[1]);
+        }
+    }
+
+    @Benchmark
+    public int ruleChain() {
+        int eligible = 0;
+        for (int i = 0; i < DECLARATIONS; i++) {
+            if (ruleChain(declarationTypes[i], initializerTypes[i], locals[i], loopVariables[i])) {
+                eligible++;
+            }
+        }
+        return eligible;
+    }
+
+    @Benchmark
+    public int decisionTable() {
+        int eligible = 0;
+        for (int i = 0; i < DECLARATIONS; i++) {
+            if (checker.isEligibleForVarReplacement(declarationTypes[i], initializerTypes[i], locals[i], loopVariables[i])) {
+                eligible++;
+            }
+        }
+        return eligible;
+    }
+
+    /**
+     * Types compared by their IDs in a {@link TypeSymbolTable}.
+     */
+    @Benchmark
+    public int typeSymbolIds() {
+        int eligible = 0;
+        for (int i = 0; i < DECLARATIONS; i++) {
+            if (checker.isEligibleForVarReplacement(
+                    declarationTypeIds[i], initializerTypeIds[i], locals[i], loopVariables[i])) {
+                eligible++;
+            }
+        }
+        return eligible;
+    }
+
+    /**
+     * The lookup alone, for declarations whose features are already known.
+     */
+    @Benchmark
+    public int decisionTableLookup() {
+        int eligible = 0;
+        for (int i = 0; i < DECLARATIONS; i++) {
+            if (checker.isEligible(features[i])) {
+                eligible++;
+            }
+        }
+        return eligible;
+    }
+
+    /**
+     * The eligibility check as written before the decision table.
+     */
+    private boolean ruleChain(String declarationType, String initializerType, boolean isLocal, boolean isLoopVariable) {
+        if (!isLocal) {
+            return false;
+        }
+        if (isLoopVariable && !options.isAllowForLoopVars()) {
+            return false;
+        }
+        boolean hasDiamondOperator = declarationType.contains("<>") || declarationType.endsWith("<>");
+        if (hasDiamondOperator && !options.isAllowDiamondOperator()) {
+            return false;
+        }
+        boolean primitive = declarationType.equals("int") || declarationType.equals("long")
+            || declarationType.equals("short") || declarationType.equals("byte")
+            || declarationType.equals("char") || declarationType.equals("float")
+            || declarationType.equals("double") || declarationType.equals("boolean");
+        if (primitive && !options.isAllowPrimitiveTypes()) {
+            return false;
+        }
+        return options.isAllowDifferentTypes() || declarationType.equals(initializerType);
+    }
+}
@@ -0,0 +1,71 @@
+package com.rlogman.varrefactoring.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates Java source files of a given size for the benchmarks.
+ * <p>
+ * Files mix fields, locals with literal, constructor and method call initializers,
+ * for-loops, lambdas and generic types, so that every stage of the pipeline does
+ * representative work. A fixed seed keeps files identical across runs.
+ */
+final class SourceFiles {
+    private static final long SEED = 42L;
+
+    private static final String[] STATEMENTS = {
+        "        String text%d = \"value\";\n",
+        "        int count%d = 42;\n",
+        "        long total%d = 42L;\n",
+        "        double ratio%d = 0.5;\n",
+        "        StringBuilder builder%d = new StringBuilder();\n",
+        "        List<String> names%d = new ArrayList<String>();\n",
+        "        Map<String, Integer> counts%d = new HashMap<>();\n",
+        "        Object object%d = \"text\";\n",
+        "        String computed%d = compute();\n",
+        "        for (int i%d = 0; i%<d < 10; i%<d++) { total += i%<d; }\n",
+        "        Runnable task%d = () -> { String inner = \"x\"; };\n",
+        "        // String comment%d = \"not a declaration\";\n",
+        "        int[] values%d = { 1, 2, 3 };\n",
+    };
+
+    private SourceFiles() {
+    }
+
+    /**
+     * Parse a size such as {@code 1KB} or {@code 5MB}.
+     */
+    static int parseSize(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 20;
+        }
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) << 10;
+        }
+        return Integer.parseInt(size);
+    }
+
+    /**
+     * @param size Approximate number of characters of the file
+     * @return A syntactically valid Java class of about that size
+     */
+    static String generate(int size) {
+        Random random = new Random(SEED);
+        StringBuilder source = new StringBuilder(size + 1024);
+        source.append("package bench;\n\nimport java.util.*;\n\npublic class Generated {\n")
+            .append("    private String field = \"field\";\n")
+            .append("    private final List<String> items = new ArrayList<String>();\n\n")
+            .append("    String compute() { return \"computed\"; }\n\n");
+        int method = 0;
+        int statement = 0;
+        while (source.length() < size) {
+            source.append("    void method").append(method++).append("() {\n")
+                .append("        long total = 0;\n");
+            int statements = 5 + random.nextInt(20);
+            for (int i = 0; i < statements; i++) {
+                source.append(String.format(STATEMENTS[random.nextInt(STATEMENTS.length)], statement++));
+            }
+            source.append("    }\n\n");
+        }
+        return source.append("}\n").toString();
+    }
+}
@@ -0,0 +1,35 @@
+plugins {
+    id("java")
+    id("application")
+}
+
+sourceSets {
+    main {
+        java {
+            srcDirs("src/main/java")
+        }
+    }
+    test {
+        java {
+            srcDirs("src/test/java")
+        }
+    }
+}
+
+dependencies {
+    implementation(project(":core"))
+
+    // Test dependencies
+    testImplementation("org.junit.jupiter:junit-jupiter-api:5.10.1")
+    testImplementation("org.junit.jupiter:junit-jupiter-engine:5.10.1")
+    testImplementation("org.assertj:assertj-core:3.24.2")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+application {
+    mainClass.set("com.rlogman.varrefactoring.cli.VarRefactoringCli")
+    applicationName = "var-refactor"
+}
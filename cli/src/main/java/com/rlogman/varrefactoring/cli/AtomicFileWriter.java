@@ -0,0 +1,70 @@
+package com.rlogman.varrefactoring.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * Writes files so that readers never observe a partially written file.
+ * <p>
+ * The content goes to a temporary file in the target's directory, which is then
+ * renamed over the target. If the process dies midway, the original file is intact.
+ */
+final class AtomicFileWriter {
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * Replace the content of a file atomically.
+     *
+     * @param target File to replace
+     * @param content New content, the bytes between the position and the limit of the buffer
+     * @throws IOException If the content cannot be written or moved into place
+     */
+    static void write(Path target, ByteBuffer content) throws IOException {
+        Path temporary = createTemporary(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            moveOver(temporary, target);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Create an empty temporary file in the directory of a target, for content that is
+     * written in several steps before {@link #moveOver(Path, Path)} puts it in place.
+     * The caller deletes the file if it is not moved.
+     */
+    static Path createTemporary(Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+    }
+
+    /**
+     * Replace a target with a complete temporary file, atomically where the file system can.
+     */
+    static void moveOver(Path temporary, Path target) throws IOException {
+        // Temporary files are created owner-only; keep the permissions of the original
+        if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Some file systems cannot rename atomically; a plain replace is the best we can do
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.rlogman.varrefactoring.cli;
+
+import com.rlogman.varrefactoring.core.SourceFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source file on disk, read through a memory-mapped {@link FileChannel} when it is large.
+ * <p>
+ * Mapping avoids copying big files through an intermediate heap buffer; small files
+ * are read directly, since setting up a mapping costs more than the copy it saves.
+ * The processor reads the bytes without decoding them as long as the code is ASCII.
+ */
+class MappedSourceFile implements SourceFile {
+    /** Files at least this large are memory-mapped. */
+    static final long MAPPING_THRESHOLD = 64 * 1024;
+
+    private final Path path;
+
+    MappedSourceFile(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return path.toString();
+    }
+
+    @Override
+    public String readContent() throws IOException {
+        return StandardCharsets.UTF_8.decode(readUtf8()).toString();
+    }
+
+    @Override
+    public ByteBuffer readUtf8() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAPPING_THRESHOLD) {
+                return ByteBuffer.wrap(Files.readAllBytes(path));
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+}
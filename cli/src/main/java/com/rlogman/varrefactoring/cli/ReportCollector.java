@@ -0,0 +1,46 @@
+package com.rlogman.varrefactoring.cli;
+
+import com.rlogman.varrefactoring.core.CandidateReport;
+import com.rlogman.varrefactoring.core.VarEligibilityChecker.RejectionReason;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the candidate reports of all files of a run and lists the files with declarations
+ * that could use 'var'; safe for use by the worker threads.
+ */
+class ReportCollector {
+    private static final RejectionReason[] REASONS = RejectionReason.values();
+
+    private final PrintStream out;
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[REASONS.length];
+
+    ReportCollector(PrintStream out) {
+        this.out = out;
+        for (int i = 0; i < REASONS.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    void add(String name, CandidateReport report) {
+        int fileAccepted = report.acceptedCount();
+        candidates.add(report.size());
+        accepted.add(fileAccepted);
+        for (RejectionReason reason : REASONS) {
+            rejected[reason.ordinal()].add(report.rejectedCount(reason));
+        }
+        if (fileAccepted > 0) {
+            out.println(name + ": " + fileAccepted + " of " + report.size());
+        }
+    }
+
+    void print() {
+        out.printf("%d candidates: %d could use var%n", candidates.sum(), accepted.sum());
+        for (RejectionReason reason : REASONS) {
+            out.printf("  rejected %-14s %d%n", reason, rejected[reason.ordinal()].sum());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.rlogman.varrefactoring.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A zip or jar archive of Java sources, such as a {@code -sources.jar}, whose sources are
+ * processed as the archive is read, without extracting anything to disk.
+ * <p>
+ * The archive is read with a {@link ZipFile}, so only the entry at hand is held in memory,
+ * and the metadata of its central directory is at hand as well. A rewritten archive goes
+ * to a temporary file next to the original, which is moved over it once it is complete,
+ * as {@link AtomicFileWriter} does for single files. Entries keep their compression
+ * method, time, comment and extra fields, and the archive keeps its comment; the CRC
+ * and size of an entry only change with its content. Deflated entries are compressed
+ * again, though, so an archive is only replaced if one of its sources changed.
+ */
+final class SourceArchive {
+    private static final String SOURCE_SUFFIX = ".java";
+
+    /**
+     * Receives the content of each Java source of an archive.
+     */
+    @FunctionalInterface
+    interface SourceHandler {
+        /**
+         * @param name Name of the entry in the archive
+         * @param content The UTF-8 content of the entry
+         * @return The content for a rewritten archive, {@code content} itself if it is unchanged
+         */
+        byte[] handle(String name, byte[] content) throws IOException;
+    }
+
+    private final Path path;
+
+    SourceArchive(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return A name identifying an entry of the archive in output and error messages
+     */
+    String entryName(String name) {
+        return path + "!/" + name;
+    }
+
+    /**
+     * Pass every Java source of the archive to a handler, in archive order, ignoring the
+     * content it returns.
+     *
+     * @throws IOException If the archive cannot be read, or the handler fails
+     */
+    void read(SourceHandler handler) throws IOException {
+        try (ZipFile zip = open()) {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if (isSource(entry)) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        handler.handle(entry.getName(), in.readAllBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pass every Java source of the archive to a handler, in archive order, and replace the
+     * archive with one holding the returned contents if any of them differs.
+     *
+     * @return The number of sources that changed
+     * @throws IOException If the archive cannot be read or replaced, or the handler fails;
+     *                     the archive is then left as it was
+     */
+    int rewrite(SourceHandler handler) throws IOException {
+        Path temporary = AtomicFileWriter.createTemporary(path);
+        try {
+            int changed = 0;
+            try (ZipFile zip = open();
+                 ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.setComment(zip.getComment());
+                for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                    ZipEntry entry = entries.nextElement();
+                    ZipEntry copy = new ZipEntry(entry);
+                    if (copy.getMethod() != ZipEntry.STORED) {
+                        // Left for the stream to fill in, since compressing again may differ
+                        copy.setCompressedSize(-1);
+                    }
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        if (isSource(entry)) {
+                            byte[] content = in.readAllBytes();
+                            byte[] result = handler.handle(entry.getName(), content);
+                            if (result != content) {
+                                changed++;
+                                describe(copy, result);
+                            }
+                            out.putNextEntry(copy);
+                            out.write(result);
+                        } else {
+                            out.putNextEntry(copy);
+                            in.transferTo(out);
+                        }
+                    }
+                    out.closeEntry();
+                }
+            }
+            if (changed > 0) {
+                AtomicFileWriter.moveOver(temporary, path);
+            }
+            return changed;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private ZipFile open() throws IOException {
+        return new ZipFile(path.toFile());
+    }
+
+    /**
+     * Set the size and CRC of an entry whose content changed, which a stored entry needs
+     * before it is written.
+     */
+    private static void describe(ZipEntry entry, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        if (entry.getMethod() == ZipEntry.STORED) {
+            entry.setCompressedSize(content.length);
+        }
+    }
+
+    private static boolean isSource(ZipEntry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(SOURCE_SUFFIX);
+    }
+}
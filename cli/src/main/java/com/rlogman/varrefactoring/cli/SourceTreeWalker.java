@@ -0,0 +1,81 @@
+package com.rlogman.varrefactoring.cli;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the source files below a root directory that match include/exclude globs.
+ * <p>
+ * Globs use {@link FileSystem#getPathMatcher(String) glob syntax} and are matched
+ * against the path relative to the root, so {@code **.java} selects every Java file
+ * and {@code build/**} skips a top-level build directory. A directory matching an
+ * exclude glob is not descended into.
+ */
+class SourceTreeWalker {
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    SourceTreeWalker(FileSystem fileSystem, List<String> includeGlobs, List<String> excludeGlobs) {
+        for (String glob : includeGlobs) {
+            includes.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+        for (String glob : excludeGlobs) {
+            excludes.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+    }
+
+    /**
+     * Walk the tree below {@code root}.
+     *
+     * @param root Directory to walk, or a single file
+     * @return The matching regular files, in walk order
+     * @throws IOException If the root cannot be read
+     */
+    List<Path> walk(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (!directory.equals(root) && matchesAny(excludes, root.relativize(directory))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                // A root that is a file is matched by its name
+                Path relative = file.equals(root) ? file.getFileName() : root.relativize(file);
+                if (attributes.isRegularFile() && matchesAny(includes, relative) && !matchesAny(excludes, relative)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // An unreadable entry should not abort a whole-repository run
+                System.err.println("Skipping " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
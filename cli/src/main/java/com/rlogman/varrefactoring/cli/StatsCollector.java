@@ -0,0 +1,70 @@
+package com.rlogman.varrefactoring.cli;
+
+import com.rlogman.varrefactoring.core.FileStats;
+import com.rlogman.varrefactoring.core.ProcessingListener;
+import com.rlogman.varrefactoring.core.VarEligibilityChecker.RejectionReason;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the statistics of all files of a run; safe for use by the worker threads.
+ */
+class StatsCollector implements ProcessingListener {
+    private static final RejectionReason[] REASONS = RejectionReason.values();
+    private static final FileStats.Phase[] PHASES = FileStats.Phase.values();
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    /** Bytes of the files read as UTF-8 bytes; files given as characters have no byte count. */
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder undecided = new LongAdder();
+    private final LongAdder[] rejected = adders(REASONS.length);
+    private final LongAdder[] nanos = adders(PHASES.length);
+
+    @Override
+    public void fileProcessed(FileStats stats) {
+        files.increment();
+        if (stats.isCached()) {
+            cached.increment();
+        }
+        characters.add(stats.getCharactersScanned());
+        if (stats.getBytesScanned() >= 0) {
+            bytes.add(stats.getBytesScanned());
+        }
+        candidates.add(stats.getCandidates());
+        accepted.add(stats.getAccepted());
+        undecided.add(stats.getUndecided());
+        for (RejectionReason reason : REASONS) {
+            rejected[reason.ordinal()].add(stats.getRejected(reason));
+        }
+        for (FileStats.Phase phase : PHASES) {
+            nanos[phase.ordinal()].add(stats.getNanos(phase));
+        }
+    }
+
+    void print(PrintStream out) {
+        out.printf("%d files (%d cached), %d characters, %d bytes%n",
+            files.sum(), cached.sum(), characters.sum(), bytes.sum());
+        out.printf("%d candidates: %d accepted, %d undecided by the first engine%n",
+            candidates.sum(), accepted.sum(), undecided.sum());
+        for (RejectionReason reason : REASONS) {
+            out.printf("  rejected %-14s %d%n", reason, rejected[reason.ordinal()].sum());
+        }
+        out.println("Time per phase, summed over all threads:");
+        for (FileStats.Phase phase : PHASES) {
+            out.printf("  %-10s %10.1f ms%n", phase, nanos[phase.ordinal()].sum() / 1_000_000.0);
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
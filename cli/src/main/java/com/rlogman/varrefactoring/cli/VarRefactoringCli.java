@@ -0,0 +1,335 @@
+package com.rlogman.varrefactoring.cli;
+
+import com.rlogman.varrefactoring.common.ResultCache;
+import com.rlogman.varrefactoring.core.FileResult;
+import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.SourceFile;
+import com.rlogman.varrefactoring.core.VarRefactoringProcessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Command line entry point that applies the var refactoring to a directory tree.
+ * This makes the refactoring usable in CI pipelines without an IDE.
+ * <p>
+ * With {@code --archives}, the files found are zip or jar archives of sources, whose
+ * Java entries are processed without extracting them.
+ * <p>
+ * Usage: {@code var-refactor [options] <directory>...}
+ */
+public class VarRefactoringCli {
+    private static final String DEFAULT_INCLUDE = "**.java";
+    private static final String DEFAULT_ARCHIVE_INCLUDE = "**.{jar,zip}";
+    private static final long CACHE_SIZE = 256L * 1024 * 1024;
+
+    private final List<Path> roots = new ArrayList<>();
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private String javaVersion = "17";
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean dryRun;
+    private boolean printStats;
+    private boolean reportOnly;
+    private boolean archives;
+    private Path cacheFile;
+
+    /**
+     * Main entry point for the command line tool.
+     */
+    public static void main(String[] args) {
+        System.exit(execute(args));
+    }
+
+    /**
+     * Parse the arguments and run the refactoring.
+     *
+     * @return The process exit code: 0 on success, 1 if any file failed, 2 for invalid
+     *         arguments or an error that stopped the run, 130 if the run was interrupted
+     */
+    static int execute(String[] args) {
+        VarRefactoringCli cli = new VarRefactoringCli();
+        try {
+            cli.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            return 2;
+        }
+
+        try {
+            return cli.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+    }
+
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--include":
+                    includes.add(value(args, ++i, arg));
+                    break;
+                case "--exclude":
+                    excludes.add(value(args, ++i, arg));
+                    break;
+                case "--java-version":
+                    javaVersion = value(args, ++i, arg);
+                    break;
+                case "--parallelism":
+                    try {
+                        parallelism = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid parallelism: " + args[i]);
+                    }
+                    if (parallelism < 1) {
+                        throw new IllegalArgumentException("Parallelism must be at least 1");
+                    }
+                    break;
+                case "--cache":
+                    cacheFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--dry-run":
+                    dryRun = true;
+                    break;
+                case "--stats":
+                    printStats = true;
+                    break;
+                case "--report":
+                    reportOnly = true;
+                    break;
+                case "--archives":
+                    archives = true;
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    roots.add(Paths.get(arg));
+            }
+        }
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("No directory given");
+        }
+        if (includes.isEmpty()) {
+            includes.add(archives ? DEFAULT_ARCHIVE_INCLUDE : DEFAULT_INCLUDE);
+        }
+    }
+
+    /**
+     * Refactor every matching file below the configured roots and print a summary.
+     *
+     * @return The process exit code: 0 on success, 1 if any file failed
+     */
+    int run() throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+
+        SourceTreeWalker walker = new SourceTreeWalker(FileSystems.getDefault(), includes, excludes);
+        List<Path> paths = new ArrayList<>();
+        for (Path root : roots) {
+            paths.addAll(walker.walk(root));
+        }
+        if (archives) {
+            return processArchives(paths, startTime);
+        }
+        List<MappedSourceFile> files = new ArrayList<>();
+        for (Path path : paths) {
+            files.add(new MappedSourceFile(path));
+        }
+
+        if (reportOnly) {
+            return report(files, startTime);
+        }
+
+        AtomicInteger modified = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        StatsCollector stats = printStats ? new StatsCollector() : null;
+        try (ResultCache cache = cacheFile == null ? null : ResultCache.open(cacheFile, CACHE_SIZE)) {
+            VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions(), cache);
+            processor.setProcessingListener(stats);
+            processor.processFiles(files.iterator(), javaVersion, parallelism, (file, result) -> {
+                if (!result.isSuccess()) {
+                    failed.incrementAndGet();
+                    System.err.println("Failed " + file.getName() + ": " + result.getError());
+                } else if (result.isModified()) {
+                    if (write(file, result)) {
+                        modified.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("%d files processed, %d %s, %d failed in %.2f s (%.0f files/s)%n",
+            files.size(), modified.get(), dryRun ? "would change" : "changed", failed.get(),
+            seconds, seconds > 0 ? files.size() / seconds : 0.0);
+        if (stats != null) {
+            stats.print(System.out);
+        }
+
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Count the declarations that could use 'var' without rewriting or writing any file.
+     * Files with such declarations are listed with their counts.
+     *
+     * @return The process exit code: 0 on success, 1 if any file failed
+     */
+    private int report(List<? extends SourceFile> files, long startTime) throws InterruptedException {
+        ReportCollector report = new ReportCollector(System.out);
+        AtomicInteger failed = new AtomicInteger();
+
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions());
+        processor.analyzeFiles(files.iterator(), javaVersion, parallelism, (file, result) -> {
+            if (!result.isSuccess()) {
+                failed.incrementAndGet();
+                System.err.println("Failed " + file.getName() + ": " + result.getError());
+                return;
+            }
+            report.add(file.getName(), result.getReport());
+        });
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        System.out.printf("%d files analyzed, %d failed in %.2f s (%.0f files/s)%n",
+            files.size(), failed.get(), seconds, seconds > 0 ? files.size() / seconds : 0.0);
+        report.print();
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Refactor, or with {@code --report} count, the Java sources in each archive. Archives are
+     * processed in parallel, the sources of one archive in order as the archive is read.
+     *
+     * @return The process exit code: 0 on success, 1 if any archive or source failed
+     */
+    private int processArchives(List<Path> paths, long startTime) throws IOException, InterruptedException {
+        AtomicInteger sources = new AtomicInteger();
+        AtomicInteger modified = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ReportCollector report = reportOnly ? new ReportCollector(System.out) : null;
+        StatsCollector stats = printStats && !reportOnly ? new StatsCollector() : null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (ResultCache cache = cacheFile == null || reportOnly ? null : ResultCache.open(cacheFile, CACHE_SIZE)) {
+            VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions(), cache);
+            processor.setProcessingListener(stats);
+            for (Path path : paths) {
+                SourceArchive archive = new SourceArchive(path);
+                SourceArchive.SourceHandler handler = (name, content) -> {
+                    sources.incrementAndGet();
+                    try {
+                        if (report != null) {
+                            report.add(archive.entryName(name),
+                                processor.analyze(ByteBuffer.wrap(content), javaVersion));
+                            return content;
+                        }
+                        byte[] result = processor.processFile(content, javaVersion);
+                        if (result != content) {
+                            modified.incrementAndGet();
+                            if (dryRun) {
+                                System.out.println(archive.entryName(name));
+                            }
+                        }
+                        return result;
+                    } catch (RuntimeException | StackOverflowError e) {
+                        failed.incrementAndGet();
+                        System.err.println("Failed " + archive.entryName(name) + ": " + e);
+                        return content;
+                    }
+                };
+                executor.execute(() -> {
+                    try {
+                        if (reportOnly || dryRun) {
+                            archive.read(handler);
+                        } else {
+                            archive.rewrite(handler);
+                        }
+                    } catch (IOException | UncheckedIOException e) {
+                        failed.incrementAndGet();
+                        System.err.println("Failed " + path + ": " + e.getMessage());
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        if (report != null) {
+            System.out.printf("%d sources in %d archives analyzed, %d failed in %.2f s (%.0f files/s)%n",
+                sources.get(), paths.size(), failed.get(), seconds, seconds > 0 ? sources.get() / seconds : 0.0);
+            report.print();
+        } else {
+            System.out.printf("%d sources in %d archives processed, %d %s, %d failed in %.2f s (%.0f files/s)%n",
+                sources.get(), paths.size(), modified.get(), dryRun ? "would change" : "changed", failed.get(),
+                seconds, seconds > 0 ? sources.get() / seconds : 0.0);
+        }
+        if (stats != null) {
+            stats.print(System.out);
+        }
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Write a refactored file back, or just list it in a dry run.
+     *
+     * @return Whether the file was written (or would have been)
+     */
+    private boolean write(MappedSourceFile file, FileResult result) {
+        if (dryRun) {
+            System.out.println(file.getName());
+            return true;
+        }
+        try {
+            AtomicFileWriter.write(file.getPath(), result.getUtf8Content());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: var-refactor [options] <directory>...");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println("  --include <glob>       Files to refactor, relative to the directory (default: " + DEFAULT_INCLUDE + ")");
+        System.err.println("  --exclude <glob>       Files or directories to skip; may be repeated");
+        System.err.println("  --java-version <n>     Java version of the sources (default: 17)");
+        System.err.println("  --parallelism <n>      Number of worker threads (default: number of processors)");
+        System.err.println("  --cache <file>         Reuse results of earlier runs stored in this file");
+        System.err.println("  --dry-run              List the files that would change without writing them");
+        System.err.println("  --stats                Print candidates, rejection reasons and time per phase");
+        System.err.println("  --report               Count the declarations that could use var without changing files");
+        System.err.println("  --archives             Process the Java sources in zip and jar archives (default include: "
+            + DEFAULT_ARCHIVE_INCLUDE + ")");
+    }
+}
@@ -0,0 +1,91 @@
+package com.rlogman.varrefactoring.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AtomicFileWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplaceContentWithoutLeavingTemporaryFile() throws IOException {
+        // Given
+        Path target = Files.writeString(directory.resolve("Main.java"), "class Main { String s = \"s\"; }");
+        ByteBuffer content = ByteBuffer.wrap("class Main { var s = \"s\"; }".getBytes(StandardCharsets.UTF_8));
+
+        // When
+        AtomicFileWriter.write(target, content);
+
+        // Then
+        assertThat(Files.readString(target)).isEqualTo("class Main { var s = \"s\"; }");
+        assertThat(list(directory)).containsExactly(target);
+    }
+
+    @Test
+    void shouldCreateTemporaryFileNextToTarget() throws IOException {
+        // Given
+        Path target = directory.resolve("Main.java");
+
+        // When
+        Path temporary = AtomicFileWriter.createTemporary(target);
+
+        // Then
+        assertThat(temporary.getParent()).isEqualTo(directory.toAbsolutePath());
+        assertThat(temporary.getFileName().toString()).startsWith(".Main.java");
+        assertThat(Files.size(temporary)).isZero();
+    }
+
+    @Test
+    void shouldMoveTemporaryFileOverTarget() throws IOException {
+        // Given
+        Path target = Files.writeString(directory.resolve("Main.java"), "old");
+        Path temporary = AtomicFileWriter.createTemporary(target);
+        Files.writeString(temporary, "new");
+
+        // When
+        AtomicFileWriter.moveOver(temporary, target);
+
+        // Then
+        assertThat(Files.readString(target)).isEqualTo("new");
+        assertThat(Files.exists(temporary)).isFalse();
+    }
+
+    @Test
+    void shouldKeepPermissionsOfTarget() throws IOException {
+        // Given
+        assumeTrue(Files.getFileStore(directory).supportsFileAttributeView(PosixFileAttributeView.class));
+        Path target = Files.writeString(directory.resolve("run.sh"), "echo old");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+        Files.setPosixFilePermissions(target, permissions);
+
+        // When
+        AtomicFileWriter.write(target, ByteBuffer.wrap("echo new".getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertThat(Files.readString(target)).isEqualTo("echo new");
+        assertThat(Files.getPosixFilePermissions(target)).isEqualTo(permissions);
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
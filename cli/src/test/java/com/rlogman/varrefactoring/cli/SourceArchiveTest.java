@@ -0,0 +1,166 @@
+package com.rlogman.varrefactoring.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceArchiveTest {
+
+    private static final String CODE = "class A { void m() { String s = \"s\"; } }";
+    private static final String REFACTORED = "class A { void m() { var s = \"s\"; } }";
+    private static final String UNCHANGED = "class B { }";
+    private static final long TIME = 1_600_000_000_000L;
+    // An extra field with header id 0x7777 and two bytes of data
+    private static final byte[] EXTRA = {0x77, 0x77, 2, 0, 1, 2};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReadSourcesInArchiveOrder() throws IOException {
+        // Given
+        SourceArchive archive = new SourceArchive(createArchive());
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+
+        // When
+        archive.read((name, content) -> {
+            names.add(name);
+            contents.add(new String(content, StandardCharsets.UTF_8));
+            return content;
+        });
+
+        // Then
+        assertThat(names).containsExactly("com/example/A.java", "com/example/B.java");
+        assertThat(contents).containsExactly(CODE, UNCHANGED);
+        assertThat(archive.entryName("com/example/A.java")).isEqualTo(archive.getPath() + "!/com/example/A.java");
+    }
+
+    @Test
+    void shouldRewriteChangedSourcesAndKeepEntryMetadata() throws IOException {
+        // Given
+        Path path = createArchive();
+        SourceArchive archive = new SourceArchive(path);
+
+        // When
+        int changed = archive.rewrite((name, content) -> name.endsWith("A.java")
+            ? REFACTORED.getBytes(StandardCharsets.UTF_8) : content);
+
+        // Then
+        assertThat(changed).isEqualTo(1);
+        assertThat(list(directory)).containsExactly(path);
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            assertThat(zip.getComment()).isEqualTo("sources");
+            assertThat(zip.stream().map(ZipEntry::getName).collect(Collectors.toList()))
+                .containsExactly("META-INF/MANIFEST.MF", "com/example/A.java", "com/example/B.java");
+
+            ZipEntry manifest = zip.getEntry("META-INF/MANIFEST.MF");
+            byte[] manifestContent = "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8);
+            assertThat(manifest.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(manifest.getSize()).isEqualTo(manifestContent.length);
+            assertThat(manifest.getCrc()).isEqualTo(crc(manifestContent));
+            assertThat(manifest.getComment()).isEqualTo("manifest");
+            assertThat(manifest.getExtra()).isEqualTo(EXTRA);
+            assertThat(manifest.getTime()).isEqualTo(TIME);
+            assertThat(zip.getInputStream(manifest).readAllBytes()).isEqualTo(manifestContent);
+
+            ZipEntry changedSource = zip.getEntry("com/example/A.java");
+            byte[] refactored = REFACTORED.getBytes(StandardCharsets.UTF_8);
+            assertThat(changedSource.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(changedSource.getSize()).isEqualTo(refactored.length);
+            assertThat(changedSource.getCrc()).isEqualTo(crc(refactored));
+            assertThat(changedSource.getComment()).isEqualTo("refactorable");
+            assertThat(zip.getInputStream(changedSource).readAllBytes()).isEqualTo(refactored);
+
+            ZipEntry unchangedSource = zip.getEntry("com/example/B.java");
+            byte[] unchanged = UNCHANGED.getBytes(StandardCharsets.UTF_8);
+            assertThat(unchangedSource.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(unchangedSource.getCrc()).isEqualTo(crc(unchanged));
+            assertThat(zip.getInputStream(unchangedSource).readAllBytes()).isEqualTo(unchanged);
+        }
+    }
+
+    @Test
+    void shouldLeaveArchiveAsItWasWithoutChanges() throws IOException {
+        // Given
+        Path path = createArchive();
+        byte[] original = Files.readAllBytes(path);
+        SourceArchive archive = new SourceArchive(path);
+
+        // When
+        int changed = archive.rewrite((name, content) -> content);
+
+        // Then
+        assertThat(changed).isZero();
+        assertThat(Files.readAllBytes(path)).isEqualTo(original);
+        assertThat(list(directory)).containsExactly(path);
+    }
+
+    /**
+     * Build a jar in memory with a stored manifest that has a comment and an extra
+     * field, a deflated source to refactor, and a stored source to leave as it is.
+     */
+    private Path createArchive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.setComment("sources");
+
+            byte[] manifestContent = "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8);
+            ZipEntry manifest = stored("META-INF/MANIFEST.MF", manifestContent);
+            manifest.setComment("manifest");
+            manifest.setExtra(EXTRA);
+            out.putNextEntry(manifest);
+            out.write(manifestContent);
+            out.closeEntry();
+
+            ZipEntry source = new ZipEntry("com/example/A.java");
+            source.setTime(TIME);
+            source.setComment("refactorable");
+            out.putNextEntry(source);
+            out.write(CODE.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            byte[] unchanged = UNCHANGED.getBytes(StandardCharsets.UTF_8);
+            out.putNextEntry(stored("com/example/B.java", unchanged));
+            out.write(unchanged);
+            out.closeEntry();
+        }
+        return Files.write(directory.resolve("sources.jar"), bytes.toByteArray());
+    }
+
+    private static ZipEntry stored(String name, byte[] content) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc(content));
+        entry.setTime(TIME);
+        return entry;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
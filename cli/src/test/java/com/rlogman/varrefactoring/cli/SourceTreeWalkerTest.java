@@ -0,0 +1,83 @@
+package com.rlogman.varrefactoring.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceTreeWalkerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void shouldSelectFilesMatchingIncludesButNoExclude() throws IOException {
+        // Given
+        Path main = createFile("src/main/Main.java");
+        createFile("src/main/notes.txt");
+        createFile("src/main/Generated.java");
+        Path test = createFile("src/test/MainTest.java");
+        SourceTreeWalker walker = new SourceTreeWalker(FileSystems.getDefault(),
+            List.of("**.java"), List.of("**/Generated.java"));
+
+        // When
+        List<Path> files = walker.walk(root);
+
+        // Then
+        assertThat(files).containsExactlyInAnyOrder(main, test);
+    }
+
+    @Test
+    void shouldMatchGlobsAgainstPathRelativeToRoot() throws IOException {
+        // Given
+        Path nested = createFile("src/Main.java");
+        createFile("Top.java");
+        SourceTreeWalker walker = new SourceTreeWalker(FileSystems.getDefault(), List.of("src/*.java"), List.of());
+
+        // When
+        List<Path> files = walker.walk(root);
+
+        // Then
+        assertThat(files).containsExactly(nested);
+    }
+
+    @Test
+    void shouldNotDescendIntoExcludedDirectory() throws IOException {
+        // Given
+        Path source = createFile("src/Main.java");
+        createFile("build/generated/Stub.java");
+        // Only the directory matches, not the files in it, so they are only skipped if it is
+        SourceTreeWalker walker = new SourceTreeWalker(FileSystems.getDefault(), List.of("**.java"), List.of("build"));
+
+        // When
+        List<Path> files = walker.walk(root);
+
+        // Then
+        assertThat(files).containsExactly(source);
+    }
+
+    @Test
+    void shouldMatchRootFileByName() throws IOException {
+        // Given
+        Path file = createFile("Main.java");
+        SourceTreeWalker walker = new SourceTreeWalker(FileSystems.getDefault(), List.of("*.java"), List.of());
+
+        // When
+        List<Path> files = walker.walk(file);
+
+        // Then
+        assertThat(files).containsExactly(file);
+    }
+
+    private Path createFile(String relative) throws IOException {
+        Path file = root.resolve(relative);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, "class Test { }");
+    }
+}
@@ -0,0 +1,177 @@
+package com.rlogman.varrefactoring.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VarRefactoringCliTest {
+
+    private static final String CODE = "class Main { void run() { String text = \"text\"; } }";
+    private static final String REFACTORED = "class Main { void run() { var text = \"text\"; } }";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRejectUnknownOption() {
+        // Given
+        VarRefactoringCli cli = new VarRefactoringCli();
+
+        // When / Then
+        assertThatThrownBy(() -> cli.parseArguments(new String[] {"--verbose", "src"}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Unknown option: --verbose");
+    }
+
+    @Test
+    void shouldRejectOptionWithoutValue() {
+        // Given
+        VarRefactoringCli cli = new VarRefactoringCli();
+
+        // When / Then
+        assertThatThrownBy(() -> cli.parseArguments(new String[] {"src", "--include"}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Missing value for --include");
+    }
+
+    @Test
+    void shouldRejectInvalidParallelism() {
+        // Given
+        VarRefactoringCli cli = new VarRefactoringCli();
+
+        // When / Then
+        assertThatThrownBy(() -> cli.parseArguments(new String[] {"--parallelism", "many", "src"}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Invalid parallelism: many");
+        assertThatThrownBy(() -> cli.parseArguments(new String[] {"--parallelism", "0", "src"}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Parallelism must be at least 1");
+    }
+
+    @Test
+    void shouldRequireDirectory() {
+        // Given
+        VarRefactoringCli cli = new VarRefactoringCli();
+
+        // When / Then
+        assertThatThrownBy(() -> cli.parseArguments(new String[] {"--dry-run"}))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("No directory given");
+    }
+
+    @Test
+    void shouldExitWithTwoForInvalidArguments() {
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--unknown", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRefactorMatchingFilesAndExitWithZero() throws IOException {
+        // Given
+        Path source = Files.writeString(directory.resolve("Main.java"), CODE);
+        Files.createDirectories(directory.resolve("generated"));
+        Path excluded = Files.writeString(directory.resolve("generated/Main.java"), CODE);
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {
+            "--exclude", "generated", "--parallelism", "2", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isZero();
+        assertThat(Files.readString(source)).isEqualTo(REFACTORED);
+        assertThat(Files.readString(excluded)).isEqualTo(CODE);
+    }
+
+    @Test
+    void shouldNotWriteFilesInDryRun() throws IOException {
+        // Given
+        Path source = Files.writeString(directory.resolve("Main.java"), CODE);
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--dry-run", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isZero();
+        assertThat(Files.readString(source)).isEqualTo(CODE);
+    }
+
+    @Test
+    void shouldNotRefactorForJavaVersionWithoutVar() throws IOException {
+        // Given
+        Path source = Files.writeString(directory.resolve("Main.java"), CODE);
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--java-version", "8", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isZero();
+        assertThat(Files.readString(source)).isEqualTo(CODE);
+    }
+
+    @Test
+    void shouldRefactorSourcesInArchives() throws IOException {
+        // Given
+        Path archive = directory.resolve("sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("Main.java"));
+            out.write(CODE.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--archives", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isZero();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            byte[] content = zip.getInputStream(zip.getEntry("Main.java")).readAllBytes();
+            assertThat(new String(content, StandardCharsets.UTF_8)).isEqualTo(REFACTORED);
+        }
+    }
+
+    @Test
+    void shouldExitWithOneWhenArchiveCannotBeRead() throws IOException {
+        // Given
+        // A deflated entry whose data is not valid deflate data, and no central directory
+        ByteBuffer archive = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        archive.putInt(0x04034b50).putShort((short) 20).putShort((short) 0).putShort((short) ZipEntry.DEFLATED);
+        archive.putInt(0).putInt(0).putInt(8).putInt(8).putShort((short) 6).putShort((short) 0);
+        archive.put("A.java".getBytes(StandardCharsets.US_ASCII)).putLong(-1);
+        Files.write(directory.resolve("broken.jar"), Arrays.copyOf(archive.array(), archive.position()));
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--archives", directory.toString()});
+
+        // Then
+        assertThat(exitCode).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExitWithTwoWhenCacheCannotBeOpened() throws IOException {
+        // Given
+        Files.writeString(directory.resolve("Main.java"), CODE);
+        Path cache = directory.resolve("missing/cache.bin");
+
+        // When
+        int exitCode = VarRefactoringCli.execute(new String[] {"--cache", cache.toString(), directory.toString()});
+
+        // Then
+        assertThat(exitCode).isEqualTo(2);
+    }
+}
@@ -0,0 +1,108 @@
+package com.rlogman.varrefactoring.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Key of a {@link ResultCache} entry: a SHA-256 digest over the file content and
+ * everything else that determines the refactoring result.
+ * <p>
+ * Two runs share an entry only if the content, the options fingerprint, the Java
+ * version and the engine version are all equal, so a cached result can never be
+ * stale; changing any of them simply misses the cache.
+ */
+public final class CacheKey {
+    /** Length of a key in bytes. */
+    public static final int LENGTH = 32;
+
+    private static final int CHUNK_CHARS = 4096;
+
+    private final byte[] bytes;
+    private final int hash;
+
+    private CacheKey(byte[] bytes) {
+        this.bytes = bytes;
+        // The digest is uniformly distributed, so any four bytes make a good hash code
+        this.hash = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Compute the key of a refactoring result.
+     *
+     * @param content The source code that was refactored
+     * @param optionsFingerprint A string identifying the refactoring options
+     * @param javaVersion The Java version of the source code
+     * @param engineVersion The version of the engine that produced the result
+     * @return The key
+     */
+    public static CacheKey of(CharSequence content, String optionsFingerprint, String javaVersion, String engineVersion) {
+        MessageDigest digest = sha256();
+        update(digest, optionsFingerprint);
+        update(digest, javaVersion);
+        update(digest, engineVersion);
+
+        // Hash the UTF-16 code units in chunks instead of encoding the whole file at once
+        byte[] chunk = new byte[CHUNK_CHARS * 2];
+        int length = content.length();
+        for (int start = 0; start < length; start += CHUNK_CHARS) {
+            int end = Math.min(length, start + CHUNK_CHARS);
+            int size = 0;
+            for (int i = start; i < end; i++) {
+                char c = content.charAt(i);
+                chunk[size++] = (byte) (c >>> 8);
+                chunk[size++] = (byte) c;
+            }
+            digest.update(chunk, 0, size);
+        }
+        return new CacheKey(digest.digest());
+    }
+
+    static CacheKey fromBytes(byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("Cache keys have " + LENGTH + " bytes, got " + bytes.length);
+        }
+        return new CacheKey(bytes.clone());
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof CacheKey && Arrays.equals(bytes, ((CacheKey) other).bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder(LENGTH * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // Length-prefix every field so that ("ab", "c") and ("a", "bc") differ
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int length = encoded.length;
+        digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(encoded);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.rlogman.varrefactoring.common;
+
+/**
+ * The edits stored in a {@link ResultCache} entry: offset and length of every replaced
+ * span of a file, in ascending order. An entry without edits records that the file
+ * has no candidates.
+ */
+public final class CachedEdits {
+    /** Entry of a file without candidates. */
+    public static final CachedEdits NONE = new CachedEdits(new int[0], new int[0]);
+
+    private final int[] offsets;
+    private final int[] lengths;
+
+    /**
+     * @param offsets Offsets of the replaced spans; the array is not copied
+     * @param lengths Lengths of the replaced spans; the array is not copied
+     */
+    public CachedEdits(int[] offsets, int[] lengths) {
+        if (offsets.length != lengths.length) {
+            throw new IllegalArgumentException("Got " + offsets.length + " offsets but " + lengths.length + " lengths");
+        }
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * @return The number of edits
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /** Offset of the first replaced character. */
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    /** Number of replaced characters. */
+    public int length(int index) {
+        return lengths[index];
+    }
+}
@@ -0,0 +1,315 @@
+package com.rlogman.varrefactoring.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent, content-addressed cache of refactoring results, shared by all front-ends.
+ * <p>
+ * Entries live in a single append-only file that is accessed through a memory mapping.
+ * The file starts with a header (magic and format version) followed by records:
+ * <pre>
+ *   int payloadLength, int crc32(payload), payload
+ *   payload = byte[32] key, int count, int[count] offsets, int[count] lengths
+ * </pre>
+ * A zero length marks the end of the records. Writing a key again appends a new
+ * record that supersedes the old one.
+ * <p>
+ * <b>Crash safety:</b> on open, records are validated in order and everything from the
+ * first truncated or corrupt record onwards is discarded. Because keys are content
+ * addresses, every record that passes its checksum is a correct result, so a crash can
+ * lose entries but never produce a wrong one. {@link #flush()} forces the mapping to
+ * disk for durability across power loss; a process crash loses nothing that was written.
+ * <p>
+ * <b>Eviction:</b> the file never grows beyond the configured size. When an append would
+ * exceed it, the store is compacted in place: superseded records are dropped and only
+ * the most recently used entries that fit into half the size are kept. An entry is used
+ * when it is written or read; the order of use is kept in memory, and a reopened cache
+ * starts from the order of the records in the file.
+ * <p>
+ * A cache file can be used by one process at a time; instances are thread-safe.
+ */
+public final class ResultCache implements Closeable {
+    private static final int MAGIC = 0x56524331; // "VRC1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_PAYLOAD_SIZE = CacheKey.LENGTH + 4;
+    private static final int INITIAL_MAPPING = 1 << 20;
+    /** Smallest accepted size limit; below this eviction would run on almost every write. */
+    private static final long MIN_SIZE = 64 * 1024;
+
+    private final int maxBytes;
+    private final FileChannel channel;
+    private final FileLock lock;
+    /** Record positions, iterated from the least to the most recently used entry. */
+    private final Map<CacheKey, Integer> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer buffer;
+    /** Offset right after the last valid record. */
+    private int end;
+
+    private ResultCache(FileChannel channel, FileLock lock, int maxBytes) {
+        this.channel = channel;
+        this.lock = lock;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Open a cache file, creating it if needed and recovering from an interrupted write.
+     *
+     * @param file The cache file
+     * @param maxBytes Upper bound for the size of the file
+     * @return The open cache
+     * @throws IOException If the file cannot be opened or is in use by another process
+     */
+    public static ResultCache open(Path file, long maxBytes) throws IOException {
+        if (maxBytes < MIN_SIZE || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache size must be between " + MIN_SIZE + " and " + Integer.MAX_VALUE + " bytes");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("Cache file is in use: " + file);
+            }
+
+            ResultCache cache = new ResultCache(channel, lock, (int) maxBytes);
+            cache.recover();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Look up the edits stored for a key, marking the entry as used.
+     *
+     * @param key The key
+     * @return The stored edits, or null on a cache miss
+     */
+    public synchronized CachedEdits get(CacheKey key) {
+        Integer position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+
+        int payload = position + RECORD_HEADER_SIZE;
+        int count = buffer.getInt(payload + CacheKey.LENGTH);
+        if (count == 0) {
+            return CachedEdits.NONE;
+        }
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        int values = payload + MIN_PAYLOAD_SIZE;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = buffer.getInt(values + 4 * i);
+            lengths[i] = buffer.getInt(values + 4 * (count + i));
+        }
+        return new CachedEdits(offsets, lengths);
+    }
+
+    /**
+     * Store the edits for a key. Results too large for the cache are not stored.
+     *
+     * @param key The key
+     * @param edits The edits, or {@link CachedEdits#NONE} for a file without candidates
+     * @throws IOException If the mapping cannot be extended
+     */
+    public synchronized void put(CacheKey key, CachedEdits edits) throws IOException {
+        int count = edits.size();
+        long recordSize = RECORD_HEADER_SIZE + MIN_PAYLOAD_SIZE + 8L * count;
+        // After compaction at most half of the file is in use, so a record of up to
+        // the other half (including the end marker) always fits
+        if (recordSize + 4 > maxBytes / 2) {
+            return;
+        }
+        // Keep room for the end marker after the record
+        if (end + recordSize + 4 > maxBytes) {
+            compact();
+        }
+        ensureCapacity(end + (int) recordSize + 4);
+
+        int position = end;
+        int payload = position + RECORD_HEADER_SIZE;
+        buffer.position(payload);
+        buffer.put(key.bytes());
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(edits.offset(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(edits.length(i));
+        }
+        int payloadSize = (int) recordSize - RECORD_HEADER_SIZE;
+        // Terminate the records before publishing the new one
+        buffer.putInt(payload + payloadSize, 0);
+        buffer.putInt(position + 4, checksum(payload, payloadSize));
+        buffer.putInt(position, payloadSize);
+
+        end = payload + payloadSize;
+        index.put(key, position);
+    }
+
+    /**
+     * @return The number of keys in the cache
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The number of bytes used by the header and the records
+     */
+    public synchronized int usedBytes() {
+        return end;
+    }
+
+    /**
+     * Force all written records to the storage device.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            buffer.force();
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            Math.min(maxBytes, Math.max(fileSize, INITIAL_MAPPING)));
+        int limit = (int) Math.min(fileSize, buffer.capacity());
+
+        if (limit < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            end = HEADER_SIZE;
+            buffer.putInt(end, 0);
+            return;
+        }
+
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            int payloadSize = buffer.getInt(position);
+            int payload = position + RECORD_HEADER_SIZE;
+            if (payloadSize < MIN_PAYLOAD_SIZE || payloadSize > limit - payload) {
+                break;
+            }
+            int count = buffer.getInt(payload + CacheKey.LENGTH);
+            if (count < 0 || MIN_PAYLOAD_SIZE + 8L * count != payloadSize
+                    || buffer.getInt(position + 4) != checksum(payload, payloadSize)) {
+                break;
+            }
+            byte[] key = new byte[CacheKey.LENGTH];
+            buffer.get(payload, key);
+            index.put(CacheKey.fromBytes(key), position);
+            position = payload + payloadSize;
+        }
+
+        // Drop a torn or corrupt tail
+        end = position;
+        if (end + 4 <= buffer.capacity()) {
+            buffer.putInt(end, 0);
+        }
+    }
+
+    /**
+     * Drop superseded records and keep only the most recently used entries that fit into
+     * half of the size limit, moving them to the front of the file.
+     */
+    private void compact() {
+        int live = index.size();
+        CacheKey[] keys = new CacheKey[live];
+        int[] positions = new int[live];
+        int n = 0;
+        for (Map.Entry<CacheKey, Integer> entry : index.entrySet()) {
+            keys[n] = entry.getKey();
+            positions[n++] = entry.getValue();
+        }
+
+        // Walk from the most recently used entry backwards until the budget is used up
+        int budget = maxBytes / 2 - HEADER_SIZE;
+        int first = live;
+        while (first > 0) {
+            int size = recordSize(positions[first - 1]);
+            if (size > budget) {
+                break;
+            }
+            budget -= size;
+            first--;
+        }
+
+        // Copy the kept records in file order: records only move towards the start, so
+        // each copy reads bytes that have not been overwritten yet. A crash midway leaves
+        // a record that fails its checksum.
+        long[] byPosition = new long[live - first];
+        for (int i = first; i < live; i++) {
+            byPosition[i - first] = (long) positions[i] << 32 | i;
+        }
+        Arrays.sort(byPosition);
+        int target = HEADER_SIZE;
+        for (long record : byPosition) {
+            int source = (int) (record >>> 32);
+            int i = (int) record;
+            int size = recordSize(source);
+            if (source != target) {
+                buffer.put(target, buffer, source, size);
+            }
+            positions[i] = target;
+            target += size;
+        }
+        end = target;
+        buffer.putInt(end, 0);
+
+        // Keep the order of use
+        index.clear();
+        for (int i = first; i < live; i++) {
+            index.put(keys[i], positions[i]);
+        }
+    }
+
+    private int recordSize(int position) {
+        return RECORD_HEADER_SIZE + buffer.getInt(position);
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.min(maxBytes, Math.max(required, 2L * buffer.capacity()));
+        buffer.force();
+        // Mapping beyond the end of the file extends it with zeros
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+}
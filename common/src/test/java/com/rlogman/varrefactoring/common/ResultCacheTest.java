@@ -0,0 +1,164 @@
+package com.rlogman.varrefactoring.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultCacheTest {
+
+    private static final long SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldPersistEntriesAcrossReopen() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.bin");
+        CacheKey withEdits = key("class A { String s = \"x\"; }");
+        CacheKey withoutEdits = key("class B { }");
+
+        // When
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            cache.put(withEdits, new CachedEdits(new int[] {10, 40}, new int[] {6, 4}));
+            cache.put(withoutEdits, CachedEdits.NONE);
+        }
+
+        // Then
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            CachedEdits edits = cache.get(withEdits);
+            assertThat(edits.size()).isEqualTo(2);
+            assertThat(edits.offset(1)).isEqualTo(40);
+            assertThat(edits.length(0)).isEqualTo(6);
+            assertThat(cache.get(withoutEdits)).isSameAs(CachedEdits.NONE);
+            assertThat(cache.get(key("class C { }"))).isNull();
+        }
+    }
+
+    @Test
+    void shouldKeyOnEveryInput() {
+        // Given
+        CacheKey key = CacheKey.of("class A { }", "options", "17", "1");
+
+        // When / Then
+        assertThat(CacheKey.of("class A { }", "options", "17", "1")).isEqualTo(key);
+        assertThat(CacheKey.of("class A {  }", "options", "17", "1")).isNotEqualTo(key);
+        assertThat(CacheKey.of("class A { }", "other", "17", "1")).isNotEqualTo(key);
+        assertThat(CacheKey.of("class A { }", "options", "11", "1")).isNotEqualTo(key);
+        assertThat(CacheKey.of("class A { }", "options", "17", "2")).isNotEqualTo(key);
+    }
+
+    @Test
+    void shouldRecoverFromTornWrite() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.bin");
+        CacheKey first = key("first");
+        CacheKey second = key("second");
+        int firstEnd;
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            cache.put(first, new CachedEdits(new int[] {1}, new int[] {2}));
+            firstEnd = cache.usedBytes();
+            cache.put(second, new CachedEdits(new int[] {3}, new int[] {4}));
+        }
+
+        // When: the second record is half overwritten, as by a crash during a write
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(firstEnd + 20);
+            raf.writeInt(0xdeadbeef);
+        }
+
+        // Then
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            assertThat(cache.get(first).offset(0)).isEqualTo(1);
+            assertThat(cache.get(second)).isNull();
+            assertThat(cache.usedBytes()).isEqualTo(firstEnd);
+
+            // The space of the corrupt record is reused
+            cache.put(second, new CachedEdits(new int[] {5}, new int[] {6}));
+            assertThat(cache.get(second).offset(0)).isEqualTo(5);
+        }
+    }
+
+    @Test
+    void shouldEvictOldestEntriesWhenFull() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.bin");
+        int entries = 10_000;
+
+        // When
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            for (int i = 0; i < entries; i++) {
+                cache.put(key("file" + i), new CachedEdits(new int[] {i}, new int[] {3}));
+            }
+
+            // Then
+            assertThat(cache.usedBytes()).isLessThanOrEqualTo((int) SIZE);
+            assertThat(cache.get(key("file0"))).isNull();
+            assertThat(cache.get(key("file" + (entries - 1))).offset(0)).isEqualTo(entries - 1);
+            assertThat(cache.size()).isLessThan(entries);
+        }
+        assertThat(Files.size(file)).isLessThanOrEqualTo(SIZE);
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            assertThat(cache.get(key("file" + (entries - 1))).offset(0)).isEqualTo(entries - 1);
+        }
+    }
+
+    @Test
+    void shouldKeepRecentlyReadEntriesWhenFull() throws IOException {
+        // Given
+        CacheKey hot = key("hot");
+        int entries = 10_000;
+
+        // When
+        try (ResultCache cache = ResultCache.open(directory.resolve("cache.bin"), SIZE)) {
+            cache.put(hot, new CachedEdits(new int[] {42}, new int[] {6}));
+            for (int i = 0; i < entries; i++) {
+                cache.put(key("file" + i), new CachedEdits(new int[] {i}, new int[] {3}));
+                cache.get(hot);
+            }
+
+            // Then
+            assertThat(cache.size()).isLessThan(entries);
+            assertThat(cache.get(key("file0"))).isNull();
+            assertThat(cache.get(hot).offset(0)).isEqualTo(42);
+        }
+    }
+
+    @Test
+    void shouldReplaceEntryOnRewrite() throws IOException {
+        // Given
+        CacheKey key = key("class A { }");
+
+        // When
+        try (ResultCache cache = ResultCache.open(directory.resolve("cache.bin"), SIZE)) {
+            cache.put(key, CachedEdits.NONE);
+            cache.put(key, new CachedEdits(new int[] {7}, new int[] {3}));
+
+            // Then
+            assertThat(cache.get(key).offset(0)).isEqualTo(7);
+            assertThat(cache.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldRejectSecondOpenOfSameFile() throws IOException {
+        // Given
+        Path file = directory.resolve("cache.bin");
+
+        // When / Then
+        try (ResultCache cache = ResultCache.open(file, SIZE)) {
+            assertThatThrownBy(() -> ResultCache.open(file, SIZE)).isInstanceOf(IOException.class);
+        }
+    }
+
+    private static CacheKey key(String content) {
+        return CacheKey.of(content, "options", "17", "1");
+    }
+}
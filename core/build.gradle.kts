@@ -22,7 +22,7 @@ sourceSets {
 }
 
 dependencies {
-    implementation(project(":common"))
+    api(project(":common"))
 
     // Use Eclipse JDT Core for Java parsing
     implementation("org.eclipse.jdt:org.eclipse.jdt.core:3.35.0")
@@ -0,0 +1,20 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Tells long-running processing to stop, e.g. because an editor request was cancelled.
+ * <p>
+ * Tokens are polled cooperatively from the processing thread, every few thousand
+ * tokens while scanning and every few declarations while checking them, so
+ * {@link #isCancelled()} must be cheap and safe to call from any thread. Once a token
+ * reports cancellation it must keep doing so.
+ */
+@FunctionalInterface
+public interface CancellationToken {
+    /** A token that is never cancelled. */
+    CancellationToken NONE = () -> false;
+
+    /**
+     * @return Whether processing should stop
+     */
+    boolean isCancelled();
+}
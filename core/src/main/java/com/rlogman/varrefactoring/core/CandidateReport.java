@@ -0,0 +1,240 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+
+/**
+ * The candidate declarations of a file or a range of it, with the decision on each,
+ * in ascending offset order.
+ * <p>
+ * Candidates are stored column-wise in growable {@code int} arrays rather than as one
+ * object per declaration, and no refactored text is built, so a report over a large
+ * tree costs a fraction of rewriting it. {@link #toEditScript()} turns the accepted
+ * candidates into the edits the refactoring would make.
+ */
+public final class CandidateReport {
+    /** Status of an accepted candidate. */
+    private static final int ACCEPTED = -1;
+    /** Status of a candidate whose initializer type no engine could determine. */
+    private static final int UNDECIDED = -2;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final VarEligibilityChecker.RejectionReason[] REASONS =
+        VarEligibilityChecker.RejectionReason.values();
+
+    private int size;
+    private int[] typeStart = new int[INITIAL_CAPACITY];
+    private int[] typeEnd = new int[INITIAL_CAPACITY];
+    // Offset after the terminating ';', so an edit can tell which statements it touches
+    private int[] statementEnd = new int[INITIAL_CAPACITY];
+    // ACCEPTED, UNDECIDED or the ordinal of the rejection reason
+    private int[] status = new int[INITIAL_CAPACITY];
+
+    CandidateReport() {
+    }
+
+    /**
+     * @return The number of candidates
+     */
+    public int size() {
+        return size;
+    }
+
+    /** Start offset of the declared type (inclusive). */
+    public int typeStart(int index) {
+        return typeStart[index];
+    }
+
+    /** End offset of the declared type (exclusive). */
+    public int typeEnd(int index) {
+        return typeEnd[index];
+    }
+
+    /**
+     * @return Whether the declared type of a candidate is replaced with 'var'
+     */
+    public boolean isAccepted(int index) {
+        return status[index] == ACCEPTED;
+    }
+
+    /**
+     * @return Whether the initializer type of a candidate could not be determined,
+     *         so no decision was made
+     */
+    public boolean isUndecided(int index) {
+        return status[index] == UNDECIDED;
+    }
+
+    /**
+     * @return Why a candidate was rejected, or null if it was accepted or is undecided
+     */
+    public VarEligibilityChecker.RejectionReason rejectionReason(int index) {
+        int value = status[index];
+        return value >= 0 ? REASONS[value] : null;
+    }
+
+    /**
+     * @return The number of accepted candidates
+     */
+    public int acceptedCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (status[i] == ACCEPTED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of candidates rejected for a reason
+     */
+    public int rejectedCount(VarEligibilityChecker.RejectionReason reason) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (status[i] == reason.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The edits that replace the accepted candidates with 'var'
+     */
+    public EditScript toEditScript() {
+        EditScript edits = null;
+        for (int i = 0; i < size; i++) {
+            if (status[i] == ACCEPTED) {
+                if (edits == null) {
+                    edits = new EditScript();
+                }
+                edits.add(typeStart[i], typeEnd[i] - typeStart[i]);
+            }
+        }
+        return edits == null ? EditScript.EMPTY : edits;
+    }
+
+    /** Offset right after the {@code ;} terminating the declaration of a candidate. */
+    int statementEnd(int index) {
+        return statementEnd[index];
+    }
+
+    /**
+     * Add a decided candidate after all candidates added so far.
+     *
+     * @param reason Why it was rejected, or null if it was accepted
+     */
+    void add(int start, int end, int statementEnd, VarEligibilityChecker.RejectionReason reason) {
+        append(start, end, statementEnd, reason == null ? ACCEPTED : reason.ordinal());
+    }
+
+    /**
+     * Add a candidate that is left for a type-resolving engine to decide.
+     */
+    void addUndecided(int start, int end, int statementEnd) {
+        append(start, end, statementEnd, UNDECIDED);
+    }
+
+    /**
+     * Update the report after an edit of the source: the candidates whose type starts in
+     * {@code [from, to)} are replaced by those of {@code region}, and the offsets of the
+     * candidates starting at or after {@code shiftFrom} move by {@code delta}.
+     * <p>
+     * {@code from}, {@code to} and {@code shiftFrom} are offsets before the edit; the
+     * candidates of {@code region} have offsets after it and must lie in {@code [from, to)}.
+     */
+    void splice(int from, int to, CandidateReport region, int shiftFrom, int delta) {
+        int first = lowerBound(from);
+        int last = lowerBound(to);
+        int tail = size - last;
+        int newSize = first + region.size + tail;
+        if (newSize > typeStart.length) {
+            int capacity = Math.max(newSize, typeStart.length * 2);
+            typeStart = Arrays.copyOf(typeStart, capacity);
+            typeEnd = Arrays.copyOf(typeEnd, capacity);
+            statementEnd = Arrays.copyOf(statementEnd, capacity);
+            status = Arrays.copyOf(status, capacity);
+        }
+        int target = first + region.size;
+        System.arraycopy(typeStart, last, typeStart, target, tail);
+        System.arraycopy(typeEnd, last, typeEnd, target, tail);
+        System.arraycopy(statementEnd, last, statementEnd, target, tail);
+        System.arraycopy(status, last, status, target, tail);
+        System.arraycopy(region.typeStart, 0, typeStart, first, region.size);
+        System.arraycopy(region.typeEnd, 0, typeEnd, first, region.size);
+        System.arraycopy(region.statementEnd, 0, statementEnd, first, region.size);
+        System.arraycopy(region.status, 0, status, first, region.size);
+        size = newSize;
+
+        if (delta != 0) {
+            for (int i = target; i < size; i++) {
+                if (typeStart[i] >= shiftFrom) {
+                    typeStart[i] += delta;
+                    typeEnd[i] += delta;
+                    statementEnd[i] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the decision on an undecided candidate.
+     *
+     * @param reason Why it was rejected, or null if it was accepted
+     */
+    void decide(int index, VarEligibilityChecker.RejectionReason reason) {
+        status[index] = reason == null ? ACCEPTED : reason.ordinal();
+    }
+
+    /**
+     * @return The index of the candidate whose type starts at an offset, or -1
+     */
+    int indexOf(int start) {
+        int index = Arrays.binarySearch(typeStart, 0, size, start);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return Whether any candidate is undecided
+     */
+    boolean hasUndecided() {
+        for (int i = 0; i < size; i++) {
+            if (status[i] == UNDECIDED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The index of the first candidate whose type starts at or after an offset
+     */
+    private int lowerBound(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (typeStart[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void append(int start, int end, int statementEndOffset, int value) {
+        if (size == typeStart.length) {
+            int capacity = size * 2;
+            typeStart = Arrays.copyOf(typeStart, capacity);
+            typeEnd = Arrays.copyOf(typeEnd, capacity);
+            statementEnd = Arrays.copyOf(statementEnd, capacity);
+            status = Arrays.copyOf(status, capacity);
+        }
+        typeStart[size] = start;
+        typeEnd[size] = end;
+        statementEnd[size] = statementEndOffset;
+        status[size] = value;
+        size++;
+    }
+}
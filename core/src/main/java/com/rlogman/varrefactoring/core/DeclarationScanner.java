@@ -0,0 +1,432 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass scanner that finds {@code Type name = initializer;} declarations.
+ * <p>
+ * The scanner walks the token stream of {@link JavaLexer} once, so comments,
+ * string, char and text-block literals are never mistaken for code. A declaration
+ * is only recognized at the start of a statement (or of a {@code for} initializer),
+ * after any modifiers and annotations. Its initializer runs up to the {@code ;} at
+ * the same nesting depth, which lets initializers span lines and contain lambdas or
+ * anonymous classes whose own declarations are reported as well.
+ * <p>
+ * Declarations that can never become {@code var} are dropped while scanning:
+ * array initializers ({@code int[] a = {1, 2};}) and statements with several
+ * declarators ({@code int a = 1, b = 2;}), as well as a declaration whose statement
+ * is cut short by another one starting at the same depth, which only happens in broken
+ * code, e.g. after an unterminated literal.
+ * <p>
+ * The running time is linear in the length of the source.
+ */
+public final class DeclarationScanner {
+    /** Tokens between two polls of a cancellation token, minus one; a power of two minus one. */
+    private static final int CANCELLATION_CHECK_MASK = 4096 - 1;
+
+    /**
+     * Scan the whole source.
+     *
+     * @param source The Java source
+     * @return The declarations found, in source order
+     */
+    public Declarations scan(CharSequence source) {
+        return scan(source, 0, source.length());
+    }
+
+    /**
+     * Scan the region {@code [start, end)} of the source.
+     * The region must start at a token boundary outside any comment or literal.
+     *
+     * @param source The Java source
+     * @param start The offset to start scanning at
+     * @param end The offset to stop scanning at
+     * @return The declarations found, in source order
+     */
+    public Declarations scan(CharSequence source, int start, int end) {
+        return scan(source, start, end, null);
+    }
+
+    /**
+     * Scan the region {@code [start, end)} of the source, stopping early once
+     * {@code cancellation} is cancelled. Declarations found up to then are returned.
+     *
+     * @param cancellation Polled every few thousand tokens, or null
+     */
+    Declarations scan(CharSequence source, int start, int end, CancellationToken cancellation) {
+        return scan(source, start, end, end, cancellation);
+    }
+
+    /**
+     * Scan the declarations starting before {@code openBefore}. Scanning stops at the
+     * first token at or after {@code openBefore} that is outside the initializers of
+     * those declarations, so a range is scanned up to the end of its last statement
+     * instead of to the end of the source.
+     * <p>
+     * Declarations nested in those initializers are still tracked, so that in code with
+     * unbalanced delimiters the statements end where a scan of the whole source ends them.
+     *
+     * @param openBefore Declarations whose type starts at or after this offset are ignored
+     * @param cancellation Polled every few thousand tokens, or null
+     */
+    Declarations scan(CharSequence source, int start, int end, int openBefore, CancellationToken cancellation) {
+        Declarations declarations = new Declarations();
+        scan(source, start, end, openBefore, cancellation, declarations);
+        declarations.truncate(openBefore);
+        declarations.compact();
+        return declarations;
+    }
+
+    /**
+     * Scan a chunk of a source that is read in pieces, up to its last statement boundary:
+     * right after a {@code ;} or a {@code '{'} that is outside any parentheses and outside
+     * the initializers of declarations. The scan there is in the same state as at the start
+     * of a source, so the next chunk is scanned from that boundary as a source of its own.
+     * Declarations after the boundary are dropped, since they may be cut off by the end of
+     * the chunk.
+     *
+     * @param source The Java source
+     * @param start The offset to start scanning at, the start of the source or a boundary
+     * @param end The end of the chunk
+     * @param declarations Receives the declarations found before the boundary
+     * @return The offset of the boundary, or {@code start} if the chunk holds none
+     */
+    int scanChunk(CharSequence source, int start, int end, Declarations declarations) {
+        int boundary = scan(source, start, end, end, null, declarations);
+        declarations.truncate(boundary);
+        declarations.compact();
+        return boundary;
+    }
+
+    /**
+     * @return The offset of the last statement boundary, see {@link #scanChunk}
+     */
+    private int scan(CharSequence source, int start, int end, int openBefore, CancellationToken cancellation,
+                     Declarations declarations) {
+        JavaLexer lexer = new JavaLexer(source, start, end);
+
+        // Declarations whose initializer is still open, innermost on top
+        int[] pendingIndex = new int[8];
+        int[] pendingDepth = new int[8];
+        int pending = 0;
+
+        int depth = 0;
+        boolean statementStart = true;
+        boolean forInitializer = false;
+        boolean previousWasFor = false;
+        boolean awaitingInitializer = false;
+        int lastTokenEnd = start;
+        int tokens = 0;
+        // Open parentheses, which the scope index tracks as well
+        int parens = 0;
+        int boundary = start;
+
+        for (int kind = lexer.next(); kind != JavaLexer.EOF; kind = lexer.next()) {
+            if (cancellation != null && (++tokens & CANCELLATION_CHECK_MASK) == 0 && cancellation.isCancelled()) {
+                // Declarations still open are dropped by compact()
+                break;
+            }
+            if (pending == 0 && lexer.tokenStart >= openBefore) {
+                break;
+            }
+            if (awaitingInitializer) {
+                awaitingInitializer = false;
+                char c = kind == JavaLexer.PUNCTUATION ? lexer.tokenChar() : 0;
+                if (c == '{' || c == ';') {
+                    // Array initializer or missing initializer: never a 'var' candidate
+                    pending--;
+                } else {
+                    declarations.setInitializerStart(pendingIndex[pending - 1], lexer.tokenStart);
+                }
+            }
+
+            boolean wasFor = previousWasFor;
+            previousWasFor = false;
+
+            if (kind == JavaLexer.IDENTIFIER) {
+                int keyword = JavaKeywords.classify(lexer);
+                if (statementStart) {
+                    if (keyword == JavaKeywords.MODIFIER) {
+                        lastTokenEnd = lexer.tokenEnd;
+                        continue;
+                    }
+                    if ((keyword == JavaKeywords.NONE || keyword == JavaKeywords.PRIMITIVE)
+                            && tryDeclaration(lexer, keyword == JavaKeywords.PRIMITIVE, declarations,
+                                              forInitializer ? Declarations.LOOP_VARIABLE : 0)) {
+                        if (pending > 0 && pendingDepth[pending - 1] == depth) {
+                            // The open statement at this depth never got its ';', so a ';'
+                            // always ends every statement at its depth
+                            pending--;
+                        }
+                        if (pending == pendingIndex.length) {
+                            pendingIndex = Arrays.copyOf(pendingIndex, pending * 2);
+                            pendingDepth = Arrays.copyOf(pendingDepth, pending * 2);
+                        }
+                        pendingIndex[pending] = declarations.size() - 1;
+                        pendingDepth[pending] = depth;
+                        pending++;
+                        awaitingInitializer = true;
+                        statementStart = false;
+                        forInitializer = false;
+                        lastTokenEnd = lexer.tokenEnd;
+                        continue;
+                    }
+                }
+                previousWasFor = keyword == JavaKeywords.RESERVED && lexer.tokenIs("for");
+                statementStart = false;
+                forInitializer = false;
+            } else if (kind == JavaLexer.PUNCTUATION) {
+                switch (lexer.tokenChar()) {
+                    case ';':
+                        if (pending > 0 && pendingDepth[pending - 1] == depth) {
+                            pending--;
+                            declarations.complete(pendingIndex[pending], lastTokenEnd, lexer.tokenEnd);
+                        }
+                        statementStart = true;
+                        forInitializer = false;
+                        if (pending == 0 && parens == 0) {
+                            boundary = lexer.tokenEnd;
+                        }
+                        break;
+                    case '{':
+                        depth++;
+                        statementStart = true;
+                        forInitializer = false;
+                        if (pending == 0 && parens == 0) {
+                            boundary = lexer.tokenEnd;
+                        }
+                        break;
+                    case '}':
+                        depth--;
+                        while (pending > 0 && pendingDepth[pending - 1] > depth) {
+                            pending--;
+                        }
+                        statementStart = true;
+                        forInitializer = false;
+                        break;
+                    case '(':
+                        depth++;
+                        parens++;
+                        statementStart = wasFor;
+                        forInitializer = wasFor;
+                        break;
+                    case '[':
+                        depth++;
+                        statementStart = false;
+                        forInitializer = false;
+                        break;
+                    case ')':
+                    case ']':
+                        if (lexer.tokenChar() == ')' && parens > 0) {
+                            parens--;
+                        }
+                        depth--;
+                        while (pending > 0 && pendingDepth[pending - 1] > depth) {
+                            pending--;
+                        }
+                        statementStart = false;
+                        forInitializer = false;
+                        break;
+                    case ':':
+                        // Switch labels and statement labels start a new statement
+                        statementStart = true;
+                        forInitializer = false;
+                        break;
+                    case ',':
+                        if (pending > 0 && pendingDepth[pending - 1] == depth && startsDeclarator(lexer)) {
+                            // 'var' is not allowed with several declarators
+                            pending--;
+                        }
+                        statementStart = false;
+                        forInitializer = false;
+                        break;
+                    case '@':
+                        if (statementStart && skipAnnotation(lexer)) {
+                            lastTokenEnd = lexer.tokenEnd;
+                            continue;
+                        }
+                        statementStart = false;
+                        forInitializer = false;
+                        break;
+                    default:
+                        statementStart = false;
+                        forInitializer = false;
+                        break;
+                }
+            } else {
+                statementStart = false;
+                forInitializer = false;
+            }
+            lastTokenEnd = lexer.tokenEnd;
+        }
+        return boundary;
+    }
+
+    /**
+     * Try to read {@code Type name =} starting at the current identifier token.
+     * On success the declaration is opened in {@code declarations} and the lexer
+     * is positioned right after the {@code =}. On failure the lexer is moved back
+     * to right after the first identifier.
+     */
+    private boolean tryDeclaration(JavaLexer lexer, boolean primitive, Declarations declarations, int flags) {
+        int typeStart = lexer.tokenStart;
+        int typeEnd = lexer.tokenEnd;
+        int afterFirstToken = lexer.position();
+
+        int kind = lexer.next();
+        if (!primitive) {
+            // Qualified names and type arguments, in any order: Map.Entry<K, V>, Outer<A>.Inner
+            while (kind == JavaLexer.PUNCTUATION) {
+                char c = lexer.tokenChar();
+                if (c == '.') {
+                    if (lexer.next() != JavaLexer.IDENTIFIER) {
+                        lexer.reset(afterFirstToken);
+                        return false;
+                    }
+                } else if (c == '<') {
+                    if (!skipTypeArguments(lexer)) {
+                        lexer.reset(afterFirstToken);
+                        return false;
+                    }
+                } else {
+                    break;
+                }
+                typeEnd = lexer.tokenEnd;
+                kind = lexer.next();
+            }
+        }
+
+        // Array dimensions: String[] args
+        while (kind == JavaLexer.PUNCTUATION && lexer.tokenChar() == '[') {
+            if (lexer.next() != JavaLexer.PUNCTUATION || lexer.tokenChar() != ']') {
+                lexer.reset(afterFirstToken);
+                return false;
+            }
+            typeEnd = lexer.tokenEnd;
+            kind = lexer.next();
+        }
+
+        if (kind != JavaLexer.IDENTIFIER) {
+            lexer.reset(afterFirstToken);
+            return false;
+        }
+        int keyword = JavaKeywords.classify(lexer);
+        if (keyword != JavaKeywords.NONE && keyword != JavaKeywords.VAR) {
+            lexer.reset(afterFirstToken);
+            return false;
+        }
+        int nameStart = lexer.tokenStart;
+        int nameEnd = lexer.tokenEnd;
+
+        if (lexer.next() != JavaLexer.PUNCTUATION || lexer.tokenChar() != '=' || lexer.charAfterToken() == '=') {
+            lexer.reset(afterFirstToken);
+            return false;
+        }
+
+        declarations.open(typeStart, typeEnd, nameStart, nameEnd, flags);
+        return true;
+    }
+
+    /**
+     * Skip a type argument list whose opening {@code <} is the current token.
+     * Only tokens that can appear inside type arguments are accepted, which keeps
+     * comparisons such as {@code i < n} from being read as types.
+     */
+    private boolean skipTypeArguments(JavaLexer lexer) {
+        int nesting = 1;
+        while (true) {
+            int kind = lexer.next();
+            if (kind == JavaLexer.IDENTIFIER) {
+                continue;
+            }
+            if (kind != JavaLexer.PUNCTUATION) {
+                return false;
+            }
+            switch (lexer.tokenChar()) {
+                case '<':
+                    nesting++;
+                    break;
+                case '>':
+                    if (--nesting == 0) {
+                        return true;
+                    }
+                    break;
+                case ',':
+                case '.':
+                case '?':
+                case '[':
+                case ']':
+                case '@':
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Skip an annotation whose {@code @} is the current token, including its
+     * arguments. The lexer ends on the last token of the annotation.
+     *
+     * @return false if the {@code @} does not start an annotation ({@code @interface})
+     */
+    private boolean skipAnnotation(JavaLexer lexer) {
+        if (lexer.next() != JavaLexer.IDENTIFIER || lexer.tokenIs("interface")) {
+            return false;
+        }
+        while (true) {
+            int afterName = lexer.position();
+            int nameEnd = lexer.tokenEnd;
+            int kind = lexer.next();
+            if (kind == JavaLexer.PUNCTUATION && lexer.tokenChar() == '.') {
+                if (lexer.next() != JavaLexer.IDENTIFIER) {
+                    return false;
+                }
+                continue;
+            }
+            if (kind == JavaLexer.PUNCTUATION && lexer.tokenChar() == '(') {
+                int nesting = 1;
+                while (nesting > 0) {
+                    kind = lexer.next();
+                    if (kind == JavaLexer.EOF) {
+                        return false;
+                    }
+                    if (kind == JavaLexer.PUNCTUATION) {
+                        char c = lexer.tokenChar();
+                        if (c == '(') {
+                            nesting++;
+                        } else if (c == ')') {
+                            nesting--;
+                        }
+                    }
+                }
+                return true;
+            }
+            // Marker annotation: leave the following token for the caller
+            lexer.reset(afterName);
+            lexer.tokenEnd = nameEnd;
+            return true;
+        }
+    }
+
+    /**
+     * Check whether the tokens after a {@code ,} start another declarator
+     * ({@code name =}, {@code name;}, {@code name,} or {@code name[]}).
+     * The lexer position is left unchanged.
+     */
+    private boolean startsDeclarator(JavaLexer lexer) {
+        int saved = lexer.position();
+        int savedStart = lexer.tokenStart;
+        int savedEnd = lexer.tokenEnd;
+        boolean declarator = false;
+        if (lexer.next() == JavaLexer.IDENTIFIER && JavaKeywords.classify(lexer) == JavaKeywords.NONE
+                && lexer.next() == JavaLexer.PUNCTUATION) {
+            char c = lexer.tokenChar();
+            declarator = (c == '=' && lexer.charAfterToken() != '=') || c == ';' || c == ',' || c == '[';
+        }
+        lexer.reset(saved);
+        lexer.tokenStart = savedStart;
+        lexer.tokenEnd = savedEnd;
+        return declarator;
+    }
+}
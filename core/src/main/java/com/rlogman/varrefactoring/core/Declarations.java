@@ -0,0 +1,155 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+
+/**
+ * The variable declarations found by a {@link DeclarationScanner}, in source order.
+ * <p>
+ * Declarations are stored column-wise in growable {@code int} arrays rather than as
+ * one object per match, so scanning a large file only allocates a handful of arrays.
+ * All offsets are character offsets into the scanned source.
+ */
+public final class Declarations {
+    /** Flag set on variables declared in the initializer of a basic {@code for} statement. */
+    public static final int LOOP_VARIABLE = 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] typeStart = new int[INITIAL_CAPACITY];
+    private int[] typeEnd = new int[INITIAL_CAPACITY];
+    private int[] nameStart = new int[INITIAL_CAPACITY];
+    private int[] nameEnd = new int[INITIAL_CAPACITY];
+    private int[] initializerStart = new int[INITIAL_CAPACITY];
+    private int[] initializerEnd = new int[INITIAL_CAPACITY];
+    private int[] statementEnd = new int[INITIAL_CAPACITY];
+    private int[] flags = new int[INITIAL_CAPACITY];
+
+    Declarations() {
+    }
+
+    /**
+     * @return The number of declarations
+     */
+    public int size() {
+        return size;
+    }
+
+    /** Start offset of the declared type (inclusive). */
+    public int typeStart(int index) {
+        return typeStart[index];
+    }
+
+    /** End offset of the declared type (exclusive). */
+    public int typeEnd(int index) {
+        return typeEnd[index];
+    }
+
+    /** Start offset of the variable name (inclusive). */
+    public int nameStart(int index) {
+        return nameStart[index];
+    }
+
+    /** End offset of the variable name (exclusive). */
+    public int nameEnd(int index) {
+        return nameEnd[index];
+    }
+
+    /** Start offset of the initializer expression (inclusive). */
+    public int initializerStart(int index) {
+        return initializerStart[index];
+    }
+
+    /** End offset of the initializer expression (exclusive), excluding trailing whitespace. */
+    public int initializerEnd(int index) {
+        return initializerEnd[index];
+    }
+
+    /** Offset right after the {@code ;} terminating the declaration. */
+    public int statementEnd(int index) {
+        return statementEnd[index];
+    }
+
+    /**
+     * @return Whether the declaration is the initializer of a basic {@code for} loop
+     */
+    public boolean isLoopVariable(int index) {
+        return (flags[index] & LOOP_VARIABLE) != 0;
+    }
+
+    /**
+     * Reserve a slot for a declaration whose initializer has not been terminated yet.
+     *
+     * @return The index of the new slot
+     */
+    int open(int typeStart, int typeEnd, int nameStart, int nameEnd, int flags) {
+        if (size == this.typeStart.length) {
+            grow();
+        }
+        int index = size++;
+        this.typeStart[index] = typeStart;
+        this.typeEnd[index] = typeEnd;
+        this.nameStart[index] = nameStart;
+        this.nameEnd[index] = nameEnd;
+        this.initializerStart[index] = -1;
+        this.initializerEnd[index] = -1;
+        this.statementEnd[index] = -1;
+        this.flags[index] = flags;
+        return index;
+    }
+
+    void setInitializerStart(int index, int offset) {
+        initializerStart[index] = offset;
+    }
+
+    void complete(int index, int initializerEnd, int statementEnd) {
+        this.initializerEnd[index] = initializerEnd;
+        this.statementEnd[index] = statementEnd;
+    }
+
+    /**
+     * Drop the slots of the declarations whose type starts at or after an offset.
+     */
+    void truncate(int typeStartLimit) {
+        while (size > 0 && typeStart[size - 1] >= typeStartLimit) {
+            size--;
+        }
+    }
+
+    /**
+     * Drop the slots that were opened but never completed (multiple declarators,
+     * array initializers, unterminated statements), keeping source order.
+     */
+    void compact() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (statementEnd[i] < 0) {
+                continue;
+            }
+            if (kept != i) {
+                typeStart[kept] = typeStart[i];
+                typeEnd[kept] = typeEnd[i];
+                nameStart[kept] = nameStart[i];
+                nameEnd[kept] = nameEnd[i];
+                initializerStart[kept] = initializerStart[i];
+                initializerEnd[kept] = initializerEnd[i];
+                statementEnd[kept] = statementEnd[i];
+                flags[kept] = flags[i];
+            }
+            kept++;
+        }
+        size = kept;
+    }
+
+    private void grow() {
+        int capacity = typeStart.length * 2;
+        typeStart = Arrays.copyOf(typeStart, capacity);
+        typeEnd = Arrays.copyOf(typeEnd, capacity);
+        nameStart = Arrays.copyOf(nameStart, capacity);
+        nameEnd = Arrays.copyOf(nameEnd, capacity);
+        initializerStart = Arrays.copyOf(initializerStart, capacity);
+        initializerEnd = Arrays.copyOf(initializerEnd, capacity);
+        statementEnd = Arrays.copyOf(statementEnd, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+}
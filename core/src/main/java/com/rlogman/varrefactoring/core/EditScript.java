@@ -0,0 +1,237 @@
+package com.rlogman.varrefactoring.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * The replacements a refactoring makes to one source file, in ascending offset order.
+ * <p>
+ * Each edit replaces the characters {@code [offset, offset + length)} of the original
+ * source with {@link #replacement(int)}. Edits are stored in {@code int} arrays and
+ * never overlap, so callers can apply just the changed spans (an LSP {@code TextEdit}
+ * list, an editor preview) instead of diffing a rewritten copy of the file.
+ */
+public final class EditScript {
+    /** The script of a file without any replacements. */
+    public static final EditScript EMPTY = new EditScript(new int[0], new int[0], 0);
+
+    /** Text that every edit inserts in place of the explicit type. */
+    public static final String VAR = "var";
+
+    private static final int INITIAL_CAPACITY = 8;
+    /** Characters a span is copied through when neither end offers bulk access. */
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private int size;
+    private int[] offsets;
+    private int[] lengths;
+
+    EditScript() {
+        this(new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+    }
+
+    private EditScript(int[] offsets, int[] lengths, int size) {
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.size = size;
+    }
+
+    /**
+     * @return The number of edits
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether the script leaves the source unchanged
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Offset of the first replaced character in the original source. */
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    /** Number of characters of the original source that are replaced. */
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    /** Text inserted in place of the replaced characters. */
+    public String replacement(int index) {
+        return VAR;
+    }
+
+    /**
+     * Apply the edits to the source they were computed from.
+     *
+     * @param source The original source
+     * @return The edited source, or {@code source} itself if the script is empty
+     */
+    public String applyTo(String source) {
+        if (size == 0) {
+            return source;
+        }
+
+        int delta = 0;
+        for (int i = 0; i < size; i++) {
+            delta += VAR.length() - lengths[i];
+        }
+        StringBuilder result = new StringBuilder(source.length() + delta);
+        // End of the source span that has already been copied to the result
+        int copied = 0;
+        for (int i = 0; i < size; i++) {
+            result.append(source, copied, offsets[i]).append(replacement(i));
+            copied = offsets[i] + lengths[i];
+        }
+        return result.append(source, copied, source.length()).toString();
+    }
+
+    /**
+     * Apply the edits to the source they were computed from, writing the edited source to
+     * {@code out} instead of building it in memory. Unchanged spans are copied in bulk:
+     * straight from a {@code String} or a heap {@link CharBuffer} into a {@link Writer},
+     * and through {@link Appendable#append(CharSequence, int, int)} otherwise.
+     *
+     * @param source The original source, e.g. an editor buffer
+     * @param out Receives the edited source
+     * @throws IOException If {@code out} fails
+     */
+    public void writeTo(CharSequence source, Appendable out) throws IOException {
+        // End of the source span that has already been copied to the output
+        int copied = 0;
+        char[] buffer = null;
+        for (int i = 0; i < size; i++) {
+            buffer = copy(source, copied, offsets[i], out, buffer);
+            out.append(replacement(i));
+            copied = offsets[i] + lengths[i];
+        }
+        copy(source, copied, source.length(), out, buffer);
+    }
+
+    /**
+     * Copy {@code source[start, end)} to {@code out}.
+     *
+     * @param buffer A buffer for copying, or null to allocate one if needed
+     * @return The buffer that was used, or {@code buffer}
+     */
+    private static char[] copy(CharSequence source, int start, int end, Appendable out, char[] buffer)
+            throws IOException {
+        if (start == end) {
+            return buffer;
+        }
+        if (!(out instanceof Writer)) {
+            out.append(source, start, end);
+            return buffer;
+        }
+        Writer writer = (Writer) out;
+        if (source instanceof String) {
+            writer.write((String) source, start, end - start);
+            return buffer;
+        }
+        if (source instanceof CharBuffer && ((CharBuffer) source).hasArray()) {
+            CharBuffer chars = (CharBuffer) source;
+            writer.write(chars.array(), chars.arrayOffset() + chars.position() + start, end - start);
+            return buffer;
+        }
+        // Writer.append would copy the span into a String first
+        if (buffer == null) {
+            buffer = new char[COPY_BUFFER_SIZE];
+        }
+        for (int from = start; from < end; ) {
+            int count = Math.min(buffer.length, end - from);
+            for (int i = 0; i < count; i++) {
+                buffer[i] = source.charAt(from + i);
+            }
+            writer.write(buffer, 0, count);
+            from += count;
+        }
+        return buffer;
+    }
+
+    /**
+     * Apply the edits to the UTF-8 source they were computed from, with offsets and
+     * lengths in bytes from the position of {@code source}. Unchanged spans are copied
+     * in bulk; the position of {@code source} is not changed.
+     *
+     * @param source The original source, between its position and limit
+     * @return The edited source
+     */
+    public byte[] applyTo(ByteBuffer source) {
+        int base = source.position();
+        int length = source.remaining();
+        int delta = 0;
+        for (int i = 0; i < size; i++) {
+            delta += VAR.length() - lengths[i];
+        }
+        byte[] result = new byte[length + delta];
+        int written = 0;
+        // End of the source span that has already been copied to the result
+        int copied = 0;
+        for (int i = 0; i < size; i++) {
+            int span = offsets[i] - copied;
+            source.get(base + copied, result, written, span);
+            written += span;
+            for (int j = 0; j < VAR.length(); j++) {
+                result[written++] = (byte) VAR.charAt(j);
+            }
+            copied = offsets[i] + lengths[i];
+        }
+        source.get(base + copied, result, written, length - copied);
+        return result;
+    }
+
+    /**
+     * Merge the edits of two scripts for the same source that touch different declarations.
+     *
+     * @return A script with the edits of both, in ascending order
+     */
+    static EditScript merge(EditScript first, EditScript second) {
+        if (second.isEmpty()) {
+            return first;
+        }
+        if (first.isEmpty()) {
+            return second;
+        }
+        EditScript merged = new EditScript(
+            new int[first.size + second.size], new int[first.size + second.size], 0);
+        int i = 0;
+        int j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.offsets[i] < second.offsets[j])) {
+                merged.add(first.offsets[i], first.lengths[i]);
+                i++;
+            } else {
+                merged.add(second.offsets[j], second.lengths[j]);
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Remove all edits, e.g. to reuse the script for the next chunk of a source.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Append an edit; edits must be added in ascending, non-overlapping order.
+     */
+    void add(int offset, int length) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+}
@@ -0,0 +1,12 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Decides whether a declaration found by a {@link RefactoringEngine} is replaced with 'var'.
+ * <p>
+ * Engines pass the declared type and the initializer type as written in the source, or
+ * {@link JavaTypeReplacer#UNKNOWN_TYPE} for an initializer whose type is not known.
+ */
+@FunctionalInterface
+public interface EligibilityPredicate {
+    boolean test(String declarationType, String initializerType, boolean isLocal, boolean isLoopVariable);
+}
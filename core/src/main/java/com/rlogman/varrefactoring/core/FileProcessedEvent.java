@@ -0,0 +1,57 @@
+package com.rlogman.varrefactoring.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one file processed by a {@link VarRefactoringProcessor}.
+ * Disabled by default; enable {@code com.rlogman.varrefactoring.FileProcessed} in a
+ * recording to see which files take long.
+ */
+@Name("com.rlogman.varrefactoring.FileProcessed")
+@Label("File Processed")
+@Category({"Java Var Refactoring"})
+@Description("A file was analyzed and, unless only edits were requested, rewritten")
+@Enabled(false)
+@StackTrace(false)
+final class FileProcessedEvent extends Event {
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @Description("Number of characters of the file content")
+    long size;
+
+    @Label("Bytes")
+    @DataAmount(DataAmount.BYTES)
+    @Description("Number of bytes of the UTF-8 file content, -1 if it was given as characters")
+    long bytes;
+
+    @Label("Candidates")
+    int candidates;
+
+    @Label("Accepted")
+    int accepted;
+
+    @Label("Rejected")
+    int rejected;
+
+    @Label("Cached")
+    boolean cached;
+
+    void set(FileStats stats) {
+        path = stats.getFileName();
+        size = stats.getCharactersScanned();
+        bytes = stats.getBytesScanned();
+        candidates = stats.getCandidates();
+        accepted = stats.getAccepted();
+        rejected = stats.getRejected();
+        cached = stats.isCached();
+    }
+}
@@ -0,0 +1,105 @@
+package com.rlogman.varrefactoring.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Outcome of processing one file of a batch.
+ * <p>
+ * A failing file does not abort the batch: its result carries the error instead of
+ * the refactored content, and the other files are processed as usual. The result of
+ * a file that was only analyzed carries a {@link CandidateReport} instead of content.
+ * <p>
+ * Files read as UTF-8 bytes keep their content as bytes, see {@link #getUtf8Content()}.
+ */
+public final class FileResult {
+    private final String content;
+    private final ByteBuffer utf8Content;
+    private final CandidateReport report;
+    private final boolean modified;
+    private final Throwable error;
+
+    private FileResult(String content, ByteBuffer utf8Content, CandidateReport report, boolean modified,
+                       Throwable error) {
+        this.content = content;
+        this.utf8Content = utf8Content;
+        this.report = report;
+        this.modified = modified;
+        this.error = error;
+    }
+
+    static FileResult success(String original, String content) {
+        // The processor returns the original instance when nothing was replaced
+        return new FileResult(content, null, null, content != original, null);
+    }
+
+    /**
+     * @param refactored The refactored content, or null if nothing was replaced
+     */
+    static FileResult success(ByteBuffer original, byte[] refactored) {
+        return refactored == null
+            ? new FileResult(null, original, null, false, null)
+            : new FileResult(null, ByteBuffer.wrap(refactored), null, true, null);
+    }
+
+    static FileResult analyzed(CandidateReport report) {
+        return new FileResult(null, null, report, report.acceptedCount() > 0, null);
+    }
+
+    static FileResult failure(Throwable error) {
+        return new FileResult(null, null, null, false, error);
+    }
+
+    /**
+     * @return Whether the file was processed without error
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return The refactored file content, or null if processing failed or the file was
+     *         only analyzed; content kept as bytes is decoded on every call
+     */
+    public String getContent() {
+        if (content == null && utf8Content != null) {
+            return StandardCharsets.UTF_8.decode(utf8Content.duplicate()).toString();
+        }
+        return content;
+    }
+
+    /**
+     * @return The refactored file content encoded as UTF-8, between the position and the
+     *         limit of a read-only buffer, or null if processing failed or the file was only
+     *         analyzed. Writing this out avoids decoding and re-encoding files read as bytes.
+     */
+    public ByteBuffer getUtf8Content() {
+        if (utf8Content != null) {
+            return utf8Content.asReadOnlyBuffer();
+        }
+        return content == null ? null : StandardCharsets.UTF_8.encode(content).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The candidates of an analyzed file, or null if the file was refactored or
+     *         processing failed
+     */
+    public CandidateReport getReport() {
+        return report;
+    }
+
+    /**
+     * @return Whether any declaration was replaced, i.e. whether the file needs to be written;
+     *         for an analyzed file, whether any declaration would be replaced
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * @return The error that stopped processing of this file, or null on success
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,188 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Statistics of processing one file, reported to a {@link ProcessingListener}.
+ * <p>
+ * Every declaration handed to the eligibility check is a candidate; it is either
+ * accepted or rejected for a {@link VarEligibilityChecker.RejectionReason}. Time is
+ * measured per {@link Phase}. A file whose edits come from the result cache has no
+ * candidates and only spends time in {@link Phase#REWRITE}.
+ * <p>
+ * The size of a file is counted in characters, and also in bytes if it was given as
+ * UTF-8 bytes or read from a channel.
+ */
+public final class FileStats {
+
+    /**
+     * The phases of processing a file.
+     */
+    public enum Phase {
+        /** Finding declarations; engines other than the syntactic one are timed as a whole here. */
+        SCAN,
+        /** Building the scope index that tells local declarations from fields. */
+        SCOPE,
+        /** Inferring initializer types and checking eligibility, including a fallback engine. */
+        INFERENCE,
+        /** Applying the edits to the content. */
+        REWRITE
+    }
+
+    private static final VarEligibilityChecker.RejectionReason[] REASONS = VarEligibilityChecker.RejectionReason.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String fileName;
+    private long charactersScanned;
+    private long bytesScanned = -1;
+    private int accepted;
+    private final int[] rejected = new int[REASONS.length];
+    private int undecided;
+    private final long[] nanos = new long[PHASES.length];
+    private boolean cached;
+
+    FileStats(String fileName, long charactersScanned) {
+        this.fileName = fileName;
+        this.charactersScanned = charactersScanned;
+    }
+
+    void addCharactersScanned(long count) {
+        charactersScanned += count;
+    }
+
+    void setCharactersScanned(long count) {
+        charactersScanned = count;
+    }
+
+    void setBytesScanned(long count) {
+        bytesScanned = count;
+    }
+
+    void accept() {
+        accepted++;
+    }
+
+    void reject(VarEligibilityChecker.RejectionReason reason) {
+        rejected[reason.ordinal()]++;
+    }
+
+    void addUndecided(int count) {
+        undecided += count;
+    }
+
+    void addNanos(Phase phase, long elapsed) {
+        nanos[phase.ordinal()] += elapsed;
+    }
+
+    void markCached() {
+        cached = true;
+    }
+
+    /**
+     * @return The name of the file, or null if the file was processed by content only
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return The number of characters of the file content
+     */
+    public long getCharactersScanned() {
+        return charactersScanned;
+    }
+
+    /**
+     * @return The number of bytes of the UTF-8 encoded file content, or -1 if the content
+     *         was given as characters
+     */
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    /**
+     * @return The number of declarations whose eligibility was checked
+     */
+    public int getCandidates() {
+        return accepted + getRejected();
+    }
+
+    /**
+     * @return The number of declarations replaced with 'var'
+     */
+    public int getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return The number of candidates that were not replaced
+     */
+    public int getRejected() {
+        int total = 0;
+        for (int count : rejected) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of candidates rejected for the given reason
+     */
+    public int getRejected(VarEligibilityChecker.RejectionReason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    /**
+     * @return The number of declarations the engine could not decide and handed to the fallback engine
+     */
+    public int getUndecided() {
+        return undecided;
+    }
+
+    /**
+     * @return The nanoseconds spent in the given phase
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The nanoseconds spent in all phases
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (long elapsed : nanos) {
+            total += elapsed;
+        }
+        return total;
+    }
+
+    /**
+     * @return Whether the edits were taken from the result cache
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("FileStats{");
+        if (fileName != null) {
+            text.append("file=").append(fileName).append(", ");
+        }
+        text.append("chars=").append(charactersScanned);
+        if (bytesScanned >= 0) {
+            text.append(", bytes=").append(bytesScanned);
+        }
+        text
+            .append(", candidates=").append(getCandidates())
+            .append(", accepted=").append(accepted);
+        for (VarEligibilityChecker.RejectionReason reason : REASONS) {
+            if (rejected[reason.ordinal()] > 0) {
+                text.append(", ").append(reason).append('=').append(rejected[reason.ordinal()]);
+            }
+        }
+        for (Phase phase : PHASES) {
+            text.append(", ").append(phase).append("Nanos=").append(nanos[phase.ordinal()]);
+        }
+        return text.append(cached ? ", cached}" : "}").toString();
+    }
+}
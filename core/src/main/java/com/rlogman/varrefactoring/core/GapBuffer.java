@@ -0,0 +1,115 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Editable text that keeps a gap of free space at the place of the last edit, as
+ * editors do. An edit moves the gap to its offset and fills or widens it, so a run of
+ * edits at nearby offsets copies only the characters between them instead of the
+ * whole text.
+ * <p>
+ * The buffer is read through {@link CharSequence} without copying it, e.g. by the
+ * lexer. It is not safe for concurrent use by multiple threads.
+ */
+final class GapBuffer implements CharSequence {
+    private static final int MIN_GAP = 64;
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    GapBuffer(CharSequence text) {
+        int length = text.length();
+        chars = new char[length + MIN_GAP];
+        for (int i = 0; i < length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        gapStart = length;
+        gapEnd = chars.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length());
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length());
+    }
+
+    /**
+     * @return The characters in {@code [start, end)}
+     */
+    String toString(int start, int end) {
+        Objects.checkFromToIndex(start, end, length());
+        if (end <= gapStart) {
+            return new String(chars, start, end - start);
+        }
+        int gap = gapEnd - gapStart;
+        if (start >= gapStart) {
+            return new String(chars, start + gap, end - start);
+        }
+        StringBuilder text = new StringBuilder(end - start);
+        text.append(chars, start, gapStart - start);
+        text.append(chars, gapEnd, end - gapStart);
+        return text.toString();
+    }
+
+    /**
+     * Replace the characters in {@code [offset, offset + removedLength)} with others.
+     *
+     * @throws IndexOutOfBoundsException If the removed characters are not within the text
+     */
+    void replace(int offset, int removedLength, CharSequence inserted) {
+        Objects.checkFromIndexSize(offset, removedLength, length());
+        moveGap(offset);
+        gapEnd += removedLength;
+        int insertedLength = inserted.length();
+        if (gapEnd - gapStart < insertedLength) {
+            grow(insertedLength);
+        }
+        for (int i = 0; i < insertedLength; i++) {
+            chars[gapStart++] = inserted.charAt(i);
+        }
+    }
+
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            int count = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - count, count);
+            gapStart = offset;
+            gapEnd -= count;
+        } else if (offset > gapStart) {
+            int count = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart = offset;
+            gapEnd += count;
+        }
+    }
+
+    /**
+     * Widen the gap so that it holds at least {@code needed} characters, moving the text
+     * after it to the end of a larger array.
+     */
+    private void grow(int needed) {
+        int tail = chars.length - gapEnd;
+        int capacity = Math.max(chars.length * 2, length() + needed + MIN_GAP);
+        char[] grown = Arrays.copyOf(chars, capacity);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+        chars = grown;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,244 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Objects;
+
+/**
+ * The analysis of one document that is kept up to date while the document is edited,
+ * e.g. by an editor that reports every change as a text delta.
+ * <p>
+ * The session keeps the text in a {@link GapBuffer}, together with the candidates and
+ * the {@link ScopeIndex} of the text. An edit that leaves the brace blocks of the file
+ * as they are, which is any edit that adds or removes no brace and does not change
+ * the kind of a block, e.g. by turning a statement into a class declaration, moves the
+ * offsets after it and re-analyzes only the statements it touches: from the statement
+ * it starts in to the end of the one it ends in, or of the one where the text lexes as
+ * before if the edit changes the tokens after it, e.g. by ending a line comment,
+ * together with the declarations whose statements contain it. The lexing and type
+ * inference an edit costs then scale with those statements instead of with the file.
+ * Any other edit is followed by a new scope index and an analysis of the whole file.
+ * <p>
+ * Sessions are opened with {@link VarRefactoringProcessor#openSession(String, String)}.
+ * A session is not safe for concurrent use by multiple threads.
+ */
+public final class IncrementalSession {
+    private final VarRefactoringProcessor processor;
+    private final boolean varSupported;
+    private final GapBuffer text;
+    // The text as a string, or null until it is asked for after an edit
+    private String content;
+    private ScopeIndex scopes;
+    private CandidateReport candidates;
+    private int fullAnalyses;
+
+    IncrementalSession(VarRefactoringProcessor processor, String content, boolean varSupported) {
+        this.processor = processor;
+        this.varSupported = varSupported;
+        this.text = new GapBuffer(content);
+        this.content = content;
+        analyzeAll();
+    }
+
+    /**
+     * @return The current text of the document
+     */
+    public String getContent() {
+        if (content == null) {
+            content = text.toString();
+        }
+        return content;
+    }
+
+    /**
+     * @return The candidates of the current text; the report is updated in place by
+     *         {@link #applyEdit(int, int, String)}
+     */
+    public CandidateReport getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return The edits that refactor the current text
+     */
+    public EditScript getEdits() {
+        return candidates.toEditScript();
+    }
+
+    /**
+     * @return The scope index of the current text, e.g. for
+     *         {@link VarRefactoringProcessor#analyzeRange(String, String, int, int, ScopeIndex)};
+     *         the index is updated in place by {@link #applyEdit(int, int, String)}
+     */
+    public ScopeIndex getScopeIndex() {
+        return scopes;
+    }
+
+    /**
+     * Apply a change of the document and update the analysis.
+     *
+     * @param offset Offset of the change in the current text
+     * @param removedLength Number of characters removed at {@code offset}
+     * @param insertedText Text inserted at {@code offset}
+     * @throws IndexOutOfBoundsException If the removed characters are not within the text
+     */
+    public void applyEdit(int offset, int removedLength, String insertedText) {
+        Objects.checkFromIndexSize(offset, removedLength, text.length());
+        String removedText = text.toString(offset, offset + removedLength);
+        text.replace(offset, removedLength, insertedText);
+        content = null;
+
+        int insertedLength = insertedText.length();
+        CharSequence before = new Replaced(text, offset, insertedLength, removedText);
+        int alikeFrom = scopes.blocksKeptBy(before, text, offset, removedLength, insertedLength);
+        // Without balanced delimiters a statement may run on past the block it starts in
+        if (alikeFrom < 0 || !scopes.isBalanced()) {
+            analyzeAll();
+            return;
+        }
+        int delta = insertedLength - removedLength;
+        scopes.shift(offset, delta);
+        if (!varSupported) {
+            return;
+        }
+
+        // The statements around the edit, in the text after it: a statement ends at a ';'
+        // outside parentheses or at a brace, and none of the braces moved. The edit may
+        // change how the text after it lexes, e.g. by ending a line comment, up to alikeFrom
+        int from = statementStart(offset);
+        int changedEnd = Math.max(offset + insertedLength, alikeFrom);
+        int to = text.length();
+        int depth = 0;
+        int scanStart = scopes.braceBoundary(offset);
+        JavaLexer lexer = new JavaLexer(text, scanStart, text.length());
+        for (int kind = lexer.next(); kind != JavaLexer.EOF; kind = lexer.next()) {
+            if (kind != JavaLexer.PUNCTUATION) {
+                continue;
+            }
+            char c = lexer.tokenChar();
+            if (lexer.tokenStart >= changedEnd && (c == '{' || c == '}' || (c == ';' && depth <= 0))) {
+                to = lexer.tokenEnd;
+                break;
+            }
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            }
+        }
+        // The declarations whose statements contain the edit, e.g. one whose initializer
+        // is a lambda the edit is in; statements nest, so this is a pass over the offsets
+        // rather than a search
+        int removedEnd = offset + removedLength;
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            if (candidates.typeStart(i) < removedEnd && candidates.statementEnd(i) >= offset) {
+                from = Math.min(from, candidates.typeStart(i));
+            }
+        }
+        CandidateReport region = new CandidateReport();
+        processor.analyzeInto(text, from, to, scopes, region);
+        candidates.splice(from, to - delta, region, removedEnd, delta);
+    }
+
+    /**
+     * Find where the statement that contains an offset starts: right after the last ';'
+     * outside parentheses before the offset, or right after the '{' of the block the
+     * offset is in. Blocks closed in between, e.g. the body of a lambda in an initializer,
+     * may belong to the statement, so they are skipped with the scope index rather than
+     * taken as its start; only the text between them is lexed.
+     */
+    private int statementStart(int offset) {
+        int end = offset;
+        while (true) {
+            int start = scopes.braceBoundary(end);
+            int found = -1;
+            int depth = 0;
+            JavaLexer lexer = new JavaLexer(text, start, end);
+            for (int kind = lexer.next(); kind != JavaLexer.EOF; kind = lexer.next()) {
+                if (kind != JavaLexer.PUNCTUATION) {
+                    continue;
+                }
+                char c = lexer.tokenChar();
+                if (c == '(' || c == '[') {
+                    depth++;
+                } else if (c == ')' || c == ']') {
+                    depth--;
+                } else if (c == ';' && depth <= 0) {
+                    found = lexer.tokenEnd;
+                }
+            }
+            if (found >= 0) {
+                return found;
+            }
+            int block = scopes.closedBlockBefore(start);
+            if (block < 0) {
+                return start;
+            }
+            end = scopes.blockStart(block);
+        }
+    }
+
+    /**
+     * @return The number of times the whole text was analyzed, including at the start
+     */
+    int fullAnalyses() {
+        return fullAnalyses;
+    }
+
+    private void analyzeAll() {
+        scopes = ScopeIndex.build(text);
+        candidates = new CandidateReport();
+        if (varSupported) {
+            processor.analyzeInto(text, 0, text.length(), scopes, candidates);
+        }
+        fullAnalyses++;
+    }
+
+    /**
+     * A text with the characters in {@code [offset, offset + length)} replaced, viewed
+     * without copying the text, e.g. to see a buffer as it was before an edit.
+     */
+    private static final class Replaced implements CharSequence {
+        private final CharSequence text;
+        private final int offset;
+        private final int length;
+        private final String replacement;
+
+        Replaced(CharSequence text, int offset, int length, String replacement) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+            this.replacement = replacement;
+        }
+
+        @Override
+        public int length() {
+            return text.length() - length + replacement.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < offset) {
+                return text.charAt(index);
+            }
+            int inReplacement = index - offset;
+            if (inReplacement < replacement.length()) {
+                return replacement.charAt(inReplacement);
+            }
+            return text.charAt(index - replacement.length() + length);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length());
+            StringBuilder sequence = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                sequence.append(charAt(i));
+            }
+            return sequence.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
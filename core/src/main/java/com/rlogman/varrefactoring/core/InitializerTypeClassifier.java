@@ -0,0 +1,642 @@
+package com.rlogman.varrefactoring.core;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Infers the static type of simple initializer expressions directly from the
+ * source buffer, without creating substrings or compiling regular expressions.
+ * <p>
+ * Recognized forms are numeric literals in every Java notation (decimal, octal,
+ * hex, binary, hex floating point, underscores, {@code L}/{@code f}/{@code d}
+ * suffixes and a leading sign), {@code true}/{@code false}, char literals, string
+ * literals and text blocks, class instance creation ({@code new T<...>(...)},
+ * including anonymous class bodies), array creation ({@code new T[n]},
+ * {@code new T[]{...}}), casts and parenthesized expressions. Anything else is
+ * reported as unknown.
+ * <p>
+ * Type names are returned in canonical form (no comments, and whitespace only as
+ * a single space between an identifier and a preceding identifier or {@code ?})
+ * and interned into a {@link TypeSymbolTable}, so repeated calls return the same
+ * {@code String} instance and allocate nothing, up to a limit on the number of
+ * distinct names. Primitive names and {@code String} are the JVM-interned literals.
+ * The {@code Id} variants return the ID of the name in the table instead, whose
+ * low bits tell if it is primitive or has a diamond, so that
+ * {@link VarEligibilityChecker#isEligibleForVarReplacement(int, int, boolean, boolean)}
+ * decides without looking at the characters again.
+ * <p>
+ * Instances keep a scratch buffer and are not thread-safe; use one per thread.
+ */
+public final class InitializerTypeClassifier {
+    /** Returned by {@link #classifyId} for initializers whose type cannot be inferred. */
+    public static final int UNKNOWN_ID = -2;
+
+    /** Default maximum number of names besides the literals, a few hundred KB at most. */
+    static final int DEFAULT_MAX_NAMES = 1 << 12;
+
+    /** Number of literal names every classifier interns: the primitive names and {@code String}. */
+    private static final int LITERALS = 9;
+
+    private final TypeSymbolTable symbols;
+    private final int booleanId;
+    private final int byteId;
+    private final int charId;
+    private final int shortId;
+    private final int intId;
+    private final int longId;
+    private final int floatId;
+    private final int doubleId;
+    private final int stringId;
+    private char[] scratch = new char[64];
+    /** The scratch buffer as a character sequence, for lookups in the table. */
+    private CharBuffer scratchView = CharBuffer.wrap(scratch);
+    /** Length of the name last copied into the scratch buffer. */
+    private int scratchLength;
+
+    public InitializerTypeClassifier() {
+        this(DEFAULT_MAX_NAMES);
+    }
+
+    /**
+     * @param maxNames The maximum number of names that are interned, besides the
+     *                 primitive names and {@code String}
+     */
+    InitializerTypeClassifier(int maxNames) {
+        this.symbols = new TypeSymbolTable(maxNames + LITERALS);
+        // Intern the literals first, so that declared and inferred primitive names
+        // are the same instance
+        this.booleanId = symbols.id("boolean");
+        this.byteId = symbols.id("byte");
+        this.charId = symbols.id("char");
+        this.shortId = symbols.id("short");
+        this.intId = symbols.id("int");
+        this.longId = symbols.id("long");
+        this.floatId = symbols.id("float");
+        this.doubleId = symbols.id("double");
+        this.stringId = symbols.id("String");
+    }
+
+    /**
+     * Infer the type of the initializer expression in {@code [start, end)}.
+     *
+     * @param source The source buffer
+     * @param start Start offset of the expression
+     * @param end End offset of the expression
+     * @return The interned canonical type name, or null if the type cannot be inferred
+     */
+    public String classify(CharSequence source, int start, int end) {
+        return toName(classifyId(source, start, end));
+    }
+
+    /**
+     * Infer the type of the initializer expression in {@code [start, end)}.
+     *
+     * @param source The source buffer
+     * @param start Start offset of the expression
+     * @param end End offset of the expression
+     * @return The ID of the canonical type name, {@link #UNKNOWN_ID} if the type cannot
+     *         be inferred, or {@link TypeSymbolTable#NO_ID} if the name is not interned
+     *         because the table is full
+     */
+    public int classifyId(CharSequence source, int start, int end) {
+        start = JavaLexer.skipWhitespaceAndComments(source, start, end);
+        end = trimEnd(source, start, end);
+        if (start >= end) {
+            return UNKNOWN_ID;
+        }
+
+        char c = source.charAt(start);
+        if (c == '(') {
+            int close = matchingClose(source, start, end);
+            if (close < 0) {
+                return UNKNOWN_ID;
+            }
+            if (close == end - 1) {
+                return classifyId(source, start + 1, close);
+            }
+            return classifyCast(source, start, close, end);
+        }
+        if (c == '"') {
+            return JavaLexer.skipString(source, start, end) == end ? stringId : UNKNOWN_ID;
+        }
+        if (c == '\'') {
+            return JavaLexer.skipCharLiteral(source, start, end) == end ? charId : UNKNOWN_ID;
+        }
+        if (c == '-' || c == '+') {
+            int operand = JavaLexer.skipWhitespaceAndComments(source, start + 1, end);
+            return operand < end && startsNumber(source, operand, end)
+                ? classifyNumber(source, operand, end)
+                : UNKNOWN_ID;
+        }
+        if (startsNumber(source, start, end)) {
+            return classifyNumber(source, start, end);
+        }
+        if (JavaLexer.isIdentifierStart(c)) {
+            int wordEnd = identifierEnd(source, start, end);
+            if (isWord(source, start, wordEnd, "true") || isWord(source, start, wordEnd, "false")) {
+                return wordEnd == end ? booleanId : UNKNOWN_ID;
+            }
+            if (isWord(source, start, wordEnd, "new")) {
+                return classifyCreation(source, wordEnd, end);
+            }
+        }
+        return UNKNOWN_ID;
+    }
+
+    /**
+     * Return the interned canonical form of the type written in {@code [start, end)}.
+     *
+     * @param source The source buffer
+     * @param start Start offset of the type
+     * @param end End offset of the type
+     * @return The interned canonical type name
+     */
+    public String typeName(CharSequence source, int start, int end) {
+        return toName(typeId(source, start, end));
+    }
+
+    /**
+     * Return the ID of the canonical form of the type written in {@code [start, end)}.
+     *
+     * @param source The source buffer
+     * @param start Start offset of the type
+     * @param end End offset of the type
+     * @return The ID of the canonical type name, or {@link TypeSymbolTable#NO_ID} if the
+     *         name is not interned because the table is full
+     */
+    public int typeId(CharSequence source, int start, int end) {
+        return intern(source, start, end, 0);
+    }
+
+    /**
+     * @param id An ID returned by this classifier, other than {@link #UNKNOWN_ID} and
+     *           {@link TypeSymbolTable#NO_ID}
+     * @return The type name with that ID
+     */
+    public String name(int id) {
+        return symbols.name(id);
+    }
+
+    /**
+     * The name with an ID just returned by this classifier; a name that is not interned
+     * is still in the scratch buffer.
+     */
+    private String toName(int id) {
+        if (id == UNKNOWN_ID) {
+            return null;
+        }
+        return id == TypeSymbolTable.NO_ID ? new String(scratch, 0, scratchLength) : symbols.name(id);
+    }
+
+    private int classifyNumber(CharSequence source, int start, int end) {
+        if (JavaLexer.skipNumber(source, start, end) != end) {
+            return UNKNOWN_ID;
+        }
+        char last = source.charAt(end - 1);
+        char first = source.charAt(start);
+        char radix = end - start > 2 && first == '0' ? source.charAt(start + 1) : 0;
+
+        if (radix == 'x' || radix == 'X') {
+            boolean floating = false;
+            for (int i = start + 2; i < end; i++) {
+                char c = source.charAt(i);
+                if (c == '.' || c == 'p' || c == 'P') {
+                    floating = true;
+                } else if (!isHexDigit(c) && c != '_' && c != '+' && c != '-' && i != end - 1) {
+                    return UNKNOWN_ID;
+                }
+            }
+            if (floating) {
+                return last == 'f' || last == 'F' ? floatId : doubleId;
+            }
+            return last == 'l' || last == 'L' ? longId : intId;
+        }
+
+        if (radix == 'b' || radix == 'B') {
+            for (int i = start + 2; i < end - 1; i++) {
+                char c = source.charAt(i);
+                if (c != '0' && c != '1' && c != '_') {
+                    return UNKNOWN_ID;
+                }
+            }
+            return last == 'l' || last == 'L' ? longId : intId;
+        }
+
+        boolean floating = false;
+        for (int i = start; i < end - 1; i++) {
+            char c = source.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                floating = true;
+            } else if (!JavaLexer.isDigit(c) && c != '_' && c != '+' && c != '-') {
+                return UNKNOWN_ID;
+            }
+        }
+        switch (last) {
+            case 'f':
+            case 'F':
+                return floatId;
+            case 'd':
+            case 'D':
+                return doubleId;
+            case 'l':
+            case 'L':
+                return floating ? UNKNOWN_ID : longId;
+            default:
+                if (!JavaLexer.isDigit(last) && last != '.') {
+                    return UNKNOWN_ID;
+                }
+                return floating || last == '.' ? doubleId : intId;
+        }
+    }
+
+    /**
+     * Classify {@code new ...} where {@code from} is right after the keyword.
+     */
+    private int classifyCreation(CharSequence source, int from, int end) {
+        int typeStart = JavaLexer.skipWhitespaceAndComments(source, from, end);
+        if (typeStart == from || typeStart >= end || !JavaLexer.isIdentifierStart(source.charAt(typeStart))) {
+            return UNKNOWN_ID;
+        }
+        int nameEnd = qualifiedNameEnd(source, typeStart, end);
+        int typeEnd = nameEnd;
+        boolean diamond = false;
+
+        int i = JavaLexer.skipWhitespaceAndComments(source, nameEnd, end);
+        if (i < end && source.charAt(i) == '<') {
+            int close = typeArgumentsEnd(source, i, end);
+            if (close < 0) {
+                return UNKNOWN_ID;
+            }
+            diamond = JavaLexer.skipWhitespaceAndComments(source, i + 1, close) == close;
+            typeEnd = close + 1;
+            i = JavaLexer.skipWhitespaceAndComments(source, typeEnd, end);
+        }
+        if (i >= end) {
+            return UNKNOWN_ID;
+        }
+
+        char c = source.charAt(i);
+        if (c == '(') {
+            int close = matchingClose(source, i, end);
+            if (close < 0) {
+                return UNKNOWN_ID;
+            }
+            i = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+            if (i < end && source.charAt(i) == '{') {
+                // Anonymous class body
+                close = matchingClose(source, i, end);
+                if (close < 0) {
+                    return UNKNOWN_ID;
+                }
+                i = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+            }
+            if (i != end) {
+                return UNKNOWN_ID;
+            }
+            return diamond ? intern(source, typeStart, nameEnd, 0) : intern(source, typeStart, typeEnd, 0);
+        }
+
+        if (c == '[') {
+            int dimensions = 0;
+            while (i < end && source.charAt(i) == '[') {
+                int close = matchingClose(source, i, end);
+                if (close < 0) {
+                    return UNKNOWN_ID;
+                }
+                dimensions++;
+                i = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+            }
+            if (i < end && source.charAt(i) == '{') {
+                int close = matchingClose(source, i, end);
+                if (close < 0) {
+                    return UNKNOWN_ID;
+                }
+                i = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+            }
+            return i == end ? intern(source, typeStart, typeEnd, dimensions) : UNKNOWN_ID;
+        }
+        return UNKNOWN_ID;
+    }
+
+    /**
+     * Classify {@code (T) operand} where {@code close} is the offset of the closing parenthesis.
+     */
+    private int classifyCast(CharSequence source, int open, int close, int end) {
+        int typeStart = JavaLexer.skipWhitespaceAndComments(source, open + 1, close);
+        int typeEnd = trimEnd(source, typeStart, close);
+        if (typeStart >= typeEnd || !isType(source, typeStart, typeEnd)) {
+            return UNKNOWN_ID;
+        }
+
+        int operand = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+        if (operand >= end) {
+            return UNKNOWN_ID;
+        }
+        char first = source.charAt(operand);
+        if (!startsOperand(source, operand, end)) {
+            // (a).b(), (a)[0] and (a) * b use a parenthesized expression, they are no casts
+            return UNKNOWN_ID;
+        }
+        boolean primitive = isPrimitive(source, typeStart, typeEnd);
+        if (!primitive && (first == '+' || first == '-')) {
+            // (a) - b is a subtraction, not a cast
+            return UNKNOWN_ID;
+        }
+        if (!isUnaryOperand(source, operand, end)) {
+            return UNKNOWN_ID;
+        }
+        return primitive ? primitiveId(source, typeStart, typeEnd) : intern(source, typeStart, typeEnd, 0);
+    }
+
+    /**
+     * Check that {@code [start, end)} contains no top-level binary or ternary
+     * operator, so a preceding cast applies to the whole expression.
+     */
+    private static boolean isUnaryOperand(CharSequence source, int start, int end) {
+        int i = start;
+        // Prefix operators
+        while (i < end && isPrefixOperator(source.charAt(i))) {
+            i = JavaLexer.skipWhitespaceAndComments(source, i + 1, end);
+        }
+        while (i < end) {
+            char c = source.charAt(i);
+            switch (c) {
+                case '(':
+                case '[':
+                case '{': {
+                    int close = matchingClose(source, i, end);
+                    if (close < 0) {
+                        return false;
+                    }
+                    i = close + 1;
+                    break;
+                }
+                case '"':
+                    i = JavaLexer.skipString(source, i, end);
+                    break;
+                case '\'':
+                    i = JavaLexer.skipCharLiteral(source, i, end);
+                    break;
+                case '+': case '-': case '*': case '%': case '<': case '>': case '=':
+                case '&': case '|': case '^': case '?': case ':':
+                    return false;
+                case '/':
+                    if (i + 1 < end && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                        i = JavaLexer.skipWhitespaceAndComments(source, i, end);
+                        break;
+                    }
+                    return false;
+                default:
+                    if (JavaLexer.isDigit(c) && (i == start || !JavaLexer.isIdentifierPart(source.charAt(i - 1)))) {
+                        i = JavaLexer.skipNumber(source, i, end);
+                    } else if (JavaLexer.isIdentifierStart(c)) {
+                        int wordEnd = identifierEnd(source, i, end);
+                        if (isWord(source, i, wordEnd, "instanceof")) {
+                            return false;
+                        }
+                        i = wordEnd;
+                    } else {
+                        i++;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that {@code [start, end)} is a type: a primitive or qualified name with
+     * optional type arguments, followed by optional array dimensions.
+     */
+    private static boolean isType(CharSequence source, int start, int end) {
+        if (!JavaLexer.isIdentifierStart(source.charAt(start))) {
+            return false;
+        }
+        int i = qualifiedNameEnd(source, start, end);
+        i = JavaLexer.skipWhitespaceAndComments(source, i, end);
+        if (i < end && source.charAt(i) == '<') {
+            int close = typeArgumentsEnd(source, i, end);
+            if (close < 0) {
+                return false;
+            }
+            i = JavaLexer.skipWhitespaceAndComments(source, close + 1, end);
+        }
+        while (i < end && source.charAt(i) == '[') {
+            i = JavaLexer.skipWhitespaceAndComments(source, i + 1, end);
+            if (i >= end || source.charAt(i) != ']') {
+                return false;
+            }
+            i = JavaLexer.skipWhitespaceAndComments(source, i + 1, end);
+        }
+        return i == end;
+    }
+
+    /**
+     * Find the {@code >} closing the type argument list opened at {@code open},
+     * accepting only characters that can appear in type arguments.
+     *
+     * @return The offset of the closing {@code >}, or -1
+     */
+    private static int typeArgumentsEnd(CharSequence source, int open, int end) {
+        int nesting = 0;
+        for (int i = open; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '<') {
+                nesting++;
+            } else if (c == '>') {
+                if (--nesting == 0) {
+                    return i;
+                }
+            } else if (c == '/' && i + 1 < end && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                i = JavaLexer.skipWhitespaceAndComments(source, i, end) - 1;
+            } else if (!JavaLexer.isIdentifierPart(c) && c != '.' && c != ',' && c != '?' && c != '['
+                    && c != ']' && c != '@' && c != '&' && !Character.isWhitespace(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the bracket closing the one at {@code open}, skipping literals and comments.
+     *
+     * @return The offset of the closing bracket, or -1
+     */
+    private static int matchingClose(CharSequence source, int open, int end) {
+        int depth = 0;
+        int i = open;
+        while (i < end) {
+            char c = source.charAt(i);
+            switch (c) {
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+                    i++;
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    if (--depth == 0) {
+                        return i;
+                    }
+                    i++;
+                    break;
+                case '"':
+                    i = JavaLexer.skipString(source, i, end);
+                    break;
+                case '\'':
+                    i = JavaLexer.skipCharLiteral(source, i, end);
+                    break;
+                case '/':
+                    i = i + 1 < end && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')
+                            ? JavaLexer.skipWhitespaceAndComments(source, i, end)
+                            : i + 1;
+                    break;
+                default:
+                    i++;
+                    break;
+            }
+        }
+        return -1;
+    }
+
+    private static int qualifiedNameEnd(CharSequence source, int start, int end) {
+        int i = identifierEnd(source, start, end);
+        while (true) {
+            int dot = JavaLexer.skipWhitespaceAndComments(source, i, end);
+            if (dot >= end || source.charAt(dot) != '.') {
+                return i;
+            }
+            int next = JavaLexer.skipWhitespaceAndComments(source, dot + 1, end);
+            if (next >= end || !JavaLexer.isIdentifierStart(source.charAt(next))) {
+                return i;
+            }
+            i = identifierEnd(source, next, end);
+        }
+    }
+
+    private static int identifierEnd(CharSequence source, int start, int end) {
+        int i = start + 1;
+        while (i < end && JavaLexer.isIdentifierPart(source.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(CharSequence source, int start, int end) {
+        while (end > start && Character.isWhitespace(source.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean startsNumber(CharSequence source, int start, int end) {
+        char c = source.charAt(start);
+        return JavaLexer.isDigit(c) || (c == '.' && start + 1 < end && JavaLexer.isDigit(source.charAt(start + 1)));
+    }
+
+    /**
+     * Check that an expression can start at {@code start}: with an identifier, a literal,
+     * a parenthesis or a prefix operator, not with a member access, an array access, a
+     * method reference or a binary operator.
+     */
+    private static boolean startsOperand(CharSequence source, int start, int end) {
+        char c = source.charAt(start);
+        return JavaLexer.isIdentifierStart(c) || c == '(' || c == '"' || c == '\''
+            || isPrefixOperator(c) || startsNumber(source, start, end);
+    }
+
+    private static boolean isPrefixOperator(char c) {
+        return c == '-' || c == '+' || c == '!' || c == '~';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return JavaLexer.isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isWord(CharSequence source, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (source.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPrimitive(CharSequence source, int start, int end) {
+        return primitiveId(source, start, end) != UNKNOWN_ID;
+    }
+
+    private int primitiveId(CharSequence source, int start, int end) {
+        switch (end - start) {
+            case 3:
+                return isWord(source, start, end, "int") ? intId : UNKNOWN_ID;
+            case 4:
+                if (isWord(source, start, end, "long")) return longId;
+                if (isWord(source, start, end, "char")) return charId;
+                if (isWord(source, start, end, "byte")) return byteId;
+                return UNKNOWN_ID;
+            case 5:
+                if (isWord(source, start, end, "short")) return shortId;
+                if (isWord(source, start, end, "float")) return floatId;
+                return UNKNOWN_ID;
+            case 6:
+                return isWord(source, start, end, "double") ? doubleId : UNKNOWN_ID;
+            case 7:
+                return isWord(source, start, end, "boolean") ? booleanId : UNKNOWN_ID;
+            default:
+                return UNKNOWN_ID;
+        }
+    }
+
+    /**
+     * Copy the canonical form of {@code [start, end)} plus {@code dimensions}
+     * array suffixes into the scratch buffer and intern it.
+     */
+    private int intern(CharSequence source, int start, int end, int dimensions) {
+        int length = 0;
+        boolean pendingSpace = false;
+        int i = start;
+        while (i < end) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (c == '/' && i + 1 < end && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                pendingSpace = true;
+                i = JavaLexer.skipWhitespaceAndComments(source, i, end);
+                continue;
+            }
+            if (length + 2 > scratch.length) {
+                grow();
+            }
+            if (pendingSpace && length > 0 && JavaLexer.isIdentifierPart(c)
+                    && (JavaLexer.isIdentifierPart(scratch[length - 1]) || scratch[length - 1] == '?')) {
+                scratch[length++] = ' ';
+            }
+            pendingSpace = false;
+            scratch[length++] = c;
+            i++;
+        }
+        for (int d = 0; d < dimensions; d++) {
+            if (length + 2 > scratch.length) {
+                grow();
+            }
+            scratch[length++] = '[';
+            scratch[length++] = ']';
+        }
+        scratchLength = length;
+        return symbols.id(scratchView, 0, length);
+    }
+
+    private void grow() {
+        scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        scratchView = CharBuffer.wrap(scratch);
+    }
+}
@@ -0,0 +1,97 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Keyword classification for identifier tokens produced by {@link JavaLexer}.
+ * Lookups compare the token in place, so no substring is created.
+ */
+final class JavaKeywords {
+    /** An ordinary identifier. */
+    static final int NONE = 0;
+    /** A declaration modifier such as {@code final} or {@code static}. */
+    static final int MODIFIER = 1;
+    /** A primitive type name. */
+    static final int PRIMITIVE = 2;
+    /** Any other reserved word or literal ({@code return}, {@code new}, {@code true}, ...). */
+    static final int RESERVED = 3;
+    /** The contextual keyword {@code var}: not a type we replace, but a legal variable name. */
+    static final int VAR = 4;
+
+    private JavaKeywords() {
+    }
+
+    /**
+     * Classify the current identifier token of the lexer.
+     */
+    static int classify(JavaLexer lexer) {
+        switch (lexer.tokenChar()) {
+            case 'a':
+                if (lexer.tokenIs("abstract")) return MODIFIER;
+                if (lexer.tokenIs("assert")) return RESERVED;
+                return NONE;
+            case 'b':
+                if (lexer.tokenIs("boolean") || lexer.tokenIs("byte")) return PRIMITIVE;
+                if (lexer.tokenIs("break")) return RESERVED;
+                return NONE;
+            case 'c':
+                if (lexer.tokenIs("char")) return PRIMITIVE;
+                if (lexer.tokenIs("case") || lexer.tokenIs("catch") || lexer.tokenIs("class")
+                        || lexer.tokenIs("const") || lexer.tokenIs("continue")) return RESERVED;
+                return NONE;
+            case 'd':
+                if (lexer.tokenIs("double")) return PRIMITIVE;
+                if (lexer.tokenIs("default")) return MODIFIER;
+                if (lexer.tokenIs("do")) return RESERVED;
+                return NONE;
+            case 'e':
+                if (lexer.tokenIs("else") || lexer.tokenIs("enum") || lexer.tokenIs("extends")) return RESERVED;
+                return NONE;
+            case 'f':
+                if (lexer.tokenIs("final")) return MODIFIER;
+                if (lexer.tokenIs("float")) return PRIMITIVE;
+                if (lexer.tokenIs("for") || lexer.tokenIs("finally") || lexer.tokenIs("false")) return RESERVED;
+                return NONE;
+            case 'g':
+                if (lexer.tokenIs("goto")) return RESERVED;
+                return NONE;
+            case 'i':
+                if (lexer.tokenIs("int")) return PRIMITIVE;
+                if (lexer.tokenIs("if") || lexer.tokenIs("implements") || lexer.tokenIs("import")
+                        || lexer.tokenIs("instanceof") || lexer.tokenIs("interface")) return RESERVED;
+                return NONE;
+            case 'l':
+                if (lexer.tokenIs("long")) return PRIMITIVE;
+                return NONE;
+            case 'n':
+                if (lexer.tokenIs("native")) return MODIFIER;
+                if (lexer.tokenIs("new") || lexer.tokenIs("null")) return RESERVED;
+                return NONE;
+            case 'p':
+                if (lexer.tokenIs("private") || lexer.tokenIs("protected") || lexer.tokenIs("public")) return MODIFIER;
+                if (lexer.tokenIs("package")) return RESERVED;
+                return NONE;
+            case 'r':
+                if (lexer.tokenIs("return")) return RESERVED;
+                return NONE;
+            case 's':
+                if (lexer.tokenIs("short")) return PRIMITIVE;
+                if (lexer.tokenIs("static") || lexer.tokenIs("strictfp") || lexer.tokenIs("synchronized")) return MODIFIER;
+                if (lexer.tokenIs("super") || lexer.tokenIs("switch")) return RESERVED;
+                return NONE;
+            case 't':
+                if (lexer.tokenIs("transient")) return MODIFIER;
+                if (lexer.tokenIs("this") || lexer.tokenIs("throw") || lexer.tokenIs("throws")
+                        || lexer.tokenIs("try") || lexer.tokenIs("true")) return RESERVED;
+                return NONE;
+            case 'v':
+                if (lexer.tokenIs("var")) return VAR;
+                if (lexer.tokenIs("volatile")) return MODIFIER;
+                if (lexer.tokenIs("void")) return RESERVED;
+                return NONE;
+            case 'w':
+                if (lexer.tokenIs("while")) return RESERVED;
+                return NONE;
+            default:
+                return NONE;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Minimal, allocation-free Java tokenizer used by the scanners in this package.
+ * <p>
+ * The lexer only distinguishes the token classes the refactoring needs:
+ * identifiers (including keywords), numeric literals, string/text-block and
+ * char literals, and single-character punctuation. Whitespace and comments are
+ * skipped. Tokens are reported as offsets into the source, so no substrings are
+ * created while scanning.
+ */
+final class JavaLexer {
+    static final int EOF = 0;
+    static final int IDENTIFIER = 1;
+    static final int NUMBER = 2;
+    static final int STRING = 3;
+    static final int CHAR = 4;
+    static final int PUNCTUATION = 5;
+
+    private final CharSequence source;
+    private final int end;
+    private int position;
+
+    /** Start offset of the current token (inclusive). */
+    int tokenStart;
+    /** End offset of the current token (exclusive). */
+    int tokenEnd;
+
+    JavaLexer(CharSequence source) {
+        this(source, 0, source.length());
+    }
+
+    JavaLexer(CharSequence source, int start, int end) {
+        this.source = source;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return The kind of the token, or {@link #EOF} at the end of input
+     */
+    int next() {
+        skipWhitespaceAndComments();
+        tokenStart = position;
+        if (position >= end) {
+            tokenEnd = end;
+            return EOF;
+        }
+
+        char c = source.charAt(position);
+        int kind;
+        if (c == '"') {
+            position = skipString(source, position, end);
+            kind = STRING;
+        } else if (c == '\'') {
+            position = skipCharLiteral(source, position, end);
+            kind = CHAR;
+        } else if (isDigit(c) || (c == '.' && position + 1 < end && isDigit(source.charAt(position + 1)))) {
+            position = skipNumber(source, position, end);
+            kind = NUMBER;
+        } else if (isIdentifierStart(c)) {
+            position++;
+            while (position < end && isIdentifierPart(source.charAt(position))) {
+                position++;
+            }
+            kind = IDENTIFIER;
+        } else {
+            position++;
+            kind = PUNCTUATION;
+        }
+        tokenEnd = position;
+        return kind;
+    }
+
+    /**
+     * @return The offset the next call to {@link #next()} starts from
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Move the lexer back (or forward) to a previously observed position.
+     * The position must be at a token boundary in plain code.
+     */
+    void reset(int position) {
+        this.position = position;
+    }
+
+    /**
+     * @return The first character of the current token
+     */
+    char tokenChar() {
+        return source.charAt(tokenStart);
+    }
+
+    /**
+     * @return The character right after the current token, or 0 at the end of input
+     */
+    char charAfterToken() {
+        return tokenEnd < end ? source.charAt(tokenEnd) : 0;
+    }
+
+    /**
+     * Check whether the current token spells the given word.
+     */
+    boolean tokenIs(String word) {
+        int length = tokenEnd - tokenStart;
+        if (length != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(tokenStart + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespaceAndComments() {
+        position = skipWhitespaceAndComments(source, position, end);
+    }
+
+    /**
+     * Skip whitespace and comments starting at {@code from}.
+     *
+     * @return The offset of the next token, or {@code end}
+     */
+    static int skipWhitespaceAndComments(CharSequence source, int from, int end) {
+        int position = from;
+        while (position < end) {
+            char c = source.charAt(position);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                position++;
+            } else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '/') {
+                position += 2;
+                while (position < end && source.charAt(position) != '\n' && source.charAt(position) != '\r') {
+                    position++;
+                }
+            } else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '*') {
+                position += 2;
+                while (position < end
+                        && !(source.charAt(position) == '*' && position + 1 < end && source.charAt(position + 1) == '/')) {
+                    position++;
+                }
+                position = Math.min(end, position + 2);
+            } else if (c > 0x7f && Character.isWhitespace(c)) {
+                position++;
+            } else {
+                return position;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Skip a string literal or text block starting with the {@code "} at {@code from}.
+     *
+     * @return The offset right after the literal
+     */
+    static int skipString(CharSequence source, int from, int end) {
+        // Text block: """ ... """
+        if (from + 2 < end && source.charAt(from + 1) == '"' && source.charAt(from + 2) == '"') {
+            int i = from + 3;
+            while (i < end) {
+                char c = source.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                } else if (c == '"' && i + 2 < end && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"') {
+                    return i + 3;
+                } else {
+                    i++;
+                }
+            }
+            return end;
+        }
+
+        // Regular string literal; an unterminated literal ends at the line break
+        int i = from + 1;
+        while (i < end) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Skip a char literal starting with the {@code '} at {@code from}.
+     *
+     * @return The offset right after the literal
+     */
+    static int skipCharLiteral(CharSequence source, int from, int end) {
+        int i = from + 1;
+        while (i < end) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'') {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Skip a numeric literal starting at {@code from}, including suffixes and exponents.
+     *
+     * @return The offset right after the literal
+     */
+    static int skipNumber(CharSequence source, int from, int end) {
+        int i = from;
+        boolean hex = from + 1 < end && source.charAt(from) == '0'
+                && (source.charAt(from + 1) == 'x' || source.charAt(from + 1) == 'X');
+        while (i < end) {
+            char c = source.charAt(i);
+            if (isIdentifierPart(c) || c == '.') {
+                i++;
+            } else if ((c == '+' || c == '-') && i > from) {
+                // Exponent sign: 1e-5, 0x1p+3
+                char previous = source.charAt(i - 1);
+                boolean exponent = hex ? (previous == 'p' || previous == 'P') : (previous == 'e' || previous == 'E');
+                if (!exponent) {
+                    break;
+                }
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isIdentifierStart(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+        }
+        return Character.isJavaIdentifierStart(c);
+    }
+
+    static boolean isIdentifierPart(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+        }
+        return Character.isJavaIdentifierPart(c);
+    }
+}
@@ -1,14 +1,31 @@
 package com.rlogman.varrefactoring.core;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * Handles the actual replacement of explicit types with 'var' in Java code.
- * This is a simplified implementation that would be replaced with proper
- * Java parsing in a real implementation.
+ * Declarations are located by a single-pass {@link DeclarationScanner} and
+ * classified as local or field through a {@link ScopeIndex}; initializer types
+ * are inferred syntactically by an {@link InitializerTypeClassifier}, whose type IDs
+ * let the eligibility rules compare types without looking at their characters.
+ * <p>
+ * A replacer is safe for concurrent use by multiple threads; the only mutable
+ * state, the classifier, is kept per thread.
  */
-public class JavaTypeReplacer {
+public class JavaTypeReplacer implements RefactoringEngine {
+    /** Type reported to the eligibility predicate when an initializer cannot be typed. */
+    public static final String UNKNOWN_TYPE = "Object";
+
+    /** Declarations between two polls of a cancellation token, minus one; a power of two minus one. */
+    private static final int CANCELLATION_CHECK_MASK = 16 - 1;
+
+    private final DeclarationScanner scanner = new DeclarationScanner();
+    // Classifiers keep a scratch buffer and a symbol table, so each thread gets its own
+    private final ThreadLocal<InitializerTypeClassifier> classifiers =
+        ThreadLocal.withInitial(InitializerTypeClassifier::new);
 
     /**
      * Replace explicit type declarations with 'var' where appropriate.
@@ -21,118 +38,338 @@ public class JavaTypeReplacer {
             String fileContent,
             EligibilityPredicate eligibilityPredicate) {
 
-        // In a real implementation, this would use a proper Java parser
-        // like JavaParser or Eclipse JDT to properly understand the code
-        // This is a simplified example
-
-        StringBuilder result = new StringBuilder(fileContent);
-
-        // Simple pattern to match variable declarations
-        // This is oversimplified and would need a proper parser in reality
-        // Capture group 1: modifiers (like 'final')
-        // Capture group 2: type name
-        // Capture group 3: variable name
-        // Capture group 4: initializer
-        Pattern pattern = Pattern.compile(
-            "\\b((?:final\\s+)?)([A-Za-z][A-Za-z0-9_]*(?:<.*?>)?)\\s+([a-z][A-Za-z0-9_]*)\\s*=\\s*(.+?);"
-        );
-
-        Matcher matcher = pattern.matcher(fileContent);
-
-        // Track offset changes as we modify the string
-        int offset = 0;
-
-        while (matcher.find()) {
-            // Group 1 contains modifiers like 'final' - we don't modify these, just preserve them
-            String declarationType = matcher.group(2);
-            // Group 3 contains variable name - not used for the replacement logic
-            String initializer = matcher.group(4);
-            
-            // Determine if this is a field or local variable
-            boolean isLocal = isLocalVariable(fileContent, matcher.start());
+        return findReplacements(fileContent, eligibilityPredicate).applyTo(fileContent);
+    }
 
-            // For demonstration only - would need actual type analysis
-            String initializerType = inferType(initializer);
+    @Override
+    public String getName() {
+        return "syntactic";
+    }
 
-            // Check if this declaration is eligible for 'var' replacement
-            if (eligibilityPredicate.test(declarationType, initializerType, isLocal, false)) {
-                int typeReplaceStart = matcher.start(2) + offset;
-                int typeReplaceEnd = matcher.end(2) + offset;
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.SYNTACTIC, Capability.INCREMENTAL);
+    }
 
-                // Replace just the type with 'var', preserving any modifiers
-                result.replace(typeReplaceStart, typeReplaceEnd, "var");
+    @Override
+    public EditScript findReplacements(
+            String fileContent,
+            EligibilityPredicate eligibilityPredicate,
+            IntPredicate scope,
+            IntConsumer undecided) {
 
-                // Update offset for future replacements
-                offset += "var".length() - declarationType.length();
+        return findReplacements(fileContent, null, eligibilityPredicate, scope, undecided, null, null);
+    }
+
+    /**
+     * Compute the edits, deciding declarations by the IDs of their types with the rules of
+     * {@code checker}. The time of each phase and each decision is added to {@code stats}
+     * if it is not null. Phases and slow declarations are also recorded as flight recorder
+     * events when those are enabled.
+     * <p>
+     * Once {@code cancellation} is cancelled, the edits of the declarations checked so far
+     * are returned; no declaration is reported as undecided after that.
+     * <p>
+     * The content may be any character sequence, such as a {@link Utf8Text} view of bytes.
+     */
+    EditScript findReplacements(
+            CharSequence fileContent,
+            VarEligibilityChecker checker,
+            IntPredicate scope,
+            IntConsumer undecided,
+            FileStats stats,
+            CancellationToken cancellation) {
+
+        return findReplacements(fileContent, checker, null, scope, undecided, stats, cancellation);
+    }
+
+    /**
+     * Compute the edits with either a checker or a predicate, see above.
+     */
+    private EditScript findReplacements(
+            CharSequence fileContent,
+            VarEligibilityChecker checker,
+            EligibilityPredicate eligibilityPredicate,
+            IntPredicate scope,
+            IntConsumer undecided,
+            FileStats stats,
+            CancellationToken cancellation) {
+
+        long start = stats == null ? 0 : System.nanoTime();
+        PhaseEvent phase = PhaseEvent.begin(getName(), FileStats.Phase.SCAN, fileContent.length());
+        Declarations declarations = scanner.scan(fileContent, 0, fileContent.length(), cancellation);
+        PhaseEvent.end(phase);
+        if (stats != null) {
+            long scanned = System.nanoTime();
+            stats.addNanos(FileStats.Phase.SCAN, scanned - start);
+            start = scanned;
+        }
+        if (declarations.size() == 0 || cancellation != null && cancellation.isCancelled()) {
+            return EditScript.EMPTY;
+        }
+        phase = PhaseEvent.begin(getName(), FileStats.Phase.SCOPE, fileContent.length());
+        ScopeIndex scopes = ScopeIndex.build(fileContent);
+        PhaseEvent.end(phase);
+        if (stats != null) {
+            long indexed = System.nanoTime();
+            stats.addNanos(FileStats.Phase.SCOPE, indexed - start);
+            start = indexed;
+        }
+        Decider decider = new Decider(classifiers.get(), fileContent, checker, eligibilityPredicate, stats);
+        phase = PhaseEvent.begin(getName(), FileStats.Phase.INFERENCE, fileContent.length());
+        boolean traceDeclarations = SlowDeclarationEvent.isTraced();
+
+        EditScript edits = null;
+        for (int i = 0; i < declarations.size(); i++) {
+            if (cancellation != null && (i & CANCELLATION_CHECK_MASK) == 0 && cancellation.isCancelled()) {
+                break;
+            }
+            int typeStart = declarations.typeStart(i);
+            if (scope != null && !scope.test(typeStart)) {
+                continue;
+            }
+            int typeEnd = declarations.typeEnd(i);
+            SlowDeclarationEvent slow = SlowDeclarationEvent.begin(traceDeclarations);
+
+            // Syntactic inference only - a resolving engine would know more
+            int initializerTypeId = decider.classify(declarations, i);
+            if (initializerTypeId == InitializerTypeClassifier.UNKNOWN_ID) {
+                if (undecided != null) {
+                    undecided.accept(typeStart);
+                    continue;
+                }
+                initializerTypeId = decider.unknownTypeId;
+            }
+
+            // Determine if this is a field or local variable
+            boolean isLocal = scopes.isInCodeBody(typeStart);
+
+            // Check if this declaration is eligible for 'var' replacement
+            if (decider.isEligible(declarations, i, initializerTypeId, isLocal)) {
+                if (edits == null) {
+                    edits = new EditScript();
+                }
+                // Replace just the type with 'var', preserving any modifiers
+                edits.add(typeStart, typeEnd - typeStart);
+            }
+            if (slow != null) {
+                SlowDeclarationEvent.end(slow, getName(), typeStart, decider.declarationType(declarations, i),
+                    decider.initializerType(declarations, i, initializerTypeId));
             }
         }
+        PhaseEvent.end(phase);
 
-        return result.toString();
+        if (stats != null) {
+            stats.addNanos(FileStats.Phase.INFERENCE, System.nanoTime() - start);
+        }
+        return edits == null ? EditScript.EMPTY : edits;
     }
     
     /**
-     * Determine if a variable declaration is a local variable based on its context.
-     * Very simple heuristic for the demo - a proper parser would be used in reality.
-     * 
-     * @param fileContent The complete file content
-     * @param position The position of the variable declaration
-     * @return true if it appears to be a local variable, false if it's likely a field
+     * Compute the edits of the next chunk of a source that is read in pieces, so that a
+     * file too large to hold in memory is processed in a window of bounded size.
+     * <p>
+     * The chunk is done up to its last statement boundary, see
+     * {@link DeclarationScanner#scanChunk}; the next chunk starts with the text after it.
+     * The blocks open at the boundary carry the brace structure over to the next chunk.
+     *
+     * @param chunk The source from the end of the previous chunk on
+     * @param last Whether {@code chunk} holds the rest of the source, which is then done
+     *             as a whole
+     * @param blocks The blocks open at the start of {@code chunk}; updated to those open
+     *               at the end of the part that is done
+     * @param checker The eligibility rules
+     * @param edits Receives the edits of the part that is done, with offsets in {@code chunk}
+     * @param stats Receives the time of each phase and each decision, or null
+     * @return The length of the part of {@code chunk} that is done, 0 if it holds no
+     *         statement boundary and must be extended
      */
-    private boolean isLocalVariable(String fileContent, int position) {
-        // Check if the declaration is inside a method by looking for '{' and '}'
-        // This is a very naive implementation for demonstration purposes
-        
-        // Get substring up to the position
-        String beforeDecl = fileContent.substring(0, position);
-        
-        // Count opening and closing braces
-        int openBraces = 0;
-        int closeBraces = 0;
-        
-        for (char c : beforeDecl.toCharArray()) {
-            if (c == '{') openBraces++;
-            if (c == '}') closeBraces++;
-        }
-        
-        // Simple heuristic: if we have at least one more open brace than close brace,
-        // and we have at least 2 braces total, then we're likely inside a method
-        return openBraces > closeBraces && openBraces >= 2;
+    int findReplacements(
+            CharSequence chunk,
+            boolean last,
+            ScopeIndex.OpenBlocks blocks,
+            VarEligibilityChecker checker,
+            EditScript edits,
+            FileStats stats) {
+
+        long start = stats == null ? 0 : System.nanoTime();
+        Declarations declarations;
+        int done;
+        if (last) {
+            declarations = scanner.scan(chunk);
+            done = chunk.length();
+        } else {
+            declarations = new Declarations();
+            done = scanner.scanChunk(chunk, 0, chunk.length(), declarations);
+        }
+        if (stats != null) {
+            long scanned = System.nanoTime();
+            stats.addNanos(FileStats.Phase.SCAN, scanned - start);
+            start = scanned;
+        }
+        if (done == 0) {
+            return 0;
+        }
+        // Also needed without declarations, to carry the open blocks over
+        ScopeIndex scopes = ScopeIndex.build(chunk, 0, done, blocks);
+        if (stats != null) {
+            long indexed = System.nanoTime();
+            stats.addNanos(FileStats.Phase.SCOPE, indexed - start);
+            start = indexed;
+        }
+        Decider decider = new Decider(classifiers.get(), chunk, checker, null, stats);
+        for (int i = 0; i < declarations.size(); i++) {
+            int typeStart = declarations.typeStart(i);
+            int initializerTypeId = decider.classify(declarations, i);
+            if (initializerTypeId == InitializerTypeClassifier.UNKNOWN_ID) {
+                initializerTypeId = decider.unknownTypeId;
+            }
+            if (decider.isEligible(declarations, i, initializerTypeId, scopes.isInCodeBody(typeStart))) {
+                edits.add(typeStart, declarations.typeEnd(i) - typeStart);
+            }
+        }
+        if (stats != null) {
+            stats.addNanos(FileStats.Phase.INFERENCE, System.nanoTime() - start);
+        }
+        return done;
     }
 
     /**
-     * Simple type inference for demonstration purposes.
-     * A real implementation would use a Java parser.
+     * Decide the declarations whose type starts in {@code [start, end)} and add them to
+     * {@code report}. Only the statements around the range are scanned; the scope index
+     * supplies a scan start and classifies declarations as local or field.
+     *
+     * @param fileContent The Java file content
+     * @param checker The eligibility rules
+     * @param start Start offset of the range (inclusive)
+     * @param end End offset of the range (exclusive)
+     * @param scopes The scope index of {@code fileContent}, or null to build it if the
+     *               range holds any declaration
+     * @param report Receives the candidates in source order
+     * @param reportUndecided Whether candidates with an unknown initializer type are added
+     *                        as undecided instead of being decided with {@link #UNKNOWN_TYPE}
      */
-    private String inferType(String initializer) {
-        // Very simplistic inference for demonstration
-        initializer = initializer.trim();
-
-        if (initializer.matches("\\d+")) {
-            return "int";
-        } else if (initializer.matches("\\d+L")) {
-            return "long";
-        } else if (initializer.matches("\\d+\\.\\d+f")) {
-            return "float";
-        } else if (initializer.matches("\\d+\\.\\d+")) {
-            return "double";
-        } else if (initializer.equals("true") || initializer.equals("false")) {
-            return "boolean";
-        } else if (initializer.startsWith("\"") && initializer.endsWith("\"")) {
-            return "String";
-        } else if (initializer.matches("new \\w+.*")) {
-            // Extract type from "new Type(...)"
-            return initializer.substring(4).split("[(<]")[0].trim();
-        }
-
-        // Default fallback
-        return "Object";
+    void analyze(
+            CharSequence fileContent,
+            VarEligibilityChecker checker,
+            int start,
+            int end,
+            ScopeIndex scopes,
+            CandidateReport report,
+            boolean reportUndecided) {
+
+        if (scopes == null && start > 0) {
+            scopes = ScopeIndex.build(fileContent);
+        }
+        int scanStart = scopes == null ? 0 : scopes.braceBoundary(start);
+        Declarations declarations = scanner.scan(fileContent, scanStart, fileContent.length(), end, null);
+        if (scopes == null && declarations.size() > 0) {
+            scopes = ScopeIndex.build(fileContent);
+        }
+        Decider decider = new Decider(classifiers.get(), fileContent, checker, null, null);
+        for (int i = 0; i < declarations.size(); i++) {
+            int typeStart = declarations.typeStart(i);
+            if (typeStart < start) {
+                continue;
+            }
+            int typeEnd = declarations.typeEnd(i);
+            int initializerTypeId = decider.classify(declarations, i);
+            if (initializerTypeId == InitializerTypeClassifier.UNKNOWN_ID) {
+                if (reportUndecided) {
+                    report.addUndecided(typeStart, typeEnd, declarations.statementEnd(i));
+                    continue;
+                }
+                initializerTypeId = decider.unknownTypeId;
+            }
+            int features = decider.features(declarations, i, initializerTypeId, scopes.isInCodeBody(typeStart));
+            report.add(typeStart, typeEnd, declarations.statementEnd(i), checker.rejectionReason(features));
+        }
     }
 
     /**
-     * Functional interface for eligibility checking
+     * Decides the declarations of one source, by the IDs of their types with the rules of
+     * a checker, or by the names of their types with a predicate. Names that the full
+     * table of the classifier has no ID for are compared as strings.
      */
-    @FunctionalInterface
-    public interface EligibilityPredicate {
-        boolean test(String declarationType, String initializerType, boolean isLocal, boolean isLoopVariable);
+    private static final class Decider {
+        private final InitializerTypeClassifier classifier;
+        private final CharSequence fileContent;
+        private final VarEligibilityChecker checker;
+        private final EligibilityPredicate predicate;
+        private final FileStats stats;
+        /** The ID of {@link #UNKNOWN_TYPE}, for initializers whose type cannot be inferred. */
+        final int unknownTypeId;
+
+        /**
+         * @param checker The eligibility rules, or null to use {@code predicate}
+         * @param predicate Decides by type names if there is no checker
+         * @param stats Receives the decisions of the checker, or null
+         */
+        Decider(InitializerTypeClassifier classifier, CharSequence fileContent,
+                VarEligibilityChecker checker, EligibilityPredicate predicate, FileStats stats) {
+            this.classifier = classifier;
+            this.fileContent = fileContent;
+            this.checker = checker;
+            this.predicate = predicate;
+            this.stats = stats;
+            this.unknownTypeId = classifier.typeId(UNKNOWN_TYPE, 0, UNKNOWN_TYPE.length());
+        }
+
+        /**
+         * @return The ID of the initializer type of declaration {@code i}, see
+         *         {@link InitializerTypeClassifier#classifyId}
+         */
+        int classify(Declarations declarations, int i) {
+            return classifier.classifyId(fileContent, declarations.initializerStart(i), declarations.initializerEnd(i));
+        }
+
+        /**
+         * @param initializerTypeId The ID of the initializer type, {@link #unknownTypeId}
+         *                          if it cannot be inferred
+         * @return Whether declaration {@code i} can be replaced with 'var'
+         */
+        boolean isEligible(Declarations declarations, int i, int initializerTypeId, boolean isLocal) {
+            if (checker == null) {
+                return predicate.test(declarationType(declarations, i),
+                    initializerType(declarations, i, initializerTypeId), isLocal, declarations.isLoopVariable(i));
+            }
+            int features = features(declarations, i, initializerTypeId, isLocal);
+            if (stats == null) {
+                return checker.isEligible(features);
+            }
+            VarEligibilityChecker.RejectionReason reason = checker.rejectionReason(features);
+            if (reason == null) {
+                stats.accept();
+                return true;
+            }
+            stats.reject(reason);
+            return false;
+        }
+
+        /**
+         * @return The feature flags of declaration {@code i}, see {@link VarEligibilityChecker#features}
+         */
+        int features(Declarations declarations, int i, int initializerTypeId, boolean isLocal) {
+            int declarationTypeId = classifier.typeId(fileContent, declarations.typeStart(i), declarations.typeEnd(i));
+            if (declarationTypeId != TypeSymbolTable.NO_ID && initializerTypeId != TypeSymbolTable.NO_ID) {
+                return VarEligibilityChecker.features(declarationTypeId, initializerTypeId, isLocal,
+                    declarations.isLoopVariable(i));
+            }
+            return VarEligibilityChecker.features(declarationType(declarations, i),
+                initializerType(declarations, i, initializerTypeId), isLocal, declarations.isLoopVariable(i));
+        }
+
+        String declarationType(Declarations declarations, int i) {
+            return classifier.typeName(fileContent, declarations.typeStart(i), declarations.typeEnd(i));
+        }
+
+        String initializerType(Declarations declarations, int i, int initializerTypeId) {
+            if (initializerTypeId != TypeSymbolTable.NO_ID) {
+                return classifier.name(initializerTypeId);
+            }
+            String initializerType = classifier.classify(
+                fileContent, declarations.initializerStart(i), declarations.initializerEnd(i));
+            return initializerType == null ? UNKNOWN_TYPE : initializerType;
+        }
     }
 }
@@ -0,0 +1,335 @@
+package com.rlogman.varrefactoring.core;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.ArrayInitializer;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.MethodReference;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SwitchExpression;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Replaces explicit types with 'var' using Eclipse JDT with resolved bindings.
+ * <p>
+ * Files are parsed with {@link ASTParser#createASTs}, which resolves the bindings of
+ * many compilation units in one shared environment instead of once per file. The
+ * eligibility predicate receives the binding's qualified names, e.g.
+ * {@code java.lang.String}, so method calls and other initializers the syntactic
+ * engines cannot type are decided as well.
+ * <p>
+ * The bindings of a batch stay in memory until the batch is done, so files are parsed
+ * in chunks of a configurable size: memory depends on the chunk size, not on the
+ * size of the source set. Bindings across chunks still resolve through the source path.
+ * <p>
+ * Initializers whose type depends on the declared type (lambdas, method references,
+ * diamond and generic method calls, conditional and switch expressions) are reported
+ * as {@link JavaTypeReplacer#UNKNOWN_TYPE}: with 'var' they would be inferred differently.
+ * <p>
+ * The chunked {@link #findReplacements(List, EligibilityPredicate, BiConsumer)} is a
+ * library API only: neither {@link VarRefactoringProcessor} nor the CLI calls it. Callers
+ * that want shared bindings construct the replacer with their own class path, source
+ * roots and Java version and pass it the files themselves.
+ * <p>
+ * As a {@link RefactoringEngine}, single files are parsed on their own against the
+ * configured class path and source path, each in a fresh environment. The service
+ * loader uses the no-argument constructor, which resolves against the JDK only and
+ * parses with Java 17 compliance, so types declared in other files of the batch are
+ * not resolved and such declarations are left undecided.
+ */
+public class JdtBatchTypeReplacer implements RefactoringEngine {
+    /** Default number of files parsed in one shared environment. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final String[] classpath;
+    private final String[] sourcepath;
+    private final String javaVersion;
+    private final int chunkSize;
+
+    /**
+     * Create a replacer that resolves types against the JDK only, for Java 17 sources.
+     */
+    public JdtBatchTypeReplacer() {
+        this(List.of(), List.of(), "17", DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param classpath Jar files and class folders the sources compile against
+     * @param sourcepath Source roots used to resolve types of files outside the current chunk
+     * @param javaVersion The Java version of the source code (e.g., "17")
+     * @param chunkSize Number of files parsed together
+     */
+    public JdtBatchTypeReplacer(List<String> classpath, List<String> sourcepath, String javaVersion, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.classpath = classpath.toArray(new String[0]);
+        this.sourcepath = sourcepath.toArray(new String[0]);
+        this.javaVersion = javaVersion;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String getName() {
+        return "jdt";
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        return EnumSet.of(Capability.TYPE_RESOLVING);
+    }
+
+    /**
+     * Compute the 'var' replacements for one file. Every call sets up a new binding
+     * environment; prefer {@link #findReplacements(List, EligibilityPredicate, BiConsumer)}
+     * for many files.
+     */
+    @Override
+    public EditScript findReplacements(
+            String fileContent,
+            EligibilityPredicate eligibilityPredicate,
+            IntPredicate scope,
+            IntConsumer undecided) {
+
+        ASTParser parser = newParser(compilerOptions());
+        parser.setSource(fileContent.toCharArray());
+        // Bindings are only resolved for a named unit; the name need not match the class
+        parser.setUnitName("Unit.java");
+        PhaseEvent phase = PhaseEvent.begin(getName(), FileStats.Phase.SCAN, fileContent.length());
+        CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+        PhaseEvent.end(phase);
+        return findReplacements(unit, eligibilityPredicate, scope, undecided);
+    }
+
+    /**
+     * Compute the 'var' replacements for a set of source files.
+     * Files with syntax errors are reported with {@link EditScript#EMPTY}.
+     *
+     * @param files UTF-8 encoded Java files
+     * @param eligibilityPredicate A predicate that determines if a declaration is eligible
+     * @param sink Receives every file together with its edits, chunk by chunk
+     */
+    public void findReplacements(
+            List<Path> files,
+            EligibilityPredicate eligibilityPredicate,
+            BiConsumer<Path, EditScript> sink) {
+
+        Map<String, String> options = compilerOptions();
+
+        for (int start = 0; start < files.size(); start += chunkSize) {
+            List<Path> chunk = files.subList(start, Math.min(files.size(), start + chunkSize));
+            String[] paths = new String[chunk.size()];
+            String[] encodings = new String[chunk.size()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = chunk.get(i).toString();
+                encodings[i] = "UTF-8";
+            }
+
+            // A parser is reset by createASTs, so it is configured for every chunk
+            ASTParser parser = newParser(options);
+            parser.createASTs(paths, encodings, new String[0], new FileASTRequestor() {
+                @Override
+                public void acceptAST(String sourceFilePath, CompilationUnit unit) {
+                    sink.accept(Paths.get(sourceFilePath), findReplacements(unit, eligibilityPredicate, null, null));
+                }
+            }, null);
+        }
+    }
+
+    private Map<String, String> compilerOptions() {
+        Map<String, String> options = JavaCore.getOptions();
+        JavaCore.setComplianceOptions(javaVersion, options);
+        return options;
+    }
+
+    private ASTParser newParser(Map<String, String> options) {
+        ASTParser parser = ASTParser.newParser(AST.getJLSLatest());
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(options);
+        parser.setEnvironment(classpath, sourcepath, null, true);
+        parser.setResolveBindings(true);
+        parser.setBindingsRecovery(true);
+        return parser;
+    }
+
+    private static EditScript findReplacements(
+            CompilationUnit unit,
+            EligibilityPredicate predicate,
+            IntPredicate scope,
+            IntConsumer undecided) {
+        for (IProblem problem : unit.getProblems()) {
+            if (problem.isError() && (problem.getID() & IProblem.Syntax) != 0) {
+                return EditScript.EMPTY;
+            }
+        }
+
+        PhaseEvent phase = PhaseEvent.begin("jdt", FileStats.Phase.INFERENCE, unit.getLength());
+        Collector collector = new Collector(predicate, scope, undecided);
+        unit.accept(collector);
+        PhaseEvent.end(phase);
+        return collector.toEditScript();
+    }
+
+    /**
+     * Visits the declarations of one compilation unit. Declarations are visited in
+     * source order, so undecided offsets are reported ascending; sorting the edits keeps
+     * the {@link EditScript} order independent of that traversal detail.
+     */
+    private static final class Collector extends ASTVisitor {
+        private final EligibilityPredicate predicate;
+        private final IntPredicate scope;
+        private final IntConsumer undecided;
+        private final boolean traceDeclarations = SlowDeclarationEvent.isTraced();
+        /** Edits encoded as {@code offset << 32 | length}, so that sorting orders by offset. */
+        private long[] edits = new long[16];
+        private int size;
+
+        Collector(EligibilityPredicate predicate, IntPredicate scope, IntConsumer undecided) {
+            this.predicate = predicate;
+            this.scope = scope;
+            this.undecided = undecided;
+        }
+
+        @Override
+        public boolean visit(VariableDeclarationStatement node) {
+            consider(node.getType(), node.fragments(), true, false);
+            return true;
+        }
+
+        @Override
+        public boolean visit(VariableDeclarationExpression node) {
+            boolean isLoopVariable = node.getLocationInParent() == ForStatement.INITIALIZERS_PROPERTY;
+            consider(node.getType(), node.fragments(), true, isLoopVariable);
+            return true;
+        }
+
+        @Override
+        public boolean visit(FieldDeclaration node) {
+            consider(node.getType(), node.fragments(), false, false);
+            return true;
+        }
+
+        private void consider(Type type, List<?> fragments, boolean isLocal, boolean isLoopVariable) {
+            // 'var' does not allow several declarators in one declaration
+            if (fragments.size() != 1 || type.isVar()) {
+                return;
+            }
+            VariableDeclarationFragment fragment = (VariableDeclarationFragment) fragments.get(0);
+            Expression initializer = fragment.getInitializer();
+            // int values[] = ...: the brackets belong to the name and would be lost
+            if (initializer == null || initializer instanceof ArrayInitializer || fragment.getExtraDimensions() > 0) {
+                return;
+            }
+
+            if (scope != null && !scope.test(type.getStartPosition())) {
+                return;
+            }
+
+            SlowDeclarationEvent slow = SlowDeclarationEvent.begin(traceDeclarations);
+            String initializerType = initializerType(initializer);
+            if (initializerType == null) {
+                if (undecided != null) {
+                    undecided.accept(type.getStartPosition());
+                    return;
+                }
+                initializerType = JavaTypeReplacer.UNKNOWN_TYPE;
+            }
+            ITypeBinding declared = type.resolveBinding();
+            String declarationType = declared == null || declared.isRecovered()
+                ? type.toString()
+                : declared.getQualifiedName();
+
+            if (predicate.test(declarationType, initializerType, isLocal, isLoopVariable)) {
+                if (size == edits.length) {
+                    edits = Arrays.copyOf(edits, size * 2);
+                }
+                edits[size++] = (long) type.getStartPosition() << 32 | type.getLength();
+            }
+            SlowDeclarationEvent.end(slow, "jdt", type.getStartPosition(), declarationType, initializerType);
+        }
+
+        /**
+         * @return The type 'var' would infer for the initializer, or null if it differs
+         *         from the initializer's type in this declaration or is unknown
+         */
+        private static String initializerType(Expression initializer) {
+            Expression expression = initializer;
+            while (expression instanceof ParenthesizedExpression) {
+                expression = ((ParenthesizedExpression) expression).getExpression();
+            }
+
+            // Poly expressions take their type from the declaration
+            if (expression instanceof LambdaExpression || expression instanceof MethodReference
+                    || expression instanceof ConditionalExpression || expression instanceof SwitchExpression) {
+                return null;
+            }
+            if (expression instanceof ClassInstanceCreation) {
+                Type created = ((ClassInstanceCreation) expression).getType();
+                if (created.isParameterizedType() && ((ParameterizedType) created).typeArguments().isEmpty()) {
+                    return null;
+                }
+            }
+            IMethodBinding method = null;
+            if (expression instanceof MethodInvocation) {
+                method = ((MethodInvocation) expression).resolveMethodBinding();
+            } else if (expression instanceof SuperMethodInvocation) {
+                method = ((SuperMethodInvocation) expression).resolveMethodBinding();
+            }
+            if (method != null && method.getMethodDeclaration().isGenericMethod()) {
+                return null;
+            }
+
+            ITypeBinding binding = expression.resolveTypeBinding();
+            if (binding == null || binding.isRecovered() || binding.isNullType()) {
+                return null;
+            }
+            if (binding.isAnonymous()) {
+                // new Runnable() { ... } declares its one supertype
+                ITypeBinding[] interfaces = binding.getInterfaces();
+                binding = interfaces.length > 0 ? interfaces[0] : binding.getSuperclass();
+            }
+            return binding.getQualifiedName();
+        }
+
+        EditScript toEditScript() {
+            if (size == 0) {
+                return EditScript.EMPTY;
+            }
+            Arrays.sort(edits, 0, size);
+            EditScript script = new EditScript();
+            for (int i = 0; i < size; i++) {
+                script.add((int) (edits[i] >>> 32), (int) edits[i]);
+            }
+            return script;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.rlogman.varrefactoring.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one {@link FileStats.Phase phase} of an engine on one file.
+ * Phase events of a file are nested in its {@link FileProcessedEvent} on the same thread.
+ * <p>
+ * Disabled by default; {@link #begin(String, FileStats.Phase, int)} returns null then,
+ * so engines pay one enabled check per phase.
+ */
+@Name("com.rlogman.varrefactoring.Phase")
+@Label("Refactoring Phase")
+@Category({"Java Var Refactoring"})
+@Enabled(false)
+@StackTrace(false)
+final class PhaseEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("File Size")
+    @Description("Number of characters of the file content, or of bytes for UTF-8 content scanned without decoding")
+    int fileSize;
+
+    /**
+     * @return A started event, or null if the event is disabled
+     */
+    static PhaseEvent begin(String engine, FileStats.Phase phase, int fileSize) {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.engine = engine;
+        event.phase = phase.name();
+        event.fileSize = fileSize;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit an event returned by {@link #begin(String, FileStats.Phase, int)}.
+     */
+    static void end(PhaseEvent event) {
+        if (event != null && event.shouldCommit()) {
+            event.commit();
+        }
+    }
+}
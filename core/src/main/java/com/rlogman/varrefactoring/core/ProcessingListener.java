@@ -0,0 +1,19 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Receives the statistics of every file a {@link VarRefactoringProcessor} processes.
+ * <p>
+ * In batch mode files are processed by several threads, so implementations must be
+ * safe for concurrent use. They are called on the processing thread and should
+ * return quickly, e.g. by adding the numbers to counters.
+ */
+@FunctionalInterface
+public interface ProcessingListener {
+
+    /**
+     * Called after a file was processed.
+     *
+     * @param stats The statistics of the file
+     */
+    void fileProcessed(FileStats stats);
+}
@@ -0,0 +1,76 @@
+package com.rlogman.varrefactoring.core;
+
+/**
+ * Outcome of processing one file under a deadline or a {@link CancellationToken}.
+ * <p>
+ * Processing that stops early still returns the edits found so far. Every edit
+ * replaces one complete declaration, so a partial result is a valid, smaller
+ * refactoring of the file.
+ */
+public final class ProcessingResult {
+
+    /**
+     * How processing ended.
+     */
+    public enum Status {
+        /** Every declaration was examined. */
+        COMPLETED,
+        /** The deadline passed; declarations after the edits found so far were not examined. */
+        TIMED_OUT,
+        /** The token was cancelled; declarations after the edits found so far were not examined. */
+        CANCELLED
+    }
+
+    private final String original;
+    private final EditScript edits;
+    private final Status status;
+    // Built on first use; a racy rebuild yields an equal string
+    private String content;
+
+    ProcessingResult(String original, EditScript edits, Status status) {
+        this.original = original;
+        this.edits = edits;
+        this.status = status;
+    }
+
+    /**
+     * @return How processing ended
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Whether every declaration was examined
+     */
+    public boolean isComplete() {
+        return status == Status.COMPLETED;
+    }
+
+    /**
+     * @return The edits found, possibly only a part of them if processing stopped early
+     */
+    public EditScript getEdits() {
+        return edits;
+    }
+
+    /**
+     * @return Whether any declaration was replaced
+     */
+    public boolean isModified() {
+        return !edits.isEmpty();
+    }
+
+    /**
+     * @return The file content with {@link #getEdits()} applied; the original
+     *         instance if nothing was replaced
+     */
+    public String getContent() {
+        String result = content;
+        if (result == null) {
+            result = edits.applyTo(original);
+            content = result;
+        }
+        return result;
+    }
+}
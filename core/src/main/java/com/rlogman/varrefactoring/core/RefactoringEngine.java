@@ -0,0 +1,133 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Service interface of the engines that find the declarations to replace with 'var'.
+ * <p>
+ * Engines are discovered with {@link ServiceLoader}; each declares its
+ * {@link Capability capabilities}, so that a front-end can trade latency for accuracy.
+ * A {@link VarRefactoringProcessor} can run a cheap syntactic engine first and hand
+ * only the declarations it could not decide to a type-resolving engine.
+ * <p>
+ * Implementations must have a public no-argument constructor and be safe for
+ * concurrent use by multiple threads.
+ */
+public interface RefactoringEngine {
+
+    /**
+     * What an engine is able to do.
+     */
+    enum Capability {
+        /** Infers initializer types from the source text alone; fast, but some declarations stay undecided. */
+        SYNTACTIC,
+        /** Resolves types through bindings, so it can decide declarations a syntactic engine cannot. */
+        TYPE_RESOLVING,
+        /** Can re-analyze part of a file after an edit without starting over. */
+        INCREMENTAL
+    }
+
+    /**
+     * @return A short, stable name of the engine, e.g. for cache keys and settings
+     */
+    String getName();
+
+    /**
+     * @return The capabilities of the engine
+     */
+    Set<Capability> getCapabilities();
+
+    /**
+     * Compute the edits that replace explicit type declarations with 'var'.
+     * <p>
+     * A declaration whose initializer type the engine cannot determine is reported
+     * to {@code undecided} by its type offset and not passed to the predicate. Without
+     * an {@code undecided} consumer it is passed to the predicate with
+     * {@link JavaTypeReplacer#UNKNOWN_TYPE} as the initializer type.
+     *
+     * @param fileContent The Java file content
+     * @param eligibilityPredicate A predicate that determines if a declaration is eligible
+     * @param scope Selects the declarations to consider by their type offset, or null for all;
+     *              tested for each declaration right before it is decided
+     * @param undecided Receives the type offsets of undecided declarations in ascending order, or null
+     * @return The edits, or {@link EditScript#EMPTY} if no declaration is eligible
+     */
+    EditScript findReplacements(
+        String fileContent,
+        EligibilityPredicate eligibilityPredicate,
+        IntPredicate scope,
+        IntConsumer undecided);
+
+    /**
+     * Compute the edits for all declarations of a file.
+     *
+     * @param fileContent The Java file content
+     * @param eligibilityPredicate A predicate that determines if a declaration is eligible
+     * @return The edits, or {@link EditScript#EMPTY} if no declaration is eligible
+     */
+    default EditScript findReplacements(String fileContent, EligibilityPredicate eligibilityPredicate) {
+        return findReplacements(fileContent, eligibilityPredicate, null, null);
+    }
+
+    /**
+     * Load the engines available on the class path. Engines whose dependencies are
+     * missing at runtime are skipped.
+     *
+     * @return The engines, in service file order
+     */
+    static List<RefactoringEngine> available() {
+        List<RefactoringEngine> engines = new ArrayList<>();
+        Iterator<RefactoringEngine> providers = ServiceLoader.load(RefactoringEngine.class).iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                engines.add(providers.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // E.g. the JDT engine in a distribution that does not ship JDT;
+                // the iterator moves on to the next provider
+            }
+        }
+        return Collections.unmodifiableList(engines);
+    }
+
+    /**
+     * Find the first available engine with the given capability.
+     *
+     * @param capability The required capability
+     * @return The engine, if any
+     */
+    static Optional<RefactoringEngine> find(Capability capability) {
+        for (RefactoringEngine engine : available()) {
+            if (engine.getCapabilities().contains(capability)) {
+                return Optional.of(engine);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Find an available engine by name.
+     *
+     * @param name The name of the engine
+     * @return The engine, if any
+     */
+    static Optional<RefactoringEngine> find(String name) {
+        for (RefactoringEngine engine : available()) {
+            if (engine.getName().equals(name)) {
+                return Optional.of(engine);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -79,4 +79,24 @@ public class RefactoringOptions {
     public void setRefactorLambdaExpressions(boolean refactorLambdaExpressions) {
         this.refactorLambdaExpressions = refactorLambdaExpressions;
     }
+
+    /**
+     * A compact string that differs whenever any option differs, e.g. for cache keys.
+     *
+     * @return One '0' or '1' per option, in constructor order
+     */
+    public String fingerprint() {
+        return new String(new char[] {
+            flag(allowPrimitiveTypes),
+            flag(allowForLoopVars),
+            flag(allowDiamondOperator),
+            flag(allowDifferentTypes),
+            flag(refactorAnonymousClasses),
+            flag(refactorLambdaExpressions)
+        });
+    }
+
+    private static char flag(boolean value) {
+        return value ? '1' : '0';
+    }
 }
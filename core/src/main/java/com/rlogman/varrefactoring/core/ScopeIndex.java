@@ -0,0 +1,763 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+
+/**
+ * Structural index of the brace blocks of a Java source file, built once per file.
+ * <p>
+ * Every {@code {...}} block is classified as a class body, method or constructor
+ * body, initializer, lambda body, nested statement block or array initializer.
+ * Blocks and brace events are kept in primitive arrays sorted by offset, so
+ * questions such as "is this offset inside a method body" are answered with a
+ * binary search instead of re-counting braces from the start of the file.
+ * <p>
+ * Braces inside comments and literals are ignored. Instances are immutable, except
+ * that the index of an {@link IncrementalSession} is moved in place by {@link #shift}
+ * as the document is edited.
+ */
+public final class ScopeIndex {
+    /** Body of a class, interface, enum, record or anonymous class. */
+    public static final int CLASS_BODY = 1;
+    /** Body of a method or constructor. */
+    public static final int METHOD_BODY = 2;
+    /** Static or instance initializer block. */
+    public static final int INITIALIZER = 3;
+    /** Block body of a lambda expression. */
+    public static final int LAMBDA_BODY = 4;
+    /** Any other statement block ({@code if}, loops, {@code try}, {@code switch}, ...). */
+    public static final int BLOCK = 5;
+    /** Array initializer ({@code {1, 2, 3}}). */
+    public static final int ARRAY_INITIALIZER = 6;
+
+    private final int blockCount;
+    // The events of the opening and closing brace of each block; -1 if it is never closed
+    private final int[] blockOpenEvent;
+    private final int[] blockCloseEvent;
+    private final int[] blockParent;
+    private final byte[] blockKind;
+    private final int[] blockDepth;
+    private final boolean[] blockInCode;
+
+    // Brace events in source order: the offset from which the event applies and
+    // the innermost open block from that offset on (-1 for top level)
+    private final int eventCount;
+    private final int[] eventOffset;
+    private final int[] eventBlock;
+
+    // The offsets of the events from gapEvent on are stored without gapDelta, so that
+    // shifting them after an edit only touches the events between the last edit and
+    // this one, like the gap of a gap buffer
+    private int gapEvent;
+    private int gapDelta;
+    // End of the blocks that are never closed: the end of the indexed source
+    private int unclosedEnd;
+    private final boolean balanced;
+
+    private ScopeIndex(Builder builder) {
+        this.blockCount = builder.blockCount;
+        this.blockOpenEvent = builder.blockOpenEvent;
+        this.blockCloseEvent = builder.blockCloseEvent;
+        this.blockParent = builder.blockParent;
+        this.blockKind = builder.blockKind;
+        this.blockDepth = builder.blockDepth;
+        this.blockInCode = builder.blockInCode;
+        this.eventCount = builder.eventCount;
+        this.eventOffset = builder.eventOffset;
+        this.eventBlock = builder.eventBlock;
+        this.gapEvent = builder.eventCount;
+        this.unclosedEnd = builder.end;
+        this.balanced = builder.balanced;
+    }
+
+    /**
+     * Build the index for a source file in a single pass.
+     *
+     * @param source The Java source
+     * @return The structural index
+     */
+    public static ScopeIndex build(CharSequence source) {
+        Builder builder = new Builder(source, 0, source.length());
+        builder.run();
+        builder.closeUnclosed();
+        return new ScopeIndex(builder);
+    }
+
+    /**
+     * Build the index for the region {@code [start, end)} of a source that is indexed in
+     * chunks, e.g. because it is read in pieces. The blocks open at {@code start} start at
+     * {@code start - 1} in the index.
+     * <p>
+     * The region must start and end right after a {@code ;} or a {@code '{'} outside any
+     * parentheses, where the kind of the next block only depends on the blocks open.
+     *
+     * @param source The Java source
+     * @param start Start offset of the region (inclusive)
+     * @param end End offset of the region (exclusive)
+     * @param open The blocks open at {@code start}; updated to those open at {@code end}
+     * @return The structural index of the region
+     */
+    static ScopeIndex build(CharSequence source, int start, int end, OpenBlocks open) {
+        Builder builder = new Builder(source, start, end);
+        builder.reopen(open, start);
+        builder.run();
+        builder.save(open);
+        builder.closeUnclosed();
+        return new ScopeIndex(builder);
+    }
+
+    /**
+     * @return The number of brace blocks in the file
+     */
+    public int blockCount() {
+        return blockCount;
+    }
+
+    /** Kind of a block, one of the constants of this class. */
+    public int blockKind(int block) {
+        return blockKind[block];
+    }
+
+    /** Offset of the opening brace of a block. */
+    public int blockStart(int block) {
+        return eventOffset(blockOpenEvent[block]) - 1;
+    }
+
+    /** Offset of the closing brace of a block, or the source length if it is never closed. */
+    public int blockEnd(int block) {
+        int event = blockCloseEvent[block];
+        return event < 0 ? unclosedEnd : eventOffset(event);
+    }
+
+    /** Enclosing block of a block, or -1 for a top-level block. */
+    public int parentBlock(int block) {
+        return blockParent[block];
+    }
+
+    /**
+     * Find the innermost block containing an offset.
+     *
+     * @param offset A character offset in the source
+     * @return The block index, or -1 if the offset is outside every block
+     */
+    public int innermostBlock(int offset) {
+        int found = lastEvent(offset);
+        return found < 0 ? -1 : eventBlock[found];
+    }
+
+    /**
+     * Find where a scan for declarations can start so that it covers an offset without
+     * lexing the file from its beginning: right after the last brace at or before the
+     * offset, which is a token boundary outside any comment or literal.
+     *
+     * @param offset A character offset in the source
+     * @return The offset right after that brace, or 0 if there is none
+     */
+    public int braceBoundary(int offset) {
+        int found = lastEvent(offset);
+        for (; found >= 0; found--) {
+            // Open events apply after the '{', close events from the '}' itself
+            int boundary = isOpenEvent(found) ? eventOffset(found) : eventOffset(found) + 1;
+            if (boundary <= offset) {
+                return boundary;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Find the block whose closing brace is right before an offset, e.g. a boundary
+     * returned by {@link #braceBoundary}.
+     *
+     * @return The block, or -1 if the character before the offset is not a closing brace
+     */
+    int closedBlockBefore(int offset) {
+        int event = lastEvent(offset - 1);
+        if (event <= 0 || isOpenEvent(event) || eventOffset(event) != offset - 1) {
+            return -1;
+        }
+        // The block closed is the innermost one right before its closing brace
+        int block = eventBlock[event - 1];
+        return block >= 0 && blockCloseEvent[block] == event ? block : -1;
+    }
+
+    /**
+     * @return Whether every brace of the source is matched and the parentheses and
+     *         brackets are balanced within every block, so that a statement that starts
+     *         in a block also ends in it
+     */
+    boolean isBalanced() {
+        return balanced;
+    }
+
+    /**
+     * Move the braces at or after an edit that leaves the blocks of the source as they
+     * are, see {@link #blocksKeptBy}. The index is updated in place; the cost grows with the
+     * number of braces between this edit and the previous one, not with the file.
+     *
+     * @param offset Offset of the edit in the source before it
+     * @param delta Change of the source length
+     */
+    void shift(int offset, int delta) {
+        // The first event whose brace is at or after the edit
+        int low = 0;
+        int high = eventCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int brace = isOpenEvent(mid) ? eventOffset(mid) - 1 : eventOffset(mid);
+            if (brace < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int event = gapEvent; event < low; event++) {
+            eventOffset[event] += gapDelta;
+        }
+        for (int event = low; event < gapEvent; event++) {
+            eventOffset[event] -= gapDelta;
+        }
+        gapEvent = low;
+        gapDelta += delta;
+        unclosedEnd += delta;
+    }
+
+    /**
+     * Check whether an edit leaves the blocks of a source as they are, so that
+     * {@link #shift} keeps the index valid: the edit must not add or remove a brace, and
+     * the tokens from the last brace before the edit must leave the next brace after it
+     * classified as before. At most that stretch of both versions of the source is lexed.
+     * <p>
+     * An edit may change how text after it is lexed, e.g. by ending a line comment, so
+     * the offset from which both versions lex alike again is returned as well.
+     *
+     * @param before The source this index is built for
+     * @param after The source after the edit
+     * @param offset Offset of the edit
+     * @param removedLength Number of characters the edit removes from {@code before}
+     * @param insertedLength Number of characters the edit inserts into {@code after}
+     * @return If the index of {@code after} is this index shifted by the edit, the offset
+     *         in {@code after} at or after the edit from which both versions lex alike;
+     *         otherwise -1
+     */
+    int blocksKeptBy(CharSequence before, CharSequence after, int offset, int removedLength, int insertedLength) {
+        if (containsBrace(before, offset, offset + removedLength) || containsBrace(after, offset, offset + insertedLength)) {
+            return -1;
+        }
+        int start = braceBoundary(offset);
+        int delta = insertedLength - removedLength;
+        JavaLexer oldLexer = new JavaLexer(before, start, before.length());
+        JavaLexer newLexer = new JavaLexer(after, start, after.length());
+        BraceContext oldContext = new BraceContext();
+        BraceContext newContext = new BraceContext();
+        int oldKind = oldLexer.next();
+        int newKind = newLexer.next();
+        while (true) {
+            int oldStart = oldKind == JavaLexer.EOF ? before.length() : oldLexer.tokenStart;
+            int newStart = newKind == JavaLexer.EOF ? after.length() : newLexer.tokenStart;
+            // Past the edit both versions lex alike from a token that starts at the same place
+            int oldStartAfter = oldStart >= offset + removedLength ? oldStart + delta : Math.min(oldStart, offset);
+            if (oldStart >= offset + removedLength && oldStartAfter == newStart) {
+                break;
+            }
+            if (oldKind != JavaLexer.EOF && oldStartAfter <= newStart) {
+                if (isBrace(oldLexer, oldKind)) {
+                    return -1;
+                }
+                oldContext.accept(oldLexer, oldKind);
+                oldKind = oldLexer.next();
+            } else {
+                if (isBrace(newLexer, newKind)) {
+                    return -1;
+                }
+                newContext.accept(newLexer, newKind);
+                newKind = newLexer.next();
+            }
+        }
+        // The same tokens follow in both versions; the contexts may still become alike
+        // before the next brace, e.g. at the end of the statement
+        int alikeFrom = newKind == JavaLexer.EOF ? after.length() : newLexer.tokenStart;
+        int block = innermostBlock(offset);
+        // A ';' only matters to the constant list of an enum body
+        boolean semicolonsMatter = block < 0 || blockKind[block] == CLASS_BODY;
+        while (!oldContext.isLike(newContext, oldLexer.tokenStart, newLexer.tokenStart, semicolonsMatter)) {
+            if (oldKind == JavaLexer.EOF || isBrace(oldLexer, oldKind)) {
+                return -1;
+            }
+            oldContext.accept(oldLexer, oldKind);
+            newContext.accept(newLexer, newKind);
+            oldKind = oldLexer.next();
+            newKind = newLexer.next();
+        }
+        return alikeFrom;
+    }
+
+    private static boolean containsBrace(CharSequence source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '{' || c == '}') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBrace(JavaLexer lexer, int kind) {
+        return kind == JavaLexer.PUNCTUATION && (lexer.tokenChar() == '{' || lexer.tokenChar() == '}');
+    }
+
+    /**
+     * @return The last brace event that applies at an offset, or -1 if there is none
+     */
+    private int lastEvent(int offset) {
+        int low = 0;
+        int high = eventCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (eventOffset(mid) <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The offset of a brace event, with the shift of the edits applied
+     */
+    private int eventOffset(int event) {
+        return event < gapEvent ? eventOffset[event] : eventOffset[event] + gapDelta;
+    }
+
+    /**
+     * @return Whether a brace event is the opening of a block rather than the closing of one
+     */
+    private boolean isOpenEvent(int event) {
+        int block = eventBlock[event];
+        return block >= 0 && blockOpenEvent[block] == event;
+    }
+
+    /**
+     * @return The number of braces open at an offset
+     */
+    public int braceDepth(int offset) {
+        int block = innermostBlock(offset);
+        return block < 0 ? 0 : blockDepth[block];
+    }
+
+    /**
+     * Check whether an offset is inside executable code: a method, constructor,
+     * initializer or lambda body, or a statement block nested in one of them,
+     * and not inside a class body nested in that code.
+     *
+     * @param offset A character offset in the source
+     * @return true if a declaration at this offset declares a local variable
+     */
+    public boolean isInCodeBody(int offset) {
+        int block = innermostBlock(offset);
+        return block >= 0 && blockInCode[block];
+    }
+
+    /**
+     * The blocks open at the end of a chunk of a source, outermost first, which is what
+     * the index of the next chunk needs to know of the text before it.
+     */
+    static final class OpenBlocks {
+        private int count;
+        private byte[] kind = new byte[16];
+        private boolean[] inEnumConstants = new boolean[16];
+
+        /**
+         * @return The number of open blocks
+         */
+        int count() {
+            return count;
+        }
+    }
+
+    /**
+     * Single-pass classifier for the braces of a file.
+     */
+    private static final class Builder {
+        private final JavaLexer lexer;
+
+        int blockCount;
+        int[] blockOpenEvent = new int[16];
+        int[] blockCloseEvent = new int[16];
+        int[] blockParent = new int[16];
+        byte[] blockKind = new byte[16];
+        int[] blockDepth = new int[16];
+        boolean[] blockInCode = new boolean[16];
+
+        int eventCount;
+        int[] eventOffset = new int[32];
+        int[] eventBlock = new int[32];
+
+        private final BraceContext context = new BraceContext();
+
+        // Enum bodies whose constant list has not ended yet
+        private boolean[] inEnumConstants = new boolean[16];
+
+        // Open parentheses and brackets, and their number where each block was opened
+        private int delimiters;
+        private int[] blockDelimiters = new int[16];
+        boolean balanced = true;
+
+        private int current = -1;
+        final int end;
+
+        Builder(CharSequence source, int start, int end) {
+            this.lexer = new JavaLexer(source, start, end);
+            this.end = end;
+        }
+
+        /**
+         * Open the blocks that are open before the source region, as if their braces
+         * were right before {@code offset}.
+         */
+        void reopen(OpenBlocks open, int offset) {
+            for (int i = 0; i < open.count; i++) {
+                open(offset - 1, open.kind[i]);
+                if (blockCount > inEnumConstants.length) {
+                    inEnumConstants = Arrays.copyOf(inEnumConstants, inEnumConstants.length * 2);
+                }
+                inEnumConstants[current] = open.inEnumConstants[i];
+            }
+        }
+
+        /**
+         * Record the blocks open at the end of the region, before they are closed.
+         */
+        void save(OpenBlocks open) {
+            int depth = current < 0 ? 0 : blockDepth[current];
+            if (depth > open.kind.length) {
+                open.kind = new byte[depth];
+                open.inEnumConstants = new boolean[depth];
+            }
+            open.count = depth;
+            for (int block = current; block >= 0; block = blockParent[block]) {
+                depth--;
+                open.kind[depth] = blockKind[block];
+                open.inEnumConstants[depth] = inEnumConstants[block];
+            }
+        }
+
+        void run() {
+            for (int kind = lexer.next(); kind != JavaLexer.EOF; kind = lexer.next()) {
+                if (kind == JavaLexer.PUNCTUATION) {
+                    switch (lexer.tokenChar()) {
+                        case '{': {
+                            int kindOfBlock = context.classify(current < 0 ? 0 : blockKind[current],
+                                current >= 0 && inEnumConstants[current]);
+                            boolean enumBody = kindOfBlock == CLASS_BODY && context.pendingEnumBody;
+                            open(lexer.tokenStart, kindOfBlock);
+                            if (blockCount > inEnumConstants.length) {
+                                inEnumConstants = Arrays.copyOf(inEnumConstants, inEnumConstants.length * 2);
+                            }
+                            inEnumConstants[blockCount - 1] = enumBody;
+                            break;
+                        }
+                        case '}':
+                            close(lexer.tokenStart);
+                            break;
+                        case ';':
+                            if (current >= 0) {
+                                inEnumConstants[current] = false;
+                            }
+                            break;
+                        case '(':
+                        case '[':
+                            delimiters++;
+                            break;
+                        case ')':
+                        case ']':
+                            if (delimiters == (current < 0 ? 0 : blockDelimiters[current])) {
+                                balanced = false;
+                            }
+                            delimiters--;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                context.accept(lexer, kind);
+            }
+        }
+
+        void closeUnclosed() {
+            if (current >= 0 || delimiters != 0) {
+                balanced = false;
+            }
+            // Unclosed blocks extend to the end of the source
+            while (current >= 0) {
+                blockCloseEvent[current] = -1;
+                current = blockParent[current];
+            }
+        }
+
+        private void open(int offset, int kind) {
+            if (blockCount == blockOpenEvent.length) {
+                int capacity = blockCount * 2;
+                blockOpenEvent = Arrays.copyOf(blockOpenEvent, capacity);
+                blockCloseEvent = Arrays.copyOf(blockCloseEvent, capacity);
+                blockParent = Arrays.copyOf(blockParent, capacity);
+                blockKind = Arrays.copyOf(blockKind, capacity);
+                blockDepth = Arrays.copyOf(blockDepth, capacity);
+                blockInCode = Arrays.copyOf(blockInCode, capacity);
+                blockDelimiters = Arrays.copyOf(blockDelimiters, capacity);
+            }
+            int block = blockCount++;
+            blockOpenEvent[block] = eventCount;
+            blockCloseEvent[block] = -1;
+            blockParent[block] = current;
+            blockKind[block] = (byte) kind;
+            blockDepth[block] = current < 0 ? 1 : blockDepth[current] + 1;
+            blockDelimiters[block] = delimiters;
+            if (kind == CLASS_BODY) {
+                blockInCode[block] = false;
+            } else if (kind == ARRAY_INITIALIZER) {
+                blockInCode[block] = current >= 0 && blockInCode[current];
+            } else {
+                blockInCode[block] = true;
+            }
+            current = block;
+            addEvent(offset + 1, block);
+        }
+
+        private void close(int offset) {
+            if (current < 0) {
+                // Unbalanced closing brace
+                balanced = false;
+                return;
+            }
+            if (delimiters != blockDelimiters[current]) {
+                balanced = false;
+                delimiters = blockDelimiters[current];
+            }
+            blockCloseEvent[current] = eventCount;
+            current = blockParent[current];
+            addEvent(offset, current);
+        }
+
+        private void addEvent(int offset, int block) {
+            if (eventCount == eventOffset.length) {
+                eventOffset = Arrays.copyOf(eventOffset, eventCount * 2);
+                eventBlock = Arrays.copyOf(eventBlock, eventCount * 2);
+            }
+            eventOffset[eventCount] = offset;
+            eventBlock[eventCount] = block;
+            eventCount++;
+        }
+    }
+
+    /**
+     * The lexical context in which the next {@code '{'} is classified, updated token by
+     * token. Besides building the index, it lets {@link #blocksKeptBy} tell whether an edit
+     * changes how the braces after it are classified.
+     */
+    private static final class BraceContext {
+        boolean pendingTypeBody;
+        boolean pendingEnumBody;
+        private boolean maybeRecord;
+        private boolean sawNew;
+        private boolean newArgumentsClosed;
+        private boolean throwsSeen;
+        private boolean caseLabel;
+        private boolean arrow;
+        private boolean lambdaArrow;
+
+        private char previous;
+        private int previousKind = JavaLexer.EOF;
+        private int previousEnd = -1;
+        private boolean previousStatic;
+
+        // Parentheses that hold the arguments of a 'new' expression
+        private boolean[] parenIsNewArguments = new boolean[16];
+        private int parenDepth;
+        // Closing parentheses without an opening one in the lexed text, and whether the
+        // last token was one, which leaves newArgumentsClosed unknown
+        private int unmatchedParens;
+        private boolean closedUnmatchedParen;
+        // Open brackets, negative if more were closed
+        private int brackets;
+        private int semicolons;
+
+        /**
+         * @param parentKind Kind of the innermost open block, 0 at the top level
+         * @param parentInEnumConstants Whether that block is an enum body before the end
+         *                              of its constant list
+         * @return The kind of a block opened by a {@code '{'} in this context
+         */
+        int classify(int parentKind, boolean parentInEnumConstants) {
+            if (pendingTypeBody || newArgumentsClosed) {
+                return CLASS_BODY;
+            }
+            if (arrow) {
+                return lambdaArrow ? LAMBDA_BODY : BLOCK;
+            }
+            if (sawNew || previous == '=' || previous == '(' || previous == ',') {
+                return ARRAY_INITIALIZER;
+            }
+            if (parentKind == ARRAY_INITIALIZER) {
+                return ARRAY_INITIALIZER;
+            }
+            if (parentKind == CLASS_BODY) {
+                if (parentInEnumConstants) {
+                    // Constant with a body: A { ... } or A(1) { ... }
+                    return CLASS_BODY;
+                }
+                if (previous == ')' || throwsSeen) {
+                    return METHOD_BODY;
+                }
+                if (previousKind == JavaLexer.IDENTIFIER && !previousStatic) {
+                    // Compact record constructor
+                    return METHOD_BODY;
+                }
+                return INITIALIZER;
+            }
+            if (parentKind == 0) {
+                return CLASS_BODY;
+            }
+            return BLOCK;
+        }
+
+        /**
+         * Update the context with the current token of a lexer.
+         */
+        void accept(JavaLexer lexer, int kind) {
+            boolean closedNewArguments = false;
+            boolean wasArrow = false;
+            boolean wasLambdaArrow = false;
+            closedUnmatchedParen = false;
+
+            if (kind == JavaLexer.IDENTIFIER) {
+                int keyword = JavaKeywords.classify(lexer);
+                if (maybeRecord && keyword == JavaKeywords.NONE) {
+                    // record Point(...)
+                    pendingTypeBody = true;
+                }
+                maybeRecord = false;
+                if (keyword == JavaKeywords.RESERVED) {
+                    if (lexer.tokenIs("new")) {
+                        sawNew = true;
+                    } else if ((lexer.tokenIs("class") || lexer.tokenIs("interface")) && previous != '.') {
+                        pendingTypeBody = true;
+                    } else if (lexer.tokenIs("enum")) {
+                        pendingTypeBody = true;
+                        pendingEnumBody = true;
+                    } else if (lexer.tokenIs("throws")) {
+                        throwsSeen = true;
+                    } else if (lexer.tokenIs("case")) {
+                        caseLabel = true;
+                    }
+                } else if (keyword == JavaKeywords.MODIFIER && lexer.tokenIs("default")) {
+                    caseLabel = true;
+                } else if (keyword == JavaKeywords.NONE && lexer.tokenIs("record") && previous != '.') {
+                    maybeRecord = true;
+                }
+            } else {
+                maybeRecord = false;
+            }
+
+            if (kind == JavaLexer.PUNCTUATION) {
+                char c = lexer.tokenChar();
+                switch (c) {
+                    case '{':
+                    case ';':
+                        if (c == ';') {
+                            semicolons++;
+                        }
+                        pendingTypeBody = false;
+                        pendingEnumBody = false;
+                        sawNew = false;
+                        throwsSeen = false;
+                        caseLabel = false;
+                        break;
+                    case '}':
+                        break;
+                    case '(':
+                        pushParen(sawNew);
+                        sawNew = false;
+                        break;
+                    case ')':
+                        closedNewArguments = popParen();
+                        break;
+                    case ':':
+                        caseLabel = false;
+                        break;
+                    case '>':
+                        if (previous == '-' && previousEnd == lexer.tokenStart) {
+                            wasArrow = true;
+                            wasLambdaArrow = !caseLabel;
+                            caseLabel = false;
+                        }
+                        break;
+                    case '[':
+                        brackets++;
+                        break;
+                    case ']':
+                        brackets--;
+                        break;
+                    case '.': case '<': case ',': case '?': case '@':
+                        // Still part of the type after 'new'
+                        break;
+                    default:
+                        sawNew = false;
+                        break;
+                }
+                previous = c;
+            } else {
+                previous = 0;
+            }
+
+            newArgumentsClosed = closedNewArguments;
+            arrow = wasArrow;
+            lambdaArrow = wasLambdaArrow;
+            previousKind = kind;
+            previousEnd = lexer.tokenEnd;
+            previousStatic = kind == JavaLexer.IDENTIFIER && lexer.tokenIs("static");
+        }
+
+        /**
+         * Check whether the braces after two contexts are classified alike, when the
+         * contexts were built from the same starting point.
+         *
+         * @param next Start of the token after this context
+         * @param otherNext Start of the token after the other context
+         * @param semicolonsMatter Whether the number of {@code ;} seen must also match
+         */
+        boolean isLike(BraceContext other, int next, int otherNext, boolean semicolonsMatter) {
+            if (pendingTypeBody != other.pendingTypeBody || pendingEnumBody != other.pendingEnumBody
+                    || maybeRecord != other.maybeRecord || sawNew != other.sawNew
+                    || newArgumentsClosed != other.newArgumentsClosed || throwsSeen != other.throwsSeen
+                    || caseLabel != other.caseLabel || arrow != other.arrow || lambdaArrow != other.lambdaArrow
+                    || previous != other.previous || previousKind != other.previousKind
+                    || previousStatic != other.previousStatic
+                    || (previous == '-' && (previousEnd == next) != (other.previousEnd == otherNext))
+                    || unmatchedParens != other.unmatchedParens || closedUnmatchedParen != other.closedUnmatchedParen
+                    || brackets != other.brackets
+                    || (semicolonsMatter && semicolons != other.semicolons)) {
+                return false;
+            }
+            return Arrays.equals(parenIsNewArguments, 0, parenDepth, other.parenIsNewArguments, 0, other.parenDepth);
+        }
+
+        private void pushParen(boolean newArguments) {
+            if (parenDepth == parenIsNewArguments.length) {
+                parenIsNewArguments = Arrays.copyOf(parenIsNewArguments, parenDepth * 2);
+            }
+            parenIsNewArguments[parenDepth++] = newArguments;
+        }
+
+        private boolean popParen() {
+            if (parenDepth == 0) {
+                unmatchedParens++;
+                closedUnmatchedParen = true;
+                return false;
+            }
+            return parenIsNewArguments[--parenDepth];
+        }
+    }
+}
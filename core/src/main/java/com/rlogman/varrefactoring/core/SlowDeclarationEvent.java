@@ -0,0 +1,75 @@
+package com.rlogman.varrefactoring.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for a declaration whose type inference and eligibility check
+ * took longer than the threshold, e.g. a pathologically long initializer.
+ * <p>
+ * Disabled by default. Engines check {@link #isTraced()} once per file and only time
+ * declarations while the event is enabled.
+ */
+@Name("com.rlogman.varrefactoring.SlowDeclaration")
+@Label("Slow Declaration")
+@Category({"Java Var Refactoring"})
+@Description("Inferring the type of a declaration and checking its eligibility took long")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+final class SlowDeclarationEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Offset")
+    @Description("Offset of the declared type in the file")
+    int offset;
+
+    @Label("Declared Type")
+    String declarationType;
+
+    @Label("Initializer Type")
+    String initializerType;
+
+    /**
+     * @return Whether declarations should be timed
+     */
+    static boolean isTraced() {
+        return new SlowDeclarationEvent().isEnabled();
+    }
+
+    /**
+     * @return A started event, or null if declarations are not traced
+     */
+    static SlowDeclarationEvent begin(boolean traced) {
+        if (!traced) {
+            return null;
+        }
+        SlowDeclarationEvent event = new SlowDeclarationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit an event returned by {@link #begin(boolean)} if it exceeded the threshold.
+     */
+    static void end(SlowDeclarationEvent event, String engine, int offset,
+                    String declarationType, String initializerType) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.engine = engine;
+                event.offset = offset;
+                event.declarationType = declarationType;
+                event.initializerType = initializerType;
+                event.commit();
+            }
+        }
+    }
+}
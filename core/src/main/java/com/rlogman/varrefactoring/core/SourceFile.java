@@ -0,0 +1,88 @@
+package com.rlogman.varrefactoring.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Handle to a Java source file whose content is read only when it is processed.
+ * <p>
+ * The streaming batch API of {@link VarRefactoringProcessor} works on handles rather
+ * than on file contents, so only the files currently being processed are held in memory.
+ */
+public interface SourceFile {
+
+    /**
+     * @return A name identifying the file in results and error messages
+     */
+    String getName();
+
+    /**
+     * Read the content of the file. Called once, by the thread that processes the file.
+     *
+     * @return The source code
+     * @throws IOException If the content cannot be read
+     */
+    String readContent() throws IOException;
+
+    /**
+     * Read the content of the file as UTF-8 bytes, for files that are stored that way.
+     * Processors call this first and only call {@link #readContent()} if it returns null,
+     * so that sources that are ASCII in their code are never decoded.
+     *
+     * @return The content between the position and the limit of the buffer, or null if
+     *         the file only provides its content as characters
+     * @throws IOException If the content cannot be read
+     */
+    default ByteBuffer readUtf8() throws IOException {
+        return null;
+    }
+
+    /**
+     * Create a handle for a UTF-8 encoded file on disk.
+     *
+     * @param path Path of the file
+     * @return A handle that reads the file when processed
+     */
+    static SourceFile of(Path path) {
+        return new SourceFile() {
+            @Override
+            public String getName() {
+                return path.toString();
+            }
+
+            @Override
+            public String readContent() throws IOException {
+                return Files.readString(path, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public ByteBuffer readUtf8() throws IOException {
+                return ByteBuffer.wrap(Files.readAllBytes(path));
+            }
+        };
+    }
+
+    /**
+     * Create a handle for content that is already in memory.
+     *
+     * @param name Name of the file
+     * @param content The source code
+     * @return A handle returning the given content
+     */
+    static SourceFile of(String name, String content) {
+        return new SourceFile() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String readContent() {
+                return content;
+            }
+        };
+    }
+}
@@ -0,0 +1,223 @@
+package com.rlogman.varrefactoring.core;
+
+import java.util.Arrays;
+
+/**
+ * Concurrent interning table that maps canonical type names, such as
+ * {@code java.util.List<java.lang.String>}, to small int IDs.
+ * <p>
+ * Every {@link InitializerTypeClassifier} interns the names it reads into a table of
+ * its own, so that declarations compare their types by ID instead of by characters.
+ * A table can also be shared by all threads of a batch, to store every distinct name once.
+ * The low bits of an ID carry the features of the name that eligibility depends on,
+ * so {@link VarEligibilityChecker#isEligibleForVarReplacement(int, int, boolean, boolean)}
+ * decides from the IDs alone.
+ * <p>
+ * Lookups of names already in the table take no lock and allocate nothing, also for
+ * a region of a larger {@link CharSequence}. The table holds at most a fixed number
+ * of names; once it is full, new names get {@link #NO_ID} and callers fall back to
+ * comparing strings.
+ */
+public final class TypeSymbolTable {
+    /** Returned for names that do not fit into a full table. */
+    public static final int NO_ID = -1;
+
+    /** Default maximum number of names; a table of this size takes a few MB at most. */
+    public static final int DEFAULT_MAX_SYMBOLS = 1 << 16;
+
+    /** Low ID bits holding features, in the order of the matching checker flags. */
+    static final int FEATURE_BITS = 2;
+    /** Shift from the feature bits of an ID to the checker's {@code DIAMOND}/{@code PRIMITIVE} flags. */
+    static final int FEATURE_SHIFT = 2;
+    static final int FEATURE_MASK = (1 << FEATURE_BITS) - 1;
+
+    /**
+     * An interned name. Final fields make a symbol safe to read through a racy slot.
+     */
+    private static final class Symbol {
+        final String name;
+        final int hash;
+        final int id;
+
+        Symbol(String name, int hash, int id) {
+            this.name = name;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+
+    private final int maxSymbols;
+    /** Open-addressing hash table; replaced, never shrunk, when it fills up. */
+    private volatile Symbol[] table = new Symbol[64];
+    /** Symbols by the index part of their ID. */
+    private volatile Symbol[] symbols = new Symbol[32];
+    // Guarded by this
+    private int size;
+
+    /**
+     * Create a table with the default capacity.
+     */
+    public TypeSymbolTable() {
+        this(DEFAULT_MAX_SYMBOLS);
+    }
+
+    /**
+     * @param maxSymbols The maximum number of distinct names the table holds
+     */
+    public TypeSymbolTable(int maxSymbols) {
+        if (maxSymbols < 1) {
+            throw new IllegalArgumentException("Maximum number of symbols must be at least 1");
+        }
+        this.maxSymbols = maxSymbols;
+    }
+
+    /**
+     * Return the ID of a name, adding the name on first use.
+     *
+     * @param name The canonical type name
+     * @return The ID, or {@link #NO_ID} if the name is new and the table is full
+     */
+    public int id(CharSequence name) {
+        return id(name, 0, name.length());
+    }
+
+    /**
+     * Return the ID of the name {@code source[start, end)}, adding it on first use.
+     *
+     * @param source Text containing the name
+     * @param start Offset of the first character of the name
+     * @param end Offset after the last character of the name
+     * @return The ID, or {@link #NO_ID} if the name is new and the table is full
+     */
+    public int id(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        Symbol symbol = find(table, hash, source, start, end);
+        return symbol != null ? symbol.id : add(hash, source, start, end);
+    }
+
+    /**
+     * @param id An ID handed out by this table
+     * @return The name with that ID
+     */
+    public String name(int id) {
+        int index = id >>> FEATURE_BITS;
+        Symbol[] current = symbols;
+        Symbol symbol = index < current.length ? current[index] : null;
+        if (symbol == null) {
+            // Added concurrently and not yet visible without the lock
+            synchronized (this) {
+                symbol = symbols[index];
+            }
+        }
+        return symbol.name;
+    }
+
+    /**
+     * @return The number of distinct names in the table
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The maximum number of distinct names in the table
+     */
+    public int maxSymbols() {
+        return maxSymbols;
+    }
+
+    private synchronized int add(int hash, CharSequence source, int start, int end) {
+        // Another thread may have added the name since the lock-free lookup
+        Symbol existing = find(table, hash, source, start, end);
+        if (existing != null) {
+            return existing.id;
+        }
+        if (size == maxSymbols) {
+            return NO_ID;
+        }
+
+        String name = source.subSequence(start, end).toString();
+        int features = VarEligibilityChecker.features(name, name, false, false)
+            & (VarEligibilityChecker.DIAMOND | VarEligibilityChecker.PRIMITIVE);
+        Symbol symbol = new Symbol(name, hash, size << FEATURE_BITS | features >>> FEATURE_SHIFT);
+
+        Symbol[] bySize = symbols;
+        if (size == bySize.length) {
+            bySize = Arrays.copyOf(bySize, size * 2);
+        }
+        bySize[size] = symbol;
+        symbols = bySize;
+
+        Symbol[] current = table;
+        if ((size + 1) * 2 > current.length) {
+            current = rehash(current, current.length * 2);
+        }
+        insert(current, symbol);
+        table = current;
+        size++;
+        return symbol.id;
+    }
+
+    private static Symbol find(Symbol[] table, int hash, CharSequence source, int start, int end) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        Symbol candidate;
+        while ((candidate = table[slot]) != null) {
+            if (candidate.hash == hash && sameChars(candidate.name, source, start, end)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static void insert(Symbol[] table, Symbol symbol) {
+        int mask = table.length - 1;
+        int slot = mix(symbol.hash) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = symbol;
+    }
+
+    private static Symbol[] rehash(Symbol[] old, int capacity) {
+        Symbol[] table = new Symbol[capacity];
+        for (Symbol symbol : old) {
+            if (symbol != null) {
+                insert(table, symbol);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * The {@link String#hashCode()} of the characters, taken from the string itself
+     * when the whole of a string is looked up, since strings cache their hash.
+     */
+    private static int hash(CharSequence source, int start, int end) {
+        if (source instanceof String && start == 0 && end == source.length()) {
+            return source.hashCode();
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean sameChars(String name, CharSequence source, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
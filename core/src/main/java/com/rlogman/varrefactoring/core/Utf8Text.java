@@ -0,0 +1,219 @@
+package com.rlogman.varrefactoring.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoded source viewed as characters without decoding it: every byte is one
+ * character, so offsets into the view are byte offsets into the buffer.
+ * <p>
+ * ASCII bytes map to themselves. The bytes of a multi-byte sequence map to
+ * {@link #NON_ASCII}, which is fine inside comments and literals, whose extent the
+ * lexer finds from ASCII delimiters only. Outside of them, e.g. in an identifier with
+ * a non-ASCII letter, the view is not faithful, which {@link #isFaithful()} detects.
+ * <p>
+ * The view reads the buffer between its position and limit with absolute gets, so it
+ * never changes the buffer's position. It is not safe for use by multiple threads
+ * while the buffer is modified.
+ */
+final class Utf8Text implements CharSequence {
+    /** Character standing in for every byte of a multi-byte UTF-8 sequence. */
+    static final char NON_ASCII = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int length;
+
+    Utf8Text(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private Utf8Text(ByteBuffer buffer, int base, int length) {
+        this.buffer = buffer;
+        this.base = base;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        byte b = buffer.get(base + index);
+        return b >= 0 ? (char) b : NON_ASCII;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new Utf8Text(buffer, base + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(base, bytes);
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                bytes[i] = '?';
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Check whether the view lexes like the decoded text: true if the source is ASCII,
+     * or if all of its non-ASCII characters are inside comments and literals.
+     * <p>
+     * Pure ASCII sources, the common case, cost one pass over the bytes; others are
+     * lexed once more.
+     */
+    boolean isFaithful() {
+        if (isAscii()) {
+            return true;
+        }
+        JavaLexer lexer = new JavaLexer(this);
+        for (int kind = lexer.next(); kind != JavaLexer.EOF; kind = lexer.next()) {
+            // Outside literals the stand-in is a punctuation token of its own
+            if (kind == JavaLexer.PUNCTUATION && lexer.tokenChar() == NON_ASCII) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAscii() {
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int from = buffer.arrayOffset() + base;
+            for (int i = from, end = from + length; i < end; i++) {
+                if (array[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = base, end = base + length; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of characters of the decoded source, given that it is valid UTF-8:
+     *         one per byte that starts a sequence, and two for a supplementary character
+     */
+    int decodedLength() {
+        if (isAscii()) {
+            return length;
+        }
+        int chars = 0;
+        for (int i = base, end = base + length; i < end; i++) {
+            byte b = buffer.get(i);
+            if ((b & 0xC0) != 0x80) {
+                chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Decode the source.
+     *
+     * @throws CharacterCodingException If the source is not valid UTF-8
+     */
+    String decode() throws CharacterCodingException {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(base + length).position(base);
+        CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)
+            .decode(bytes);
+        return chars.toString();
+    }
+
+    /**
+     * Convert edits computed on the decoded source into edits of the UTF-8 bytes.
+     *
+     * @param edits Edits with offsets and lengths in characters of {@code decoded}
+     * @param decoded The decoded source
+     * @return The edits with offsets and lengths in bytes
+     */
+    static EditScript toByteOffsets(EditScript edits, String decoded) {
+        if (edits.isEmpty()) {
+            return edits;
+        }
+        EditScript converted = new EditScript();
+        int chars = 0;
+        int bytes = 0;
+        for (int i = 0; i < edits.size(); i++) {
+            int start = edits.offset(i);
+            int end = start + edits.length(i);
+            bytes += encodedLength(decoded, chars, start);
+            int length = encodedLength(decoded, start, end);
+            converted.add(bytes, length);
+            bytes += length;
+            chars = end;
+        }
+        return converted;
+    }
+
+    /**
+     * Convert a report made on the decoded source into one on the UTF-8 bytes.
+     *
+     * @param report Candidates with offsets in characters of {@code decoded}
+     * @param decoded The decoded source
+     * @return The candidates with offsets in bytes
+     */
+    static CandidateReport toByteOffsets(CandidateReport report, String decoded) {
+        if (report.size() == 0) {
+            return report;
+        }
+        // Nested statements end out of order, so offsets are looked up rather than summed
+        int[] bytes = new int[decoded.length() + 1];
+        for (int i = 0; i < decoded.length(); i++) {
+            bytes[i + 1] = bytes[i] + encodedLength(decoded, i, i + 1);
+        }
+        CandidateReport converted = new CandidateReport();
+        for (int i = 0; i < report.size(); i++) {
+            int start = bytes[report.typeStart(i)];
+            int end = bytes[report.typeEnd(i)];
+            int statementEnd = bytes[report.statementEnd(i)];
+            if (report.isUndecided(i)) {
+                converted.addUndecided(start, end, statementEnd);
+            } else {
+                converted.add(start, end, statementEnd, report.rejectionReason(i));
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * @return The number of UTF-8 bytes of {@code text[start, end)}
+     */
+    private static int encodedLength(String text, int start, int end) {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // With its low surrogate: 4 bytes for the pair
+                bytes += 2;
+            } else if (Character.isLowSurrogate(c)) {
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -2,12 +2,59 @@ package com.rlogman.varrefactoring.core;
 
 /**
  * Determines if a variable declaration is eligible for 'var' replacement.
+ * <p>
+ * The options are compiled into a decision table when the checker is created: each
+ * declaration is reduced to a set of feature flags ({@link #LOCAL}, {@link #LOOP_VARIABLE},
+ * {@link #DIAMOND}, {@link #PRIMITIVE}, {@link #TYPES_EQUAL}) and the table holds one bit
+ * per possible set, so a check is a table lookup instead of a chain of option tests.
+ * Options modified after the checker was created are therefore not seen by it.
+ * <p>
+ * A checker holds no mutable state, so it is safe for concurrent use.
  */
 public class VarEligibilityChecker {
-    private final RefactoringOptions options;
+    /** The variable is a local variable. */
+    public static final int LOCAL = 1;
+    /** The variable is declared in the initialization of a for-loop. */
+    public static final int LOOP_VARIABLE = 1 << 1;
+    /** The declared type contains a diamond operator. */
+    public static final int DIAMOND = 1 << 2;
+    /** The declared type is a primitive type. */
+    public static final int PRIMITIVE = 1 << 3;
+    /** The declared type and the initializer type are the same. */
+    public static final int TYPES_EQUAL = 1 << 4;
+
+    private static final int FEATURE_SETS = 1 << 5;
+
+    /**
+     * Why a declaration is not eligible; the first rule that fails is reported.
+     */
+    public enum RejectionReason {
+        /** Fields and other non-local variables cannot use 'var'. */
+        NOT_LOCAL,
+        /** For-loop variables are disabled in the options. */
+        LOOP_VARIABLE,
+        /** Declarations with a diamond operator are disabled in the options. */
+        DIAMOND,
+        /** Primitive types are disabled in the options. */
+        PRIMITIVE,
+        /** The initializer has a different (or unknown) type than the declaration. */
+        TYPES_DIFFER
+    }
+
+    /** Bit {@code f} is set if a declaration with feature flags {@code f} is eligible. */
+    private final int eligibleFeatureSets;
+    /** The rejection reason of each feature set, null for eligible ones. */
+    private final RejectionReason[] rejectionReasons = new RejectionReason[FEATURE_SETS];
 
     public VarEligibilityChecker(RefactoringOptions options) {
-        this.options = options;
+        int eligible = 0;
+        for (int features = 0; features < FEATURE_SETS; features++) {
+            rejectionReasons[features] = rejectionReason(options, features);
+            if (rejectionReasons[features] == null) {
+                eligible |= 1 << features;
+            }
+        }
+        this.eligibleFeatureSets = eligible;
     }
 
     /**
@@ -25,52 +72,176 @@ public class VarEligibilityChecker {
             boolean isLocal,
             boolean isLoopVariable) {
 
+        return isEligible(features(declarationType, initializerType, isLocal, isLoopVariable));
+    }
+
+    /**
+     * Checks if a variable declaration can be replaced with 'var', given the IDs of
+     * its types in a {@link TypeSymbolTable}.
+     *
+     * @param declarationTypeId The ID of the declared type name
+     * @param initializerTypeId The ID of the initializer's type name, from the same table
+     * @param isLocal Whether the variable is a local variable
+     * @param isLoopVariable Whether the variable is a for-loop variable
+     * @return true if the variable can be replaced with 'var'
+     * @throws IllegalArgumentException If an ID is {@link TypeSymbolTable#NO_ID}
+     */
+    public boolean isEligibleForVarReplacement(
+            int declarationTypeId,
+            int initializerTypeId,
+            boolean isLocal,
+            boolean isLoopVariable) {
+
+        return isEligible(features(declarationTypeId, initializerTypeId, isLocal, isLoopVariable));
+    }
+
+    /**
+     * Checks if a declaration with the given features can be replaced with 'var'.
+     *
+     * @param features The feature flags of the declaration, see {@link #features}
+     * @return true if the variable can be replaced with 'var'
+     */
+    public boolean isEligible(int features) {
+        return (eligibleFeatureSets >>> features & 1) != 0;
+    }
+
+    /**
+     * Explain why a declaration with the given features is not eligible.
+     *
+     * @param features The feature flags of the declaration, see {@link #features}
+     * @return The reason, or null if the declaration is eligible
+     */
+    public RejectionReason rejectionReason(int features) {
+        return rejectionReasons[features];
+    }
+
+    /**
+     * Compute the feature flags of a declaration from its type names, for names that
+     * have no ID, such as those reported by a resolving engine.
+     *
+     * @param declarationType The declared type name
+     * @param initializerType The type name of the initializer expression
+     * @param isLocal Whether the variable is a local variable
+     * @param isLoopVariable Whether the variable is a for-loop variable
+     * @return The flags, a combination of {@link #LOCAL}, {@link #LOOP_VARIABLE},
+     *         {@link #DIAMOND}, {@link #PRIMITIVE} and {@link #TYPES_EQUAL}
+     */
+    public static int features(
+            String declarationType,
+            String initializerType,
+            boolean isLocal,
+            boolean isLoopVariable) {
+
+        int features = 0;
+        if (isLocal) {
+            features |= LOCAL;
+        }
+        if (isLoopVariable) {
+            features |= LOOP_VARIABLE;
+        }
+        if (containsDiamondOperator(declarationType)) {
+            features |= DIAMOND;
+        }
+        if (isPrimitiveType(declarationType)) {
+            features |= PRIMITIVE;
+        }
+        // Names from an InitializerTypeClassifier are interned, so equal names are usually the same instance
+        if (declarationType == initializerType || declarationType.equals(initializerType)) {
+            features |= TYPES_EQUAL;
+        }
+        return features;
+    }
+
+    /**
+     * Compute the feature flags of a declaration, given the IDs of its types in a
+     * {@link TypeSymbolTable}. The DIAMOND and PRIMITIVE flags were computed once when
+     * the declared type was added to the table, and the types are compared by ID.
+     *
+     * @param declarationTypeId The ID of the declared type name
+     * @param initializerTypeId The ID of the initializer's type name, from the same table
+     * @param isLocal Whether the variable is a local variable
+     * @param isLoopVariable Whether the variable is a for-loop variable
+     * @return The flags, see {@link #features(String, String, boolean, boolean)}
+     * @throws IllegalArgumentException If an ID is {@link TypeSymbolTable#NO_ID}
+     */
+    public static int features(
+            int declarationTypeId,
+            int initializerTypeId,
+            boolean isLocal,
+            boolean isLoopVariable) {
+
+        if ((declarationTypeId | initializerTypeId) < 0) {
+            throw new IllegalArgumentException("Type names without ID must be compared as strings");
+        }
+        // IDs carry the DIAMOND and PRIMITIVE features of their name in their low bits
+        int features = (declarationTypeId & TypeSymbolTable.FEATURE_MASK) << TypeSymbolTable.FEATURE_SHIFT;
+        if (declarationTypeId == initializerTypeId) {
+            features |= TYPES_EQUAL;
+        }
+        if (isLocal) {
+            features |= LOCAL;
+        }
+        if (isLoopVariable) {
+            features |= LOOP_VARIABLE;
+        }
+        return features;
+    }
+
+    /**
+     * Evaluate the eligibility rules for one combination of feature flags; the
+     * constructor does this for every combination.
+     *
+     * @return The first rule that fails, or null if the declaration is eligible
+     */
+    private static RejectionReason rejectionReason(RefactoringOptions options, int features) {
         // 'var' can only be used for local variables with initializers
-        if (!isLocal) {
-            return false;
+        if ((features & LOCAL) == 0) {
+            return RejectionReason.NOT_LOCAL;
         }
 
         // Skip if this is a for-loop variable and the options disallow it
-        if (isLoopVariable && !options.isAllowForLoopVars()) {
-            return false;
+        if ((features & LOOP_VARIABLE) != 0 && !options.isAllowForLoopVars()) {
+            return RejectionReason.LOOP_VARIABLE;
         }
 
-        // Check if the declaration involves a diamond operator
-        boolean hasDiamondOperator = containsDiamondOperator(declarationType);
-        
         // Skip if the declaration uses diamond operator and options disallow it
-        if (hasDiamondOperator && !options.isAllowDiamondOperator()) {
-            return false;
+        if ((features & DIAMOND) != 0 && !options.isAllowDiamondOperator()) {
+            return RejectionReason.DIAMOND;
         }
 
         // Skip primitive types if option is disabled
-        if (isPrimitiveType(declarationType) && !options.isAllowPrimitiveTypes()) {
-            return false;
+        if ((features & PRIMITIVE) != 0 && !options.isAllowPrimitiveTypes()) {
+            return RejectionReason.PRIMITIVE;
         }
 
         // Check if the declared type and initializer type match
         // If they don't match, we might want to keep the explicit type
-        if (!options.isAllowDifferentTypes() && !declarationType.equals(initializerType)) 
-            return false;
-
-        return true;
+        if (!options.isAllowDifferentTypes() && (features & TYPES_EQUAL) == 0) {
+            return RejectionReason.TYPES_DIFFER;
+        }
+        return null;
     }
-    
+
     /**
      * Check if a type declaration contains a diamond operator.
      */
-    private boolean containsDiamondOperator(String type) {
-        return type.contains("<>") || type.endsWith("<>");
+    private static boolean containsDiamondOperator(String type) {
+        return type.contains("<>");
     }
 
-    private boolean isPrimitiveType(String typeName) {
-        return typeName.equals("int") ||
-               typeName.equals("long") ||
-               typeName.equals("short") ||
-               typeName.equals("byte") ||
-               typeName.equals("char") ||
-               typeName.equals("float") ||
-               typeName.equals("double") ||
-               typeName.equals("boolean");
+    private static boolean isPrimitiveType(String typeName) {
+        switch (typeName) {
+            case "int":
+            case "long":
+            case "short":
+            case "byte":
+            case "char":
+            case "float":
+            case "double":
+            case "boolean":
+                return true;
+            default:
+                return false;
+        }
     }
-}
\ No newline at end of file
+}
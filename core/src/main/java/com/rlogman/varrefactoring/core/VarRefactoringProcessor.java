@@ -1,22 +1,135 @@
 package com.rlogman.varrefactoring.core;
 
+import com.rlogman.varrefactoring.common.CacheKey;
+import com.rlogman.varrefactoring.common.CachedEdits;
+import com.rlogman.varrefactoring.common.ResultCache;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Core processor for handling 'var' refactoring operations.
  * This class is IDE-agnostic and can be used in different environments.
+ * <p>
+ * A processor is safe for concurrent use by multiple threads, provided its
+ * {@link RefactoringOptions} are not modified while files are being processed.
+ * <p>
+ * Declarations are found by a {@link RefactoringEngine}, by default the syntactic
+ * {@link JavaTypeReplacer}. With a fallback engine, the declarations the first engine
+ * cannot decide are handed to the fallback, so a slower type-resolving engine only
+ * looks at the few declarations that need it.
+ * <p>
+ * A {@link ProcessingListener} receives {@link FileStats} for every processed file.
+ * Without a listener no statistics are gathered and no time is measured.
+ * <p>
+ * Files, engine phases and slow declarations are also recorded as Java Flight Recorder
+ * events in the category "Java Var Refactoring", named {@code com.rlogman.varrefactoring.*}.
+ * The events are disabled by default and then cost one enabled check per file and phase;
+ * enable them in a recording's settings or with {@link jdk.jfr.Recording#enable(String)}.
  */
 public class VarRefactoringProcessor {
+    /**
+     * Version of the edits this processor computes. Bump it whenever a change alters
+     * the edits for some input, so that results cached by older versions are not used.
+     */
+    public static final String ENGINE_VERSION = "2";
+
+    /** Files each worker may have read or queued ahead when streaming a batch. */
+    private static final int FILES_IN_FLIGHT_PER_WORKER = 2;
+
+    /** Characters of the window a stream is processed in, unless a statement needs more. */
+    private static final int STREAM_WINDOW = 1 << 16;
+
     private final RefactoringOptions options;
-    private final JavaTypeReplacer typeReplacer;
+    private final RefactoringEngine engine;
+    private final RefactoringEngine fallbackEngine;
     private final VarEligibilityChecker eligibilityChecker;
+    private final ResultCache resultCache;
+    /** Identifies the edits of this engine configuration in the result cache. */
+    private final String engineVersion;
+    private volatile ProcessingListener listener;
 
     public VarRefactoringProcessor(RefactoringOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * Create a processor that reuses results from a persistent cache.
+     *
+     * @param options The refactoring options
+     * @param resultCache Cache consulted before analyzing a file, or null for none
+     */
+    public VarRefactoringProcessor(RefactoringOptions options, ResultCache resultCache) {
+        this(options, new JavaTypeReplacer(), null, resultCache);
+    }
+
+    /**
+     * Create a processor with the given engines.
+     *
+     * @param options The refactoring options
+     * @param engine The engine that finds the declarations to replace
+     * @param fallbackEngine Engine that decides the declarations {@code engine} cannot, or null
+     *                       to treat their initializers as {@link JavaTypeReplacer#UNKNOWN_TYPE}
+     * @param resultCache Cache consulted before analyzing a file, or null for none
+     */
+    public VarRefactoringProcessor(
+            RefactoringOptions options,
+            RefactoringEngine engine,
+            RefactoringEngine fallbackEngine,
+            ResultCache resultCache) {
         this.options = options;
-        this.typeReplacer = new JavaTypeReplacer();
+        this.engine = engine;
+        this.fallbackEngine = fallbackEngine;
         this.eligibilityChecker = new VarEligibilityChecker(options);
+        this.resultCache = resultCache;
+        this.engineVersion = engineVersion(engine, fallbackEngine);
+    }
+
+    /**
+     * The default syntactic engine keeps the plain {@link #ENGINE_VERSION}, so that
+     * caches written before engines were pluggable stay valid.
+     */
+    private static String engineVersion(RefactoringEngine engine, RefactoringEngine fallbackEngine) {
+        if (fallbackEngine == null && engine instanceof JavaTypeReplacer) {
+            return ENGINE_VERSION;
+        }
+        return ENGINE_VERSION + ":" + engine.getName()
+            + (fallbackEngine == null ? "" : "+" + fallbackEngine.getName());
+    }
+
+    /**
+     * Register a listener that receives the statistics of every file processed from now on.
+     *
+     * @param listener The listener, or null to stop gathering statistics
+     */
+    public void setProcessingListener(ProcessingListener listener) {
+        this.listener = listener;
     }
 
     /**
@@ -27,18 +140,764 @@ public class VarRefactoringProcessor {
      * @return The refactored file content
      */
     public String processFile(String fileContent, String javaVersion) {
+        return processFile(null, fileContent, javaVersion);
+    }
+
+    private String processFile(String fileName, String fileContent, String javaVersion) {
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            return computeEdits(fileContent, javaVersion, null, null).applyTo(fileContent);
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(fileName, fileContent.length());
+        EditScript edits = computeEdits(fileContent, javaVersion, stats, null);
+        long start = System.nanoTime();
+        String result = edits.applyTo(fileContent);
+        stats.addNanos(FileStats.Phase.REWRITE, System.nanoTime() - start);
+        report(stats, current, event);
+        return result;
+    }
+
+    /**
+     * Compute the 'var' replacements for a single Java file without rewriting it.
+     * Callers that only need the changed spans (an editor, a language server) can
+     * apply the returned script themselves instead of copying the whole file.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The edits, or {@link EditScript#EMPTY} if nothing is replaced
+     */
+    public EditScript computeEdits(String fileContent, String javaVersion) {
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            return computeEdits(fileContent, javaVersion, null, null);
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(null, fileContent.length());
+        EditScript edits = computeEdits(fileContent, javaVersion, stats, null);
+        report(stats, current, event);
+        return edits;
+    }
+
+    /**
+     * Process a Java file held in any character sequence, such as an editor buffer, a rope
+     * or a {@link java.nio.CharBuffer}, and write the refactored content to {@code out}.
+     * <p>
+     * The content is not copied into a {@code String} where possible, and no refactored
+     * copy is built: unchanged spans go to {@code out} in bulk between the replacements,
+     * see {@link EditScript#writeTo(CharSequence, Appendable)}. The result cache, a
+     * fallback engine or an engine other than the syntactic one need a {@code String}
+     * copy of the content.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param out Receives the refactored content, e.g. a {@link java.io.Writer} on a file
+     * @throws IOException If {@code out} fails
+     */
+    public void processFile(CharSequence fileContent, String javaVersion, Appendable out) throws IOException {
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            computeEdits(fileContent, javaVersion, null).writeTo(fileContent, out);
+            return;
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(null, fileContent.length());
+        EditScript edits = computeEdits(fileContent, javaVersion, stats);
+        long start = System.nanoTime();
+        edits.writeTo(fileContent, out);
+        stats.addNanos(FileStats.Phase.REWRITE, System.nanoTime() - start);
+        report(stats, current, event);
+    }
+
+    private EditScript computeEdits(CharSequence fileContent, String javaVersion, FileStats stats) {
+        if (fileContent instanceof String || !scansAnySequence()) {
+            return computeEdits(fileContent.toString(), javaVersion, stats, null);
+        }
+        if (!isVarSupported(javaVersion)) {
+            return EditScript.EMPTY;
+        }
+        return scan(fileContent, stats);
+    }
+
+    /**
+     * Process a UTF-8 encoded Java file, without decoding it where possible.
+     *
+     * @param utf8Content The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The refactored content, or {@code utf8Content} itself if nothing is replaced
+     * @throws UncheckedIOException If the content needs decoding and is not valid UTF-8
+     * @see #computeEdits(ByteBuffer, String)
+     */
+    public byte[] processFile(byte[] utf8Content, String javaVersion) {
+        byte[] result = processFile(null, ByteBuffer.wrap(utf8Content), javaVersion);
+        return result != null ? result : utf8Content;
+    }
+
+    /**
+     * @return The refactored content, or null if nothing is replaced
+     */
+    private byte[] processFile(String fileName, ByteBuffer utf8Content, String javaVersion) {
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            EditScript edits = computeEdits(utf8Content, javaVersion, null);
+            return edits.isEmpty() ? null : edits.applyTo(utf8Content);
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(fileName, 0);
+        EditScript edits = computeEdits(utf8Content, javaVersion, stats);
+        long start = System.nanoTime();
+        byte[] result = edits.isEmpty() ? null : edits.applyTo(utf8Content);
+        stats.addNanos(FileStats.Phase.REWRITE, System.nanoTime() - start);
+        report(stats, current, event);
+        return result;
+    }
+
+    /**
+     * Compute the 'var' replacements for a UTF-8 encoded Java file, e.g. one read into a
+     * byte array or memory-mapped, without decoding it into a {@code String}.
+     * <p>
+     * A source that is ASCII outside its comments and literals, as most are, is scanned
+     * byte by byte as it is. Other sources are decoded, and the edits are converted back
+     * to byte offsets. Decoding is also needed for the result cache, a fallback engine
+     * or an engine other than the syntactic one.
+     *
+     * @param utf8Content The content of a Java file, between the position and the limit of
+     *                    the buffer; the position is not changed
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The edits, with offsets and lengths in bytes from the position of the buffer
+     * @throws UncheckedIOException If the content needs decoding and is not valid UTF-8
+     */
+    public EditScript computeEdits(ByteBuffer utf8Content, String javaVersion) {
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            return computeEdits(utf8Content, javaVersion, null);
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(null, 0);
+        EditScript edits = computeEdits(utf8Content, javaVersion, stats);
+        report(stats, current, event);
+        return edits;
+    }
+
+    /**
+     * @param stats Receives the statistics, including the size of the content in bytes and
+     *              in characters, or null
+     */
+    private EditScript computeEdits(ByteBuffer utf8Content, String javaVersion, FileStats stats) {
+        Utf8Text text = new Utf8Text(utf8Content);
+        if (stats != null) {
+            stats.setBytesScanned(text.length());
+        }
+        if (!isVarSupported(javaVersion)) {
+            if (stats != null) {
+                stats.setCharactersScanned(text.decodedLength());
+            }
+            return EditScript.EMPTY;
+        }
+        if (scansAnySequence() && text.isFaithful()) {
+            if (stats != null) {
+                stats.setCharactersScanned(text.decodedLength());
+            }
+            return scan(text, stats);
+        }
+
+        String decoded = decode(text);
+        if (stats != null) {
+            stats.setCharactersScanned(decoded.length());
+        }
+        return Utf8Text.toByteOffsets(computeEdits(decoded, javaVersion, stats, null), decoded);
+    }
+
+    private static String decode(Utf8Text text) {
+        try {
+            return text.decode();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Content is not valid UTF-8", e);
+        }
+    }
+
+    /**
+     * @return Whether files can be scanned as any character sequence, with {@link #scan}:
+     *         only the syntactic engine reads one, and only without a cache or a fallback
+     */
+    private boolean scansAnySequence() {
+        return resultCache == null && fallbackEngine == null && engine instanceof JavaTypeReplacer;
+    }
+
+    private EditScript scan(CharSequence fileContent, FileStats stats) {
+        return ((JavaTypeReplacer) engine).findReplacements(fileContent, eligibilityChecker, null, null, stats, null);
+    }
+
+    /**
+     * Process a Java file read from a stream in a window of bounded size, writing the
+     * refactored content as it goes, for generated sources too large to hold in memory.
+     * <p>
+     * Each window is done up to its last statement boundary, right after a {@code ;} or a
+     * {@code '{'} outside parentheses and initializers, and the brace blocks open there are
+     * carried over to the next window, so the result is the same as with
+     * {@link #processFile(String, String)}. A window without a boundary, e.g. in the middle
+     * of a huge array initializer, grows until the statement fits: the memory needed is
+     * bounded by the longest statement rather than by the file.
+     * <p>
+     * Only the syntactic engine processes streams, without a fallback engine; the result
+     * cache is not used.
+     *
+     * @param in The content of a Java file, read to its end; it is not closed
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param out Receives the refactored content; it is neither flushed nor closed
+     * @throws IOException If reading or writing fails
+     * @throws UnsupportedOperationException If the engine is not the syntactic one or
+     *                                       there is a fallback engine
+     */
+    public void processStream(Reader in, String javaVersion, Writer out) throws IOException {
+        processStream(in, null, javaVersion, out);
+    }
+
+    /**
+     * @param bytes The channel {@code in} decodes, whose bytes are counted in the
+     *              statistics, or null
+     */
+    private void processStream(Reader in, ByteCounter bytes, String javaVersion, Writer out) throws IOException {
+        if (fallbackEngine != null || !(engine instanceof JavaTypeReplacer)) {
+            throw new UnsupportedOperationException(
+                "Engine '" + engine.getName() + "' does not support streaming"
+                    + (fallbackEngine != null ? " with a fallback engine" : ""));
+        }
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        if (current == null && !event.isEnabled()) {
+            processStream(in, javaVersion, out, null);
+            return;
+        }
+
+        event.begin();
+        FileStats stats = new FileStats(null, 0);
+        processStream(in, javaVersion, out, stats);
+        if (bytes != null) {
+            stats.setBytesScanned(bytes.count);
+        }
+        report(stats, current, event);
+    }
+
+    /**
+     * Process a UTF-8 encoded Java file read from a channel in a window of bounded size,
+     * writing the refactored content to another channel as it goes.
+     *
+     * @param in The content of a Java file, read to its end; it is not closed
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param out Receives the refactored content; it is not closed
+     * @throws IOException If reading or writing fails, or the content is not valid UTF-8
+     * @throws UnsupportedOperationException If the engine is not the syntactic one or
+     *                                       there is a fallback engine
+     * @see #processStream(Reader, String, Writer)
+     */
+    public void processStream(ReadableByteChannel in, String javaVersion, WritableByteChannel out)
+            throws IOException {
+        ByteCounter bytes = new ByteCounter(in);
+        // Decoders that report malformed input rather than replace it
+        Reader reader = Channels.newReader(bytes, StandardCharsets.UTF_8.newDecoder(), -1);
+        Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), -1);
+        processStream(reader, bytes, javaVersion, writer);
+        writer.flush();
+    }
+
+    private void processStream(Reader in, String javaVersion, Writer out, FileStats stats) throws IOException {
+        if (!isVarSupported(javaVersion)) {
+            long copied = in.transferTo(out);
+            if (stats != null) {
+                stats.addCharactersScanned(copied);
+            }
+            return;
+        }
+        JavaTypeReplacer replacer = (JavaTypeReplacer) engine;
+        ScopeIndex.OpenBlocks blocks = new ScopeIndex.OpenBlocks();
+        EditScript edits = new EditScript();
+        char[] window = new char[STREAM_WINDOW];
+        int length = 0;
+        boolean last = false;
+        while (true) {
+            while (!last && length < window.length) {
+                int read = in.read(window, length, window.length - length);
+                if (read < 0) {
+                    last = true;
+                } else {
+                    length += read;
+                }
+            }
+            edits.clear();
+            int done = replacer.findReplacements(CharBuffer.wrap(window, 0, length), last, blocks,
+                eligibilityChecker, edits, stats);
+            if (done == 0 && !last) {
+                // No statement boundary yet
+                window = Arrays.copyOf(window, window.length * 2);
+                continue;
+            }
+
+            long start = stats == null ? 0 : System.nanoTime();
+            edits.writeTo(CharBuffer.wrap(window, 0, done), out);
+            if (stats != null) {
+                stats.addNanos(FileStats.Phase.REWRITE, System.nanoTime() - start);
+                stats.addCharactersScanned(done);
+            }
+            if (last) {
+                return;
+            }
+            // Keep the rest for the next window, going back to the usual size after a long statement
+            length -= done;
+            char[] next = window.length > STREAM_WINDOW && length < STREAM_WINDOW / 2
+                ? new char[STREAM_WINDOW]
+                : window;
+            System.arraycopy(window, done, next, 0, length);
+            window = next;
+        }
+    }
+
+    /**
+     * Process a single Java file, giving up once a deadline passes or a token is cancelled.
+     * Both are checked cooperatively while scanning and while checking declarations, so
+     * one pathological file cannot stall an editor request or a batch. A type-resolving
+     * fallback engine is only stopped between declarations.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param timeout The time processing may take, or null for no deadline
+     * @param cancellation A token that stops processing, or null
+     * @return The result with the edits found until processing completed or stopped
+     */
+    public ProcessingResult processFile(String fileContent, String javaVersion,
+                                        Duration timeout, CancellationToken cancellation) {
+        Interruption interruption = new Interruption(timeout, cancellation);
+        ProcessingListener current = listener;
+        FileProcessedEvent event = new FileProcessedEvent();
+        EditScript edits;
+        if (current == null && !event.isEnabled()) {
+            edits = computeEdits(fileContent, javaVersion, null, interruption);
+        } else {
+            event.begin();
+            FileStats stats = new FileStats(null, fileContent.length());
+            edits = computeEdits(fileContent, javaVersion, stats, interruption);
+            report(stats, current, event);
+        }
+        return new ProcessingResult(fileContent, edits, interruption.status());
+    }
+
+    /**
+     * Analyze a file without rewriting it: find every candidate declaration and decide
+     * whether it can use 'var', and if not, why.
+     * <p>
+     * No refactored text is built, so counting the declarations of a tree that could use
+     * 'var' costs a fraction of the memory and time of processing it; the report turns
+     * into the edits {@link #computeEdits(String, String)} would return with
+     * {@link CandidateReport#toEditScript()}. Engines other than the syntactic one only
+     * report the declarations they replace. The result cache and the processing listener
+     * are not used for analyses.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The candidates of the file; empty if the Java version does not support 'var'
+     */
+    public CandidateReport analyze(String fileContent, String javaVersion) {
+        return analyzeRange(fileContent, javaVersion, 0, fileContent.length());
+    }
+
+    /**
+     * Analyze a UTF-8 encoded Java file without rewriting it, and without decoding it
+     * where possible, e.g. an entry of an archive read into a byte array. Sources are
+     * decoded as by {@link #computeEdits(ByteBuffer, String)}.
+     *
+     * @param utf8Content The content of a Java file, between the position and the limit of
+     *                    the buffer; the position is not changed
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The candidates of the file, with offsets in bytes from the position of the buffer
+     * @throws UncheckedIOException If the content needs decoding and is not valid UTF-8
+     * @see #analyze(String, String)
+     */
+    public CandidateReport analyze(ByteBuffer utf8Content, String javaVersion) {
+        Utf8Text text = new Utf8Text(utf8Content);
+        if (!isVarSupported(javaVersion)) {
+            return new CandidateReport();
+        }
+        // Analyses do not use the result cache, so only the engines matter
+        if (fallbackEngine == null && engine instanceof JavaTypeReplacer && text.isFaithful()) {
+            CandidateReport report = new CandidateReport();
+            analyzeInto(text, 0, text.length(), null, report);
+            return report;
+        }
+        String decoded = decode(text);
+        return Utf8Text.toByteOffsets(analyze(decoded, javaVersion), decoded);
+    }
+
+    /**
+     * Process only the declarations whose type starts in a range of a file, e.g. the
+     * selection of an editor code action.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param startOffset Start offset of the range (inclusive)
+     * @param endOffset End offset of the range (exclusive)
+     * @return The file content with the declarations in the range refactored
+     * @throws IndexOutOfBoundsException If the range is not within the content
+     * @see #analyzeRange(String, String, int, int, ScopeIndex)
+     */
+    public String processRange(String fileContent, String javaVersion, int startOffset, int endOffset) {
+        return processRange(fileContent, javaVersion, startOffset, endOffset, null);
+    }
+
+    /**
+     * Process only the declarations whose type starts in a range of a file, reusing
+     * the scope index of the content.
+     *
+     * @param scopes The scope index of {@code fileContent}, or null to build it
+     * @see #analyzeRange(String, String, int, int, ScopeIndex)
+     */
+    public String processRange(String fileContent, String javaVersion, int startOffset, int endOffset,
+                               ScopeIndex scopes) {
+        return analyzeRange(fileContent, javaVersion, startOffset, endOffset, scopes)
+            .toEditScript().applyTo(fileContent);
+    }
+
+    /**
+     * Analyze the declarations whose type starts in a range of a file without rewriting it.
+     *
+     * @see #analyzeRange(String, String, int, int, ScopeIndex)
+     */
+    public CandidateReport analyzeRange(String fileContent, String javaVersion, int startOffset, int endOffset) {
+        return analyzeRange(fileContent, javaVersion, startOffset, endOffset, null);
+    }
+
+    /**
+     * Analyze the declarations whose type starts in a range of a file without rewriting it.
+     * <p>
+     * With the syntactic engine only the statements around the range are scanned. The
+     * scope index, one structural pass over the file, tells where to start scanning and
+     * whether a declaration is local; an editor that keeps the index of the current
+     * document version passes it in, so a request costs in proportion to the range
+     * rather than to the file. Other engines analyze the whole file, and the report
+     * then only holds the declarations they replace.
+     * <p>
+     * The result cache and the processing listener are not used for ranges.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @param startOffset Start offset of the range (inclusive)
+     * @param endOffset End offset of the range (exclusive)
+     * @param scopes The scope index of {@code fileContent}, or null to build it
+     * @return The candidates in the range
+     * @throws IndexOutOfBoundsException If the range is not within the content
+     */
+    public CandidateReport analyzeRange(String fileContent, String javaVersion, int startOffset, int endOffset,
+                                        ScopeIndex scopes) {
+        Objects.checkFromToIndex(startOffset, endOffset, fileContent.length());
+        CandidateReport report = new CandidateReport();
+        if (!isVarSupported(javaVersion)) {
+            return report;
+        }
+        if (!(engine instanceof JavaTypeReplacer)) {
+            EditScript edits = findReplacements(fileContent, null, null);
+            for (int i = 0; i < edits.size(); i++) {
+                int offset = edits.offset(i);
+                if (offset >= startOffset && offset < endOffset) {
+                    report.add(offset, offset + edits.length(i), offset + edits.length(i), null);
+                }
+            }
+            return report;
+        }
+
+        analyzeInto(fileContent, startOffset, endOffset, scopes, report);
+        return report;
+    }
+
+    /**
+     * Open a session that keeps the analysis of a document up to date while it is edited.
+     *
+     * @param fileContent The content of a Java file
+     * @param javaVersion The Java version of the source code (e.g., "11")
+     * @return The session, holding the analysis of {@code fileContent}
+     * @throws UnsupportedOperationException If the engine of this processor cannot
+     *                                       analyze incrementally
+     * @see IncrementalSession
+     */
+    public IncrementalSession openSession(String fileContent, String javaVersion) {
+        if (!engine.getCapabilities().contains(RefactoringEngine.Capability.INCREMENTAL)
+                || !(engine instanceof JavaTypeReplacer)) {
+            throw new UnsupportedOperationException(
+                "Engine '" + engine.getName() + "' does not support incremental analysis");
+        }
+        return new IncrementalSession(this, fileContent, isVarSupported(javaVersion));
+    }
+
+    /**
+     * Add the candidates whose type starts in {@code [start, end)} to a report, using the
+     * syntactic engine and letting the fallback engine, if any, decide the undecided ones.
+     *
+     * @param scopes The scope index of {@code fileContent}, or null to build it when needed
+     */
+    void analyzeInto(CharSequence fileContent, int start, int end, ScopeIndex scopes, CandidateReport report) {
+        ((JavaTypeReplacer) engine).analyze(fileContent, eligibilityChecker, start, end,
+            scopes, report, fallbackEngine != null);
+        if (fallbackEngine != null && report.hasUndecided()) {
+            FallbackDecisions decisions = new FallbackDecisions(report);
+            fallbackEngine.findReplacements(fileContent.toString(), decisions, decisions, null);
+        }
+    }
+
+    /**
+     * Hand the statistics of a file to the listener, if any, and to the flight recorder.
+     */
+    private static void report(FileStats stats, ProcessingListener listener, FileProcessedEvent event) {
+        if (listener != null) {
+            listener.fileProcessed(stats);
+        }
+        if (event.shouldCommit()) {
+            event.set(stats);
+            event.commit();
+        }
+    }
+
+    private EditScript computeEdits(String fileContent, String javaVersion, FileStats stats,
+                                    Interruption interruption) {
         // Check if Java version supports 'var'
         if (!isVarSupported(javaVersion)) {
-            return fileContent;
+            return EditScript.EMPTY;
         }
+        if (resultCache == null) {
+            return findReplacements(fileContent, stats, interruption);
+        }
+
+        CacheKey key = CacheKey.of(fileContent, options.fingerprint(), javaVersion, engineVersion);
+        CachedEdits cached = resultCache.get(key);
+        if (cached != null) {
+            if (stats != null) {
+                stats.markCached();
+            }
+            return toEditScript(cached);
+        }
+        EditScript edits = findReplacements(fileContent, stats, interruption);
+        if (interruption != null && interruption.status() != ProcessingResult.Status.COMPLETED) {
+            // Partial edits must not be served for a later, uninterrupted request
+            return edits;
+        }
+        try {
+            resultCache.put(key, toCachedEdits(edits));
+        } catch (IOException e) {
+            // The cache is only an optimization: the file is analyzed again next time
+        }
+        return edits;
+    }
 
-        // The actual implementation will parse the Java file and
-        // apply var replacements using the JavaTypeReplacer
+    private EditScript findReplacements(String fileContent, FileStats stats, CancellationToken cancellation) {
+        if (stats == null && cancellation == null && !(engine instanceof JavaTypeReplacer)) {
+            EligibilityPredicate predicate = eligibilityChecker::isEligibleForVarReplacement;
+            if (fallbackEngine == null) {
+                return engine.findReplacements(fileContent, predicate);
+            }
 
-        return typeReplacer.replaceExplicitTypes(
-            fileContent,
-            eligibilityChecker::isEligibleForVarReplacement
-        );
+            OffsetList undecided = new OffsetList();
+            EditScript edits = engine.findReplacements(fileContent, predicate, null, undecided);
+            if (undecided.size == 0) {
+                return edits;
+            }
+            return EditScript.merge(edits,
+                fallbackEngine.findReplacements(fileContent, predicate, undecided::contains, null));
+        }
+
+        EligibilityPredicate predicate = stats == null
+            ? eligibilityChecker::isEligibleForVarReplacement
+            : countingPredicate(stats);
+        OffsetList undecided = fallbackEngine == null ? null : new OffsetList();
+        EditScript edits;
+        if (engine instanceof JavaTypeReplacer) {
+            // Decides by type IDs, with no string work
+            edits = ((JavaTypeReplacer) engine).findReplacements(
+                fileContent, eligibilityChecker, null, undecided, stats, cancellation);
+        } else {
+            // Other engines only see the token through the scope, between declarations
+            IntPredicate scope = cancellation == null ? null : offset -> !cancellation.isCancelled();
+            long start = stats == null ? 0 : System.nanoTime();
+            edits = engine.findReplacements(fileContent, predicate, scope, undecided);
+            if (stats != null) {
+                stats.addNanos(FileStats.Phase.SCAN, System.nanoTime() - start);
+            }
+        }
+        if (undecided == null || undecided.size == 0
+                || cancellation != null && cancellation.isCancelled()) {
+            return edits;
+        }
+
+        IntPredicate scope = cancellation == null
+            ? undecided::contains
+            : offset -> undecided.contains(offset) && !cancellation.isCancelled();
+        if (stats == null) {
+            return EditScript.merge(edits, fallbackEngine.findReplacements(fileContent, predicate, scope, null));
+        }
+        stats.addUndecided(undecided.size);
+        long start = System.nanoTime();
+        EditScript resolved = fallbackEngine.findReplacements(fileContent, predicate, scope, null);
+        stats.addNanos(FileStats.Phase.INFERENCE, System.nanoTime() - start);
+        return EditScript.merge(edits, resolved);
+    }
+
+    /**
+     * The eligibility check, recording each decision in {@code stats}.
+     */
+    private EligibilityPredicate countingPredicate(FileStats stats) {
+        return (declarationType, initializerType, isLocal, isLoopVariable) -> {
+            int features = VarEligibilityChecker.features(declarationType, initializerType, isLocal, isLoopVariable);
+            VarEligibilityChecker.RejectionReason reason = eligibilityChecker.rejectionReason(features);
+            if (reason == null) {
+                stats.accept();
+                return true;
+            }
+            stats.reject(reason);
+            return false;
+        };
+    }
+
+    /**
+     * Records the decisions of a fallback engine on the undecided candidates of a report.
+     * Engines test the scope of a declaration right before deciding it, so the last scope
+     * test tells which candidate a decision belongs to.
+     */
+    private final class FallbackDecisions implements IntPredicate, EligibilityPredicate {
+        private final CandidateReport report;
+        private int current = -1;
+
+        FallbackDecisions(CandidateReport report) {
+            this.report = report;
+        }
+
+        @Override
+        public boolean test(int typeStart) {
+            current = report.indexOf(typeStart);
+            return current >= 0 && report.isUndecided(current);
+        }
+
+        @Override
+        public boolean test(String declarationType, String initializerType, boolean isLocal, boolean isLoopVariable) {
+            int features = VarEligibilityChecker.features(declarationType, initializerType, isLocal, isLoopVariable);
+            VarEligibilityChecker.RejectionReason reason = eligibilityChecker.rejectionReason(features);
+            report.decide(current, reason);
+            return reason == null;
+        }
+    }
+
+    /**
+     * The deadline and token of one file. Remembers why it first reported cancellation,
+     * so the result can tell a timeout from a cancelled request.
+     */
+    private static final class Interruption implements CancellationToken {
+        private final boolean hasDeadline;
+        private final long deadline;
+        private final CancellationToken cancellation;
+        private ProcessingResult.Status status = ProcessingResult.Status.COMPLETED;
+
+        Interruption(Duration timeout, CancellationToken cancellation) {
+            this.hasDeadline = timeout != null;
+            this.deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (status != ProcessingResult.Status.COMPLETED) {
+                return true;
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                status = ProcessingResult.Status.CANCELLED;
+            } else if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                status = ProcessingResult.Status.TIMED_OUT;
+            }
+            return status != ProcessingResult.Status.COMPLETED;
+        }
+
+        ProcessingResult.Status status() {
+            return status;
+        }
+    }
+
+    /**
+     * Counts the bytes read from a channel, for the statistics of a streamed file.
+     */
+    private static final class ByteCounter implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private long count;
+
+        ByteCounter(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            int read = channel.read(destination);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Type offsets of the declarations an engine left undecided, in ascending order.
+     */
+    private static final class OffsetList implements IntConsumer {
+        private int[] offsets = new int[8];
+        private int size;
+
+        @Override
+        public void accept(int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+
+        boolean contains(int offset) {
+            return Arrays.binarySearch(offsets, 0, size, offset) >= 0;
+        }
+    }
+
+    private static EditScript toEditScript(CachedEdits cached) {
+        if (cached.size() == 0) {
+            return EditScript.EMPTY;
+        }
+        EditScript edits = new EditScript();
+        for (int i = 0; i < cached.size(); i++) {
+            edits.add(cached.offset(i), cached.length(i));
+        }
+        return edits;
+    }
+
+    private static CachedEdits toCachedEdits(EditScript edits) {
+        if (edits.isEmpty()) {
+            return CachedEdits.NONE;
+        }
+        int[] offsets = new int[edits.size()];
+        int[] lengths = new int[edits.size()];
+        for (int i = 0; i < edits.size(); i++) {
+            offsets[i] = edits.offset(i);
+            lengths[i] = edits.length(i);
+        }
+        return new CachedEdits(offsets, lengths);
     }
 
     /**
@@ -61,6 +920,218 @@ public class VarRefactoringProcessor {
         return results;
     }
 
+    /**
+     * Process multiple Java files for var refactoring in parallel, on a dedicated
+     * fork/join pool that is shut down afterwards.
+     *
+     * @param filesContent List of Java file contents
+     * @param javaVersion The Java version of the source code
+     * @param parallelism Number of worker threads
+     * @return One result per file, in the order of {@code filesContent}
+     */
+    public List<FileResult> processFilesInParallel(List<String> filesContent, String javaVersion, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return processFilesInParallel(filesContent, javaVersion, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Process multiple Java files for var refactoring in parallel on the given pool.
+     * <p>
+     * Files are handed out largest first, so a big file picked up late cannot
+     * stretch the tail of the batch. Each worker pulls the next file as soon as it
+     * is done with the previous one. A file that fails is reported in its result
+     * and does not affect the others.
+     *
+     * @param filesContent List of Java file contents
+     * @param javaVersion The Java version of the source code
+     * @param pool Pool to run on; its parallelism bounds the number of workers
+     * @return One result per file, in the order of {@code filesContent}
+     */
+    public List<FileResult> processFilesInParallel(List<String> filesContent, String javaVersion, ForkJoinPool pool) {
+        int count = filesContent.size();
+        FileResult[] results = new FileResult[count];
+        if (count == 0) {
+            return Arrays.asList(results);
+        }
+
+        int[] schedule = largestFirst(filesContent);
+        AtomicInteger cursor = new AtomicInteger();
+        int workers = Math.min(pool.getParallelism(), count);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            tasks.add(pool.submit(() -> drain(filesContent, javaVersion, schedule, cursor, results)));
+        }
+        // Joining also publishes the results written by the workers
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Process a stream of Java files for var refactoring with bounded memory.
+     * The stream is consumed lazily and closed when the batch is done.
+     *
+     * @see #processFiles(Iterator, String, int, BiConsumer)
+     */
+    public <F extends SourceFile> void processFiles(Stream<? extends F> files, String javaVersion, int parallelism,
+                                                    BiConsumer<? super F, ? super FileResult> sink) throws InterruptedException {
+        try (files) {
+            processFiles(files.iterator(), javaVersion, parallelism, sink);
+        }
+    }
+
+    /**
+     * Process Java files for var refactoring as they are pulled from an iterator,
+     * handing each result to {@code sink} as soon as the file is done.
+     * <p>
+     * At most {@code 2 * parallelism} files are read but not yet handed to the sink,
+     * so peak memory depends on the parallelism and not on the number of files: the
+     * iterator is not advanced while that many files are in flight. File contents
+     * are read by the worker threads.
+     * <p>
+     * The sink is called from the worker threads, possibly concurrently, in completion
+     * order. A file that cannot be read or processed is reported to the sink as a
+     * failed {@link FileResult}. If the sink itself throws, or processing a file throws
+     * an {@link Error} other than a {@link StackOverflowError}, e.g. an
+     * {@link OutOfMemoryError}, no further files are started and the exception is
+     * rethrown once the files in flight are done.
+     *
+     * @param files Handles of the files to process
+     * @param javaVersion The Java version of the source code
+     * @param parallelism Number of worker threads
+     * @param sink Receives every file together with its result, as the handle the
+     *             iterator returned, e.g. to write the file back through it
+     * @param <F> Type of the file handles
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public <F extends SourceFile> void processFiles(Iterator<? extends F> files, String javaVersion, int parallelism,
+                                                    BiConsumer<? super F, ? super FileResult> sink) throws InterruptedException {
+        streamFiles(files, parallelism, file -> processSourceFile(file, javaVersion), sink);
+    }
+
+    /**
+     * Analyze Java files as they are pulled from an iterator, handing each result to
+     * {@code sink} as soon as the file is done. The result of a file holds its
+     * {@link FileResult#getReport() candidate report} and no content, so a report over a
+     * large tree never builds refactored text.
+     * <p>
+     * Files are read, scheduled and handed to the sink as by
+     * {@link #processFiles(Iterator, String, int, BiConsumer)}.
+     *
+     * @param files Handles of the files to analyze
+     * @param javaVersion The Java version of the source code
+     * @param parallelism Number of worker threads
+     * @param sink Receives every file together with its result
+     * @param <F> Type of the file handles
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     * @see #analyze(String, String)
+     */
+    public <F extends SourceFile> void analyzeFiles(Iterator<? extends F> files, String javaVersion, int parallelism,
+                                                    BiConsumer<? super F, ? super FileResult> sink) throws InterruptedException {
+        streamFiles(files, parallelism, file -> analyzeSourceFile(file, javaVersion), sink);
+    }
+
+    private <F extends SourceFile> void streamFiles(Iterator<? extends F> files, int parallelism,
+                                                    Function<SourceFile, FileResult> work,
+                                                    BiConsumer<? super F, ? super FileResult> sink) throws InterruptedException {
+        int window = parallelism * FILES_IN_FLIGHT_PER_WORKER;
+        Semaphore permits = new Semaphore(window);
+        // The first exception of the sink, or error of the work, which the pool would
+        // otherwise hand to its uncaught exception handler and so lose the file
+        AtomicReference<Throwable> taskFailure = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (taskFailure.get() == null && files.hasNext()) {
+                // Backpressure: wait for a file to complete before pulling another one
+                permits.acquire();
+                F file = files.next();
+                pool.execute(() -> {
+                    try {
+                        sink.accept(file, work.apply(file));
+                    } catch (RuntimeException | Error e) {
+                        taskFailure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // Wait for the files still in flight
+            permits.acquire(window);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Throwable failure = taskFailure.get();
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private FileResult processSourceFile(SourceFile file, String javaVersion) {
+        try {
+            ByteBuffer bytes = file.readUtf8();
+            if (bytes != null) {
+                return FileResult.success(bytes, processFile(file.getName(), bytes, javaVersion));
+            }
+            String content = file.readContent();
+            return FileResult.success(content, processFile(file.getName(), content, javaVersion));
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            return FileResult.failure(e);
+        }
+    }
+
+    private FileResult analyzeSourceFile(SourceFile file, String javaVersion) {
+        try {
+            return FileResult.analyzed(analyze(file.readContent(), javaVersion));
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            return FileResult.failure(e);
+        }
+    }
+
+    private void drain(List<String> filesContent, String javaVersion, int[] schedule,
+                       AtomicInteger cursor, FileResult[] results) {
+        int next;
+        while ((next = cursor.getAndIncrement()) < schedule.length) {
+            int index = schedule[next];
+            try {
+                String content = filesContent.get(index);
+                results[index] = FileResult.success(content, processFile(content, javaVersion));
+            } catch (RuntimeException | StackOverflowError e) {
+                results[index] = FileResult.failure(e);
+            }
+        }
+    }
+
+    /**
+     * Order file indexes by descending content length; equal lengths keep list order.
+     */
+    private static int[] largestFirst(List<String> filesContent) {
+        int count = filesContent.size();
+        // Sort (length, reversed index) keys ascending and read them back to front
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            String content = filesContent.get(i);
+            int length = content == null ? 0 : content.length();
+            keys[i] = ((long) length << 32) | (count - 1 - i);
+        }
+        Arrays.sort(keys);
+
+        int[] schedule = new int[count];
+        for (int i = 0; i < count; i++) {
+            schedule[i] = count - 1 - (int) keys[count - 1 - i];
+        }
+        return schedule;
+    }
+
     /**
      * Determine if the given Java version supports the 'var' keyword.
      *
@@ -0,0 +1,106 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CandidateReportTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @Test
+    void shouldAnalyzeRangeWithScopeIndexOfDocument() {
+        // Given
+        String code = "class Test {\n"
+            + "    String field = \"x\";\n"
+            + "    void method() { for (int i = 0; i < 3; i++) { Object text = \"t\"; String name = \"n\"; } }\n"
+            + "    String last = \"y\";\n"
+            + "}";
+        ScopeIndex scopes = ScopeIndex.build(code);
+        int start = code.indexOf("String field");
+        int end = code.indexOf("String last");
+
+        // When
+        CandidateReport report = processor.analyzeRange(code, "11", start, end, scopes);
+
+        // Then
+        assertThat(report.size()).isEqualTo(4);
+        assertThat(report.rejectionReason(0)).isEqualTo(VarEligibilityChecker.RejectionReason.NOT_LOCAL);
+        assertThat(report.isAccepted(1)).isTrue();
+        assertThat(code.substring(report.typeStart(1), report.typeEnd(1))).isEqualTo("int");
+        assertThat(report.rejectionReason(2)).isEqualTo(VarEligibilityChecker.RejectionReason.TYPES_DIFFER);
+        assertThat(report.isAccepted(3)).isTrue();
+        assertThat(report.acceptedCount()).isEqualTo(2);
+        assertThat(report.toEditScript().applyTo(code))
+            .isEqualTo(processor.processRange(code, "11", start, end, scopes));
+    }
+
+    @Test
+    void shouldRejectRangeOutsideContent() {
+        // Given
+        String code = "class Test { }";
+
+        // When / Then
+        assertThatThrownBy(() -> processor.analyzeRange(code, "11", 5, code.length() + 1))
+            .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void shouldCountDecisionsAndEditAcceptedCandidates() {
+        // Given
+        CandidateReport report = new CandidateReport();
+
+        // When
+        report.add(10, 16, 30, null);
+        report.add(40, 46, 60, VarEligibilityChecker.RejectionReason.TYPES_DIFFER);
+        report.addUndecided(70, 76, 90);
+        report.add(100, 104, 120, null);
+
+        // Then
+        assertThat(report.size()).isEqualTo(4);
+        assertThat(report.acceptedCount()).isEqualTo(2);
+        assertThat(report.rejectedCount(VarEligibilityChecker.RejectionReason.TYPES_DIFFER)).isEqualTo(1);
+        assertThat(report.isUndecided(2)).isTrue();
+        assertThat(report.rejectionReason(2)).isNull();
+        assertThat(report.hasUndecided()).isTrue();
+        assertThat(report.indexOf(70)).isEqualTo(2);
+        assertThat(report.indexOf(71)).isEqualTo(-1);
+        EditScript edits = report.toEditScript();
+        assertThat(edits.size()).isEqualTo(2);
+        assertThat(edits.offset(1)).isEqualTo(100);
+        assertThat(edits.length(1)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldSpliceRegionAndShiftLaterCandidates() {
+        // Given: the candidate at 40 is edited and grows by three characters
+        CandidateReport report = new CandidateReport();
+        report.add(10, 16, 30, null);
+        report.add(40, 46, 60, null);
+        report.add(70, 76, 90, VarEligibilityChecker.RejectionReason.NOT_LOCAL);
+        CandidateReport region = new CandidateReport();
+        region.add(40, 46, 63, VarEligibilityChecker.RejectionReason.TYPES_DIFFER);
+        region.add(50, 56, 63, null);
+
+        // When
+        report.splice(40, 60, region, 45, 3);
+
+        // Then
+        assertThat(report.size()).isEqualTo(4);
+        assertThat(report.typeStart(0)).isEqualTo(10);
+        assertThat(report.rejectionReason(1)).isEqualTo(VarEligibilityChecker.RejectionReason.TYPES_DIFFER);
+        assertThat(report.typeStart(2)).isEqualTo(50);
+        assertThat(report.typeStart(3)).isEqualTo(73);
+        assertThat(report.typeEnd(3)).isEqualTo(79);
+        assertThat(report.statementEnd(3)).isEqualTo(93);
+        assertThat(report.rejectionReason(3)).isEqualTo(VarEligibilityChecker.RejectionReason.NOT_LOCAL);
+    }
+}
@@ -0,0 +1,160 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeclarationScannerTest {
+
+    private DeclarationScanner scanner;
+
+    @BeforeEach
+    void setUp() {
+        scanner = new DeclarationScanner();
+    }
+
+    @Test
+    void shouldFindTypeNameAndInitializer() {
+        // Given
+        String code = "class Test { void method() { final String text = \"hello\" ; } }";
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(1);
+        assertThat(type(code, declarations, 0)).isEqualTo("String");
+        assertThat(code.substring(declarations.nameStart(0), declarations.nameEnd(0))).isEqualTo("text");
+        assertThat(initializer(code, declarations, 0)).isEqualTo("\"hello\"");
+        assertThat(declarations.statementEnd(0)).isEqualTo(code.indexOf(';') + 1);
+    }
+
+    @Test
+    void shouldReadGenericQualifiedAndArrayTypes() {
+        // Given
+        String code = "class Test { void method() {\n"
+                + "  Map<String, List<Integer>> map = new HashMap<>();\n"
+                + "  java.util.Map.Entry<String, ?> entry = null;\n"
+                + "  int[][] grid = new int[2][3];\n"
+                + "} }";
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(3);
+        assertThat(type(code, declarations, 0)).isEqualTo("Map<String, List<Integer>>");
+        assertThat(type(code, declarations, 1)).isEqualTo("java.util.Map.Entry<String, ?>");
+        assertThat(type(code, declarations, 2)).isEqualTo("int[][]");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "class T { void m() { // String a = \"x\";\n } }",
+        "class T { void m() { /* String a = \"x\"; */ } }",
+        "class T { void m() { log(\"String a = b;\"); } }",
+        "class T { void m() { log(\"\"\"\n String a = b;\n \"\"\"); } }",
+        "class T { void m() { foo('\"'); bar(\" String a = b; \"); } }",
+        "class T { void m() { int[] values = {1, 2}; } }",
+        "class T { void m() { int a = 1, b = 2; } }",
+        "class T { void m() { return x == y; } }",
+        "class T { void m() { if (a < b) x = 1; } }",
+        "class T { void m() { String s; s = \"x\"; } }"
+    })
+    void shouldIgnoreTextThatIsNotASingleDeclaration(String code) {
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldSkipAnnotationsAndModifiers() {
+        // Given
+        String code = "class Test { @SuppressWarnings(value = \"x\") private static final List<String> NAMES = List.of(); }";
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(1);
+        assertThat(type(code, declarations, 0)).isEqualTo("List<String>");
+    }
+
+    @Test
+    void shouldSpanLinesAndReportNestedDeclarations() {
+        // Given
+        String code = "class Test { void method() {\n"
+                + "  Runnable task = new Runnable() {\n"
+                + "    public void run() { String inner = \"a;b\"; }\n"
+                + "  };\n"
+                + "} }";
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(2);
+        assertThat(type(code, declarations, 0)).isEqualTo("Runnable");
+        assertThat(initializer(code, declarations, 0)).startsWith("new Runnable() {").endsWith("}");
+        assertThat(type(code, declarations, 1)).isEqualTo("String");
+        assertThat(initializer(code, declarations, 1)).isEqualTo("\"a;b\"");
+    }
+
+    @Test
+    void shouldFlagForLoopInitializers() {
+        // Given
+        String code = "class Test { void method() { for (int i = 0; i < 10; i++) { long total = 0L; } } }";
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(2);
+        assertThat(declarations.isLoopVariable(0)).isTrue();
+        assertThat(declarations.isLoopVariable(1)).isFalse();
+    }
+
+    @Test
+    void shouldScanPathologicalLinesInLinearTime() {
+        // Given a single line with a huge initializer and no terminating semicolon
+        StringBuilder code = new StringBuilder("class Test { void method() { List<String> names = List.of(");
+        for (int i = 0; i < 200_000; i++) {
+            code.append("\"n").append(i).append("\", ");
+        }
+        code.append("\"last\")");
+
+        // When
+        Declarations declarations = scanner.scan(code);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldStopScanningAfterStatementsStartingBeforeLimit() {
+        // Given
+        String code = "class Test { void method() { String a = run(() -> { int inner = 1; }); String b = \"b\"; } }";
+        int limit = code.indexOf("String a") + 1;
+
+        // When
+        Declarations declarations = scanner.scan(code, 0, code.length(), limit, null);
+
+        // Then
+        assertThat(declarations.size()).isEqualTo(1);
+        assertThat(type(code, declarations, 0)).isEqualTo("String");
+        assertThat(declarations.statementEnd(0)).isEqualTo(code.indexOf(" String b"));
+    }
+
+    private static String type(String code, Declarations declarations, int index) {
+        return code.substring(declarations.typeStart(index), declarations.typeEnd(index));
+    }
+
+    private static String initializer(String code, Declarations declarations, int index) {
+        return code.substring(declarations.initializerStart(index), declarations.initializerEnd(index));
+    }
+}
@@ -0,0 +1,104 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EditScriptTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @Test
+    void shouldComputeEditsForReplacedTypesOnly() {
+        // Given
+        String code = "class Test { String field = \"x\"; void method() { final String text = \"hello\"; long count = 1L; } }";
+        String javaVersion = "11";
+
+        // When
+        EditScript edits = processor.computeEdits(code, javaVersion);
+
+        // Then
+        assertThat(edits.size()).isEqualTo(2);
+        assertThat(edits.offset(0)).isEqualTo(code.indexOf("String text"));
+        assertThat(edits.length(0)).isEqualTo("String".length());
+        assertThat(edits.offset(1)).isEqualTo(code.indexOf("long"));
+        assertThat(edits.length(1)).isEqualTo("long".length());
+        assertThat(edits.replacement(1)).isEqualTo("var");
+        assertThat(edits.applyTo(code)).isEqualTo(processor.processFile(code, javaVersion));
+    }
+
+    @Test
+    void shouldReturnEmptyEditScriptWhenNothingIsReplaced() {
+        // Given
+        String code = "class Test { String text = \"hello\"; void method() { String other; } }";
+
+        // When
+        EditScript edits = processor.computeEdits(code, "11");
+        EditScript unsupported = processor.computeEdits("class Test { void method() { String text = \"hello\"; } }", "8");
+
+        // Then
+        assertThat(edits).isSameAs(EditScript.EMPTY);
+        assertThat(unsupported).isSameAs(EditScript.EMPTY);
+        assertThat(edits.applyTo(code)).isSameAs(code);
+    }
+
+    @Test
+    void shouldApplyEditsToStringsWritersAndBytes() throws IOException {
+        // Given
+        String source = "String a = \"a\"; Object b = \"b\";";
+        EditScript edits = new EditScript();
+        edits.add(0, "String".length());
+        edits.add(source.indexOf("Object"), "Object".length());
+        byte[] bytes = ("//" + source).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).position(2);
+        StringWriter writer = new StringWriter();
+        StringBuilder builder = new StringBuilder();
+
+        // When
+        String result = edits.applyTo(source);
+        edits.writeTo(CharBuffer.wrap(source), writer);
+        edits.writeTo(source, builder);
+        byte[] edited = edits.applyTo(buffer);
+
+        // Then
+        assertThat(result).isEqualTo("var a = \"a\"; var b = \"b\";");
+        assertThat(writer.toString()).isEqualTo(result);
+        assertThat(builder.toString()).isEqualTo(result);
+        assertThat(new String(edited, StandardCharsets.UTF_8)).isEqualTo(result);
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldMergeEditsInOffsetOrder() {
+        // Given
+        EditScript first = new EditScript();
+        first.add(0, 6);
+        first.add(40, 4);
+        EditScript second = new EditScript();
+        second.add(20, 7);
+
+        // When
+        EditScript merged = EditScript.merge(first, second);
+
+        // Then
+        assertThat(merged.size()).isEqualTo(3);
+        assertThat(merged.offset(1)).isEqualTo(20);
+        assertThat(merged.length(1)).isEqualTo(7);
+        assertThat(merged.offset(2)).isEqualTo(40);
+        assertThat(EditScript.merge(first, EditScript.EMPTY)).isSameAs(first);
+        assertThat(EditScript.merge(EditScript.EMPTY, second)).isSameAs(second);
+    }
+}
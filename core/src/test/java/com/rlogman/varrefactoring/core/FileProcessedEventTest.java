@@ -0,0 +1,70 @@
+package com.rlogman.varrefactoring.core;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileProcessedEventTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @Test
+    void shouldRecordFlightRecorderEventsWhenEnabled(@TempDir Path directory) throws Exception {
+        // Given
+        String code = "class Test { String field = \"x\"; void method() { String text = \"hello\"; } }";
+        Path dump = directory.resolve("refactoring.jfr");
+        List<RecordedEvent> events;
+
+        // When
+        try (Recording recording = new Recording()) {
+            recording.enable("com.rlogman.varrefactoring.FileProcessed");
+            recording.enable("com.rlogman.varrefactoring.Phase");
+            recording.enable("com.rlogman.varrefactoring.SlowDeclaration").withThreshold(Duration.ZERO);
+            recording.start();
+            processor.processFiles(List.of(SourceFile.of("Test.java", code)).iterator(), "11", 1, (file, result) -> { });
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+
+        // Then
+        List<RecordedEvent> files = eventsNamed(events, "com.rlogman.varrefactoring.FileProcessed");
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getString("path")).isEqualTo("Test.java");
+        assertThat(files.get(0).getLong("size")).isEqualTo(code.length());
+        assertThat(files.get(0).getLong("bytes")).isEqualTo(-1);
+        assertThat(files.get(0).getInt("candidates")).isEqualTo(2);
+        assertThat(files.get(0).getInt("accepted")).isEqualTo(1);
+        List<RecordedEvent> phases = eventsNamed(events, "com.rlogman.varrefactoring.Phase");
+        assertThat(phases.stream().map(event -> event.getString("phase")).distinct().count()).isEqualTo(3);
+        List<RecordedEvent> declarations = eventsNamed(events, "com.rlogman.varrefactoring.SlowDeclaration");
+        assertThat(declarations).hasSize(2);
+        assertThat(declarations.get(1).getString("declarationType")).isEqualTo("String");
+    }
+
+    private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+}
@@ -0,0 +1,96 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileStatsTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @Test
+    void shouldReportStatisticsToListener() {
+        // Given
+        String code = "class Test { String field = \"x\"; void method() { "
+            + "String text = \"hello\"; int count = 42; Object object = \"text\"; String other = compute(); } }";
+        RefactoringOptions options = new RefactoringOptions();
+        options.setAllowPrimitiveTypes(false);
+        VarRefactoringProcessor listening = new VarRefactoringProcessor(options);
+        List<FileStats> reported = new ArrayList<>();
+        listening.setProcessingListener(reported::add);
+
+        // When
+        String result = listening.processFile(code, "17");
+
+        // Then
+        assertThat(result).contains("var text");
+        assertThat(reported).hasSize(1);
+        FileStats stats = reported.get(0);
+        assertThat(stats.getCharactersScanned()).isEqualTo(code.length());
+        assertThat(stats.getCandidates()).isEqualTo(5);
+        assertThat(stats.getAccepted()).isEqualTo(1);
+        assertThat(stats.getRejected(VarEligibilityChecker.RejectionReason.NOT_LOCAL)).isEqualTo(1);
+        assertThat(stats.getRejected(VarEligibilityChecker.RejectionReason.PRIMITIVE)).isEqualTo(1);
+        assertThat(stats.getRejected(VarEligibilityChecker.RejectionReason.TYPES_DIFFER)).isEqualTo(2);
+        assertThat(stats.getNanos(FileStats.Phase.SCAN)).isPositive();
+        assertThat(stats.getTotalNanos()).isGreaterThanOrEqualTo(stats.getNanos(FileStats.Phase.SCAN));
+        assertThat(stats.isCached()).isFalse();
+        assertThat(stats.getBytesScanned()).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldReportBytesOfUtf8Content() throws IOException {
+        // Given
+        String code = "class A { void m() { // gr\u00fc\u00dfe \uD83D\uDE00\n String s = \"\u2713\"; } }";
+        byte[] utf8 = code.getBytes(StandardCharsets.UTF_8);
+        List<FileStats> reported = new ArrayList<>();
+        processor.setProcessingListener(reported::add);
+
+        // When
+        processor.processFile(utf8, "11");
+        processor.processStream(Channels.newChannel(new ByteArrayInputStream(utf8)), "11",
+            Channels.newChannel(new ByteArrayOutputStream()));
+
+        // Then
+        assertThat(reported).hasSize(2);
+        for (FileStats stats : reported) {
+            assertThat(stats.getBytesScanned()).isEqualTo(utf8.length);
+            assertThat(stats.getCharactersScanned()).isEqualTo(code.length());
+        }
+    }
+
+    @Test
+    void shouldReportFileNamesOfStreamedFiles() throws Exception {
+        // Given
+        List<SourceFile> files = List.of(
+            SourceFile.of("A.java", "class A { void method() { int value = 42; } }"),
+            SourceFile.of("B.java", "class B { }"));
+        Map<String, FileStats> reported = new ConcurrentHashMap<>();
+        processor.setProcessingListener(stats -> reported.put(stats.getFileName(), stats));
+
+        // When
+        processor.processFiles(files.iterator(), "11", 2, (file, result) -> { });
+
+        // Then
+        assertThat(reported).hasSize(2);
+        assertThat(reported.get("A.java").getAccepted()).isEqualTo(1);
+        assertThat(reported.get("B.java").getCandidates()).isZero();
+    }
+}
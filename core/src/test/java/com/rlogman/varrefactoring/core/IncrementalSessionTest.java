@@ -0,0 +1,137 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalSessionTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @Test
+    void shouldReanalyzeOnlyEditedStatementsInSession() {
+        // Given
+        String code = "class Test {\n"
+            + "    String field = \"x\";\n"
+            + "    void method() {\n"
+            + "        Object text = compute();\n"
+            + "        String name = \"n\";\n"
+            + "    }\n"
+            + "}";
+        IncrementalSession session = processor.openSession(code, "11");
+
+        // When: rename the declared type, then the variable after it
+        int type = code.indexOf("Object");
+        session.applyEdit(type, "Object".length(), "Strin");
+        session.applyEdit(type + "Strin".length(), 0, "g");
+        int name = session.getContent().indexOf("name =");
+        session.applyEdit(name, "name".length(), "renamed");
+
+        // Then
+        String content = session.getContent();
+        assertThat(content).contains("String text = compute();", "String renamed = \"n\";");
+        assertThat(session.fullAnalyses()).isEqualTo(1);
+        CandidateReport fresh = processor.analyzeRange(content, "11", 0, content.length());
+        assertThat(session.getCandidates().size()).isEqualTo(fresh.size());
+        for (int i = 0; i < fresh.size(); i++) {
+            assertThat(session.getCandidates().typeStart(i)).isEqualTo(fresh.typeStart(i));
+            assertThat(session.getCandidates().rejectionReason(i)).isEqualTo(fresh.rejectionReason(i));
+        }
+        assertThat(session.getEdits().applyTo(content)).isEqualTo(processor.processFile(content, "11"));
+    }
+
+    @Test
+    void shouldReanalyzeOnlyEditedStatementsAfterStatementEdit() {
+        // Given
+        String code = "class Test { void method() { String a = \"a\"; } }";
+        IncrementalSession session = processor.openSession(code, "11");
+        int end = code.indexOf(" } }");
+
+        // When
+        session.applyEdit(end, 0, " String b = \"b\";");
+
+        // Then
+        assertThat(session.fullAnalyses()).isEqualTo(1);
+        assertThat(session.getCandidates().acceptedCount()).isEqualTo(2);
+        assertThat(session.getEdits().applyTo(session.getContent()))
+            .isEqualTo("class Test { void method() { var a = \"a\"; var b = \"b\"; } }");
+    }
+
+    @Test
+    void shouldReanalyzeWholeFileAfterBraceEdit() {
+        // Given
+        String code = "class Test { String a = \"a\"; }";
+        IncrementalSession session = processor.openSession(code, "11");
+        int field = code.indexOf("String");
+
+        // When: the field becomes a local variable of an initializer
+        session.applyEdit(field, 0, "{ ");
+        session.applyEdit(session.getContent().indexOf(" }"), 0, " }");
+
+        // Then
+        assertThat(session.fullAnalyses()).isEqualTo(3);
+        assertThat(session.getEdits().applyTo(session.getContent()))
+            .isEqualTo("class Test { { var a = \"a\"; } }");
+    }
+
+    @Test
+    void shouldMatchFreshAnalysisAfterRandomEdits() {
+        // Given
+        String code = "class Test {\n"
+            + "    String field = \"{\";\n"
+            + "    void method(int n) {\n"
+            + "        String text = \"a\"; // }\n"
+            + "        for (int i = 0; i < n; i++) { Object o = new Object(); }\n"
+            + "        Runnable r = () -> { String s = \"s\"; };\n"
+            + "        /* { */ int count = 1;\n"
+            + "    }\n"
+            + "    enum Kind { A, B; void m() { long l = 1L; } }\n"
+            + "}\n";
+        String[] insertions = { "x", " ", ";", "=", "(", ")", "{", "}", "\"", "/*", "*/", "//", "\n", "->",
+            "class ", "new ", "String t = \"t\"; ", "int k = 2;", "Object() { }", "1" };
+        Random random = new Random(42);
+        IncrementalSession session = processor.openSession(code, "11");
+
+        for (int step = 0; step < 400; step++) {
+            // When
+            String content = session.getContent();
+            int offset = random.nextInt(content.length() + 1);
+            int removed = Math.min(random.nextInt(4), content.length() - offset);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            String removedText = content.substring(offset, offset + removed);
+            session.applyEdit(offset, removed, inserted);
+            assertMatchesFreshAnalysis(session);
+            session.applyEdit(offset, inserted.length(), removedText);
+            assertMatchesFreshAnalysis(session);
+        }
+        // Then
+        assertThat(session.fullAnalyses()).isLessThan(800);
+    }
+
+    private void assertMatchesFreshAnalysis(IncrementalSession session) {
+        String content = session.getContent();
+        ScopeIndex fresh = ScopeIndex.build(content);
+        for (int i = 0; i <= content.length(); i++) {
+            assertThat(session.getScopeIndex().innermostBlock(i)).isEqualTo(fresh.innermostBlock(i));
+            assertThat(session.getScopeIndex().isInCodeBody(i)).isEqualTo(fresh.isInCodeBody(i));
+        }
+        CandidateReport expected = processor.analyzeRange(content, "11", 0, content.length());
+        CandidateReport actual = session.getCandidates();
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.typeStart(i)).isEqualTo(expected.typeStart(i));
+            assertThat(actual.typeEnd(i)).isEqualTo(expected.typeEnd(i));
+            assertThat(actual.statementEnd(i)).isEqualTo(expected.statementEnd(i));
+            assertThat(actual.rejectionReason(i)).isEqualTo(expected.rejectionReason(i));
+        }
+    }
+}
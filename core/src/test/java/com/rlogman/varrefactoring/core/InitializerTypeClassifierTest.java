@@ -0,0 +1,213 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class InitializerTypeClassifierTest {
+
+    private InitializerTypeClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        classifier = new InitializerTypeClassifier();
+    }
+
+    @ParameterizedTest
+    @MethodSource("typedInitializers")
+    void shouldInferTypeOfInitializer(String initializer, String expectedType) {
+        // When
+        String type = classifier.classify(initializer, 0, initializer.length());
+
+        // Then
+        assertThat(type).isEqualTo(expectedType);
+    }
+
+    static Stream<Arguments> typedInitializers() {
+        return Stream.of(
+            arguments("42", "int"),
+            arguments("1_000_000", "int"),
+            arguments("0x7F_FF", "int"),
+            arguments("0b1010", "int"),
+            arguments("017", "int"),
+            arguments("-1", "int"),
+            arguments("42L", "long"),
+            arguments("0xFFFF_FFFFl", "long"),
+            arguments("0b1L", "long"),
+            arguments("1.5", "double"),
+            arguments("1e-3", "double"),
+            arguments(".5", "double"),
+            arguments("1.", "double"),
+            arguments("2d", "double"),
+            arguments("0x1.8p3", "double"),
+            arguments("1.5f", "float"),
+            arguments("3F", "float"),
+            arguments("0x1p-2f", "float"),
+            arguments("true", "boolean"),
+            arguments("false", "boolean"),
+            arguments("'a'", "char"),
+            arguments("'\\''", "char"),
+            arguments("\"hello\"", "String"),
+            arguments("\"\"\"\n  text block\n  \"\"\"", "String"),
+            arguments("new Foo()", "Foo"),
+            arguments("new Foo(a, b()) { void x() {} }", "Foo"),
+            arguments("new java.util.ArrayList<>()", "java.util.ArrayList"),
+            arguments("new HashMap<String, List<Integer>>(16)", "HashMap<String,List<Integer>>"),
+            arguments("new int[10]", "int[]"),
+            arguments("new String[] { \"a\", \"b\" }", "String[]"),
+            arguments("new int[2][]", "int[][]"),
+            arguments("(int) value", "int"),
+            arguments("(String) map.get(key)", "String"),
+            arguments("(List<? extends Number>) values", "List<? extends Number>"),
+            arguments("((long) 1)", "long"),
+            arguments("(double) .5", "double"),
+            arguments("(Foo) (bar)", "Foo"),
+            arguments("(boolean) !done", "boolean"),
+            arguments("( 42 )", "int")
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "foo()",
+        "a + b",
+        "\"a\" + b",
+        "new Foo().bar()",
+        "(a) - b",
+        "(String) a + b",
+        "(prefix).trim()",
+        "(values)[0]",
+        "(Foo) :: new",
+        "(a) * b",
+        "(a) == b",
+        "0xZZ",
+        "1.5L",
+        "null",
+        "x -> x",
+        ""
+    })
+    void shouldReportUnknownTypes(String initializer) {
+        // When
+        String type = classifier.classify(initializer, 0, initializer.length());
+
+        // Then
+        assertThat(type).isNull();
+    }
+
+    @Test
+    void shouldClassifyRegionOfLargerBuffer() {
+        // Given
+        String code = "List<String> names = new ArrayList<String>();";
+        int start = code.indexOf("new");
+
+        // When
+        String type = classifier.classify(code, start, code.length() - 1);
+
+        // Then
+        assertThat(type).isEqualTo("ArrayList<String>");
+    }
+
+    @Test
+    void shouldInternCanonicalTypeNames() {
+        // Given
+        String first = "Map<String, Integer> a = new Map<String,Integer>();";
+        String second = "Map< String , /* comment */ Integer > b;";
+
+        // When
+        String declared = classifier.typeName(first, 0, first.indexOf(" a"));
+        String created = classifier.classify(first, first.indexOf("new"), first.length() - 1);
+        String other = classifier.typeName(second, 0, second.indexOf(" b"));
+
+        // Then
+        assertThat(declared).isEqualTo("Map<String,Integer>");
+        assertThat(created).isSameAs(declared);
+        assertThat(other).isSameAs(declared);
+        assertThat(classifier.typeName("int", 0, 3)).isSameAs(classifier.classify("1", 0, 1));
+    }
+
+    @Test
+    void shouldStopInterningWhenTableIsFull() {
+        // Given
+        InitializerTypeClassifier bounded = new InitializerTypeClassifier(1);
+        String code = "Foo Bar";
+        String foo = bounded.typeName(code, 0, 3);
+
+        // When
+        String bar = bounded.typeName(code, 4, 7);
+
+        // Then
+        assertThat(bounded.typeName(code, 0, 3)).isSameAs(foo);
+        assertThat(bounded.typeName(code, 4, 7)).isEqualTo(bar).isNotSameAs(bar);
+        assertThat(bounded.typeId(code, 4, 7)).isEqualTo(TypeSymbolTable.NO_ID);
+        assertThat(bounded.typeName("int", 0, 3)).isSameAs(bounded.classify("1", 0, 1));
+    }
+
+    @Test
+    void shouldCarryFeaturesInTypeIds() {
+        // Given
+        String code = "List<String> a = new ArrayList<>(); int b = (int) 1L; List<String> c;";
+
+        // When
+        int declared = classifier.typeId(code, 0, 12);
+        int created = classifier.classifyId(code, code.indexOf("new"), code.indexOf(';'));
+        int primitive = classifier.classifyId(code, code.indexOf("(int)"), code.indexOf("; List"));
+        int unknown = classifier.classifyId(code, 0, 12);
+
+        // Then
+        assertThat(classifier.typeId(code, code.lastIndexOf("List"), code.lastIndexOf(" c"))).isEqualTo(declared);
+        assertThat(classifier.name(created)).isEqualTo("ArrayList");
+        assertThat(classifier.name(primitive)).isSameAs("int");
+        assertThat(unknown).isEqualTo(InitializerTypeClassifier.UNKNOWN_ID);
+        assertThat(VarEligibilityChecker.features(declared, declared, true, false))
+            .isEqualTo(VarEligibilityChecker.LOCAL | VarEligibilityChecker.TYPES_EQUAL);
+        assertThat(VarEligibilityChecker.features(primitive, created, false, false))
+            .isEqualTo(VarEligibilityChecker.PRIMITIVE);
+    }
+
+    @Test
+    void shouldNotAllocateWhenClassifying() {
+        // Given
+        String[] initializers = {
+            "0x1F_FFL", "new HashMap<String, List<Integer>>()", "(Foo) bar.baz(1, \"q\")", "new int[3][]", "1.5e3f"
+        };
+        String code = String.join("; ", initializers);
+        int[][] regions = new int[initializers.length][];
+        for (int i = 0; i < initializers.length; i++) {
+            int start = code.indexOf(initializers[i]);
+            regions[i] = new int[] {start, start + initializers[i].length()};
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int iterations = 100_000;
+        int checksum = 0;
+
+        // Warm up so that every name is pooled and the code is compiled
+        for (int i = 0; i < iterations; i++) {
+            for (int[] region : regions) {
+                checksum += classifier.classify(code, region[0], region[1]).length();
+            }
+        }
+
+        // When
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            for (int[] region : regions) {
+                checksum += classifier.classify(code, region[0], region[1]).length();
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Then: less than one byte per call on average, i.e. no per-call garbage
+        assertThat(checksum).isPositive();
+        assertThat(allocated).isLessThan((long) iterations * regions.length);
+    }
+}
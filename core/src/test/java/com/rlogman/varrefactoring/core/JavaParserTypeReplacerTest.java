@@ -0,0 +1,92 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JavaParserTypeReplacerTest {
+
+    private JavaParserTypeReplacer replacer;
+    private VarEligibilityChecker checker;
+
+    @BeforeEach
+    void setUp() {
+        replacer = new JavaParserTypeReplacer();
+        checker = new VarEligibilityChecker(new RefactoringOptions());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "class Test { void method() { String text = \"hello\"; } }",
+        "class Test { String field = \"x\"; void method() { final String text = \"hello\"; long count = 1L; } }",
+        "class Test { void method() { for (int i = 0; i < 10; i++) { } } }",
+        "class Test { void method() { int a = 1, b = 2; int[] values = { 1 }; String unknown = compute(); } }",
+        "class Test { void method() { Runnable r = () -> { String inLambda = \"\"; }; } }"
+    })
+    void shouldMatchSyntacticEngine(String code) {
+        // Given
+        JavaTypeReplacer syntactic = new JavaTypeReplacer();
+
+        // When
+        String result = replacer.replaceExplicitTypes(code, checker::isEligibleForVarReplacement);
+
+        // Then
+        assertThat(result).isEqualTo(syntactic.replaceExplicitTypes(code, checker::isEligibleForVarReplacement));
+    }
+
+    @Test
+    void shouldReplaceTypesSpanningLines() {
+        // Given
+        String code = "class Test {\r\n  void method() {\n    Map<String,\n        Integer> map = new Map<String, Integer>();\n  }\n}";
+
+        // When
+        EditScript edits = replacer.findReplacements(code, checker::isEligibleForVarReplacement);
+
+        // Then
+        assertThat(edits.size()).isEqualTo(1);
+        assertThat(edits.offset(0)).isEqualTo(code.indexOf("Map<"));
+        assertThat(edits.length(0)).isEqualTo(code.indexOf(" map") - code.indexOf("Map<"));
+    }
+
+    @Test
+    void shouldReplaceTryWithResourcesVariables() {
+        // Given
+        String code = "class Test { void method() throws Exception { try (Reader reader = new Reader()) { } } }";
+
+        // When
+        String result = replacer.replaceExplicitTypes(code, checker::isEligibleForVarReplacement);
+
+        // Then
+        assertThat(result).isEqualTo("class Test { void method() throws Exception { try (var reader = new Reader()) { } } }");
+    }
+
+    @Test
+    void shouldReturnNoEditsForMalformedSource() {
+        // Given
+        String code = "class Test { void method() { String text = ; } }";
+
+        // When
+        EditScript edits = replacer.findReplacements(code, checker::isEligibleForVarReplacement);
+
+        // Then
+        assertThat(edits).isSameAs(EditScript.EMPTY);
+    }
+
+    @Test
+    void shouldKeepSyntacticEditsWhenFallbackCannotParse() {
+        // Given
+        String code = "class Test { void method() { String text = \"a\"; String other = compute(); } void broken( { } }";
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(
+            new RefactoringOptions(), new JavaTypeReplacer(), replacer, null);
+
+        // When
+        String result = processor.processFile(code, "17");
+
+        // Then
+        assertThat(result).isEqualTo(
+            "class Test { void method() { var text = \"a\"; String other = compute(); } void broken( { } }");
+    }
+}
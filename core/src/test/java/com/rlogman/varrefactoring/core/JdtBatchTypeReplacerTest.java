@@ -0,0 +1,77 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdtBatchTypeReplacerTest {
+
+    @TempDir
+    Path sources;
+
+    @Test
+    void shouldUseResolvedTypesOfInitializers() throws IOException {
+        // Given
+        Path file = write("Test.java", String.join("\n",
+            "import java.util.*;",
+            "class Test {",
+            "    String field = \"x\";",
+            "    String name() { return \"n\"; }",
+            "    void method() {",
+            "        String fromCall = name();",
+            "        List<String> list = new ArrayList<String>();",
+            "        List<String> empty = Collections.emptyList();",
+            "        Runnable lambda = () -> { };",
+            "        Object object = \"text\";",
+            "    }",
+            "}"));
+        VarEligibilityChecker checker = new VarEligibilityChecker(new RefactoringOptions());
+        JdtBatchTypeReplacer replacer = new JdtBatchTypeReplacer(List.of(), List.of(sources.toString()), "17", 10);
+        Map<Path, EditScript> results = new HashMap<>();
+
+        // When
+        replacer.findReplacements(List.of(file), checker::isEligibleForVarReplacement, results::put);
+
+        // Then: only the call whose return type matches exactly is replaced
+        String content = Files.readString(file);
+        EditScript edits = results.get(file);
+        assertThat(edits.size()).isEqualTo(1);
+        assertThat(edits.offset(0)).isEqualTo(content.indexOf("String fromCall"));
+        assertThat(edits.applyTo(content)).contains("var fromCall = name();");
+    }
+
+    @Test
+    void shouldProcessFilesInChunks() throws IOException {
+        // Given
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            files.add(write("Test" + i + ".java",
+                "class Test" + i + " { long count() { return 1L; } void method() { long value = count(); } }"));
+        }
+        VarEligibilityChecker checker = new VarEligibilityChecker(new RefactoringOptions());
+        JdtBatchTypeReplacer replacer = new JdtBatchTypeReplacer(List.of(), List.of(sources.toString()), "17", 3);
+        Map<Path, EditScript> results = new HashMap<>();
+
+        // When
+        replacer.findReplacements(files, checker::isEligibleForVarReplacement, results::put);
+
+        // Then
+        assertThat(results).hasSize(files.size());
+        for (Path file : files) {
+            assertThat(results.get(file).applyTo(Files.readString(file))).contains("var value = count();");
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(sources.resolve(name), content);
+    }
+}
@@ -0,0 +1,145 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefactoringEngineTest {
+
+    @Test
+    void shouldDiscoverSyntacticEngine() {
+        // When
+        Optional<RefactoringEngine> byName = RefactoringEngine.find("syntactic");
+        Optional<RefactoringEngine> byCapability = RefactoringEngine.find(RefactoringEngine.Capability.SYNTACTIC);
+
+        // Then
+        assertThat(byName.isPresent()).isTrue();
+        assertThat(byName.get()).isInstanceOf(JavaTypeReplacer.class);
+        assertThat(byCapability.isPresent()).isTrue();
+    }
+
+    @Test
+    void shouldReportUndecidedDeclarations() {
+        // Given
+        String code = "class Test { void method() { String text = \"hello\"; String other = compute(); } }";
+        List<Integer> undecided = new ArrayList<>();
+        VarEligibilityChecker checker = new VarEligibilityChecker(new RefactoringOptions());
+
+        // When
+        EditScript edits = new JavaTypeReplacer().findReplacements(
+            code, checker::isEligibleForVarReplacement, null, undecided::add);
+
+        // Then
+        assertThat(edits.size()).isEqualTo(1);
+        assertThat(edits.offset(0)).isEqualTo(code.indexOf("String text"));
+        assertThat(undecided).containsExactly(code.indexOf("String other"));
+    }
+
+    @Test
+    void shouldHandUndecidedDeclarationsToFallbackEngine() {
+        // Given
+        String code = "class Test { void method() { String first = compute(); String text = \"hello\"; String last = compute(); } }";
+        ResolvingEngine fallback = new ResolvingEngine("String");
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(
+            new RefactoringOptions(), new JavaTypeReplacer(), fallback, null);
+
+        // When
+        String result = processor.processFile(code, "17");
+
+        // Then
+        assertThat(fallback.considered).containsExactly(code.indexOf("String first"), code.indexOf("String last"));
+        assertThat(result).isEqualTo(
+            "class Test { void method() { var first = compute(); var text = \"hello\"; var last = compute(); } }");
+    }
+
+    @Test
+    void shouldNotCallFallbackEngineWhenAllDeclarationsAreDecided() {
+        // Given
+        String code = "class Test { void method() { String text = \"hello\"; } }";
+        ResolvingEngine fallback = new ResolvingEngine("String");
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(
+            new RefactoringOptions(), new JavaTypeReplacer(), fallback, null);
+
+        // When
+        String result = processor.processFile(code, "17");
+
+        // Then
+        assertThat(fallback.calls).isZero();
+        assertThat(result).isEqualTo("class Test { void method() { var text = \"hello\"; } }");
+    }
+
+    @Test
+    void shouldLetFallbackEngineDecideUndecidedCandidatesOfRange() {
+        // Given
+        String code = "class Test { void method() { String first = compute(); String text = \"hello\"; String last = compute(); } }";
+        ResolvingEngine fallback = new ResolvingEngine("String");
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(
+            new RefactoringOptions(), new JavaTypeReplacer(), fallback, null);
+
+        // When
+        CandidateReport report = processor.analyzeRange(code, "17", code.indexOf("String text"), code.length());
+
+        // Then
+        assertThat(fallback.considered).containsExactly(code.indexOf("String last"));
+        assertThat(report.size()).isEqualTo(2);
+        assertThat(report.isAccepted(0)).isTrue();
+        assertThat(report.isAccepted(1)).isTrue();
+        assertThat(report.typeStart(1)).isEqualTo(code.indexOf("String last"));
+    }
+
+    /**
+     * Stands in for a type-resolving engine: every declaration in scope gets the given
+     * initializer type.
+     */
+    private static final class ResolvingEngine implements RefactoringEngine {
+        private final String initializerType;
+        private final JavaTypeReplacer syntactic = new JavaTypeReplacer();
+        private final List<Integer> considered = new ArrayList<>();
+        private int calls;
+
+        ResolvingEngine(String initializerType) {
+            this.initializerType = initializerType;
+        }
+
+        @Override
+        public String getName() {
+            return "resolving";
+        }
+
+        @Override
+        public Set<Capability> getCapabilities() {
+            return EnumSet.of(Capability.TYPE_RESOLVING);
+        }
+
+        @Override
+        public EditScript findReplacements(
+                String fileContent,
+                EligibilityPredicate eligibilityPredicate,
+                IntPredicate scope,
+                IntConsumer undecided) {
+            calls++;
+            List<Integer> inScope = new ArrayList<>();
+            EditScript all = syntactic.findReplacements(fileContent,
+                (declarationType, ignored, isLocal, isLoopVariable) ->
+                    eligibilityPredicate.test(declarationType, initializerType, isLocal, isLoopVariable),
+                offset -> {
+                    if (scope.test(offset)) {
+                        inScope.add(offset);
+                        return true;
+                    }
+                    return false;
+                },
+                null);
+            considered.addAll(inScope);
+            return all;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScopeIndexTest {
+
+    private static final String SOURCE = String.join("\n",
+        "class Outer {",
+        "    String field = \"{\";",
+        "    static { int staticInit = 1; }",
+        "    { int instanceInit = 1; }",
+        "    int[] numbers = { 1, 2 };",
+        "    Outer() throws Exception { int ctor = 1; }",
+        "    void method() {",
+        "        int local = 1;",
+        "        if (local > 0) { int nested = 2; }",
+        "        Runnable lambda = () -> { int inLambda = 3; };",
+        "        Object anonymous = new Object() {",
+        "            String anonymousField = \"x\";",
+        "            public String toString() { String anonymousLocal = \"\"; return anonymousLocal; }",
+        "        };",
+        "        class Local { String localClassField = \"\"; }",
+        "        switch (local) { case 1 -> { int inCase = 1; } default -> { } }",
+        "    }",
+        "    enum Kind { A { String constantField = \"\"; }, B; void m() { int enumLocal = 0; } }",
+        "    record Point(int x) { Point { int compact = x; } }",
+        "    // } unbalanced brace in a comment",
+        "    String after = \"}\";",
+        "}");
+
+    @ParameterizedTest
+    @CsvSource({
+        "field, false",
+        "staticInit, true",
+        "instanceInit, true",
+        "ctor, true",
+        "local, true",
+        "nested, true",
+        "inLambda, true",
+        "anonymousField, false",
+        "anonymousLocal, true",
+        "localClassField, false",
+        "inCase, true",
+        "constantField, false",
+        "enumLocal, true",
+        "compact, true",
+        "after, false"
+    })
+    void shouldClassifyDeclarationsAsLocalOrField(String name, boolean expectedLocal) {
+        // Given
+        ScopeIndex index = ScopeIndex.build(SOURCE);
+
+        // When
+        boolean local = index.isInCodeBody(SOURCE.indexOf(" " + name + " ="));
+
+        // Then
+        assertThat(local).isEqualTo(expectedLocal);
+    }
+
+    @Test
+    void shouldReportBlockKindsAndRanges() {
+        // Given
+        ScopeIndex index = ScopeIndex.build(SOURCE);
+
+        // When
+        int lambdaBlock = index.innermostBlock(SOURCE.indexOf("inLambda"));
+        int arrayBlock = index.innermostBlock(SOURCE.indexOf("1, 2"));
+        int methodBlock = index.parentBlock(index.innermostBlock(SOURCE.indexOf("nested")));
+
+        // Then
+        assertThat(index.blockKind(lambdaBlock)).isEqualTo(ScopeIndex.LAMBDA_BODY);
+        assertThat(index.blockKind(arrayBlock)).isEqualTo(ScopeIndex.ARRAY_INITIALIZER);
+        assertThat(index.blockKind(methodBlock)).isEqualTo(ScopeIndex.METHOD_BODY);
+        assertThat(SOURCE.charAt(index.blockStart(methodBlock))).isEqualTo('{');
+        assertThat(SOURCE.charAt(index.blockEnd(methodBlock))).isEqualTo('}');
+        assertThat(index.innermostBlock(SOURCE.length())).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldTrackBraceDepth() {
+        // Given
+        String code = "class A { void m() { if (x) { y(); } } }";
+        ScopeIndex index = ScopeIndex.build(code);
+
+        // When / Then
+        assertThat(index.braceDepth(0)).isEqualTo(0);
+        assertThat(index.braceDepth(code.indexOf("void"))).isEqualTo(1);
+        assertThat(index.braceDepth(code.indexOf("y()"))).isEqualTo(3);
+        assertThat(index.braceDepth(code.length())).isEqualTo(0);
+        assertThat(index.blockCount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldFindBraceBoundaryBeforeOffset() {
+        // Given
+        String code = "class A { void m() { if (x) { y(); } int z = 1; } }";
+        ScopeIndex index = ScopeIndex.build(code);
+
+        // When / Then
+        assertThat(index.braceBoundary(code.indexOf("class"))).isEqualTo(0);
+        assertThat(index.braceBoundary(code.indexOf("if"))).isEqualTo(code.indexOf("if") - 1);
+        assertThat(index.braceBoundary(code.indexOf("int z"))).isEqualTo(code.indexOf(" int z"));
+        // On a closing brace the boundary lies before it
+        assertThat(index.braceBoundary(code.indexOf("} int z"))).isEqualTo(code.indexOf(" y()"));
+    }
+
+    @Test
+    void shouldShiftBracesAfterEdits() {
+        // Given
+        String code = "class A { void m() { int x = 1; } void n() { if (y) { } } }";
+        String edited = code.replace("int x", "int longer").replace("(y)", "(z > 0)");
+        ScopeIndex index = ScopeIndex.build(code);
+
+        // When: an edit near the end, then one before it, so the moved braces go both ways
+        index.shift(code.indexOf("y)"), "z > 0".length() - 1);
+        index.shift(code.indexOf("x ="), "longer".length() - 1);
+
+        // Then
+        ScopeIndex rebuilt = ScopeIndex.build(edited);
+        for (int block = 0; block < rebuilt.blockCount(); block++) {
+            assertThat(index.blockStart(block)).isEqualTo(rebuilt.blockStart(block));
+            assertThat(index.blockEnd(block)).isEqualTo(rebuilt.blockEnd(block));
+        }
+        for (int offset = 0; offset <= edited.length(); offset++) {
+            assertThat(index.innermostBlock(offset)).isEqualTo(rebuilt.innermostBlock(offset));
+            assertThat(index.braceBoundary(offset)).isEqualTo(rebuilt.braceBoundary(offset));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "int x = 1;|x = 1|x = compute(a, b)|true",
+        "int x = 1;|int|String|true",
+        "int x = 1;|1;|1; int y = 2;|true",
+        "int x = 1;|x = 1|x = 1; // }|false",
+        "int x = 1;|int|int[] a = { 1 }; int|false",
+        "int x = 1;|int x = 1;|/*|false",
+        "Object o = new Object() { };|Object()|Object(|false",
+        "Runnable r = () -> { };|->|- >|false",
+        "Runnable r = () -> { };|() ->|(a) ->|true"
+    })
+    void shouldTellEditsThatKeepTheBlocks(String statement, String replaced, String replacement, boolean kept) {
+        // Given
+        String code = "class A { void m() { " + statement + " } void n() { } }";
+        int offset = code.indexOf(replaced);
+        String edited = code.substring(0, offset) + replacement + code.substring(offset + replaced.length());
+        ScopeIndex index = ScopeIndex.build(code);
+
+        // When
+        int alikeFrom = index.blocksKeptBy(code, edited, offset, replaced.length(), replacement.length());
+
+        // Then
+        assertThat(alikeFrom >= 0).isEqualTo(kept);
+    }
+
+    @Test
+    void shouldNotKeepBlocksWhenDeclarationGetsBody() {
+        // Given: the next brace becomes the body of a local class
+        String code = "class A { void m() { foo(); { int x = 1; } } }";
+        String edited = code.replace("foo();", "class Foo");
+        ScopeIndex index = ScopeIndex.build(code);
+
+        // When
+        int alikeFrom = index.blocksKeptBy(code, edited, code.indexOf("foo();"), "foo();".length(), "class Foo".length());
+
+        // Then
+        assertThat(alikeFrom).isEqualTo(-1);
+        assertThat(ScopeIndex.build(edited).blockKind(2)).isEqualTo(ScopeIndex.CLASS_BODY);
+    }
+
+    @Test
+    void shouldCarryOpenBlocksAcrossChunks() {
+        // Given
+        String code = "enum E { A { void a() { int x = 1; } }; void m() { Runnable r = () -> { int y = 2; }; } }";
+        int cut = code.indexOf("int x");
+        ScopeIndex.OpenBlocks open = new ScopeIndex.OpenBlocks();
+
+        // When
+        ScopeIndex first = ScopeIndex.build(code, 0, cut, open);
+        int openAtCut = open.count();
+        ScopeIndex second = ScopeIndex.build(code, cut, code.length(), open);
+
+        // Then
+        ScopeIndex whole = ScopeIndex.build(code);
+        assertThat(openAtCut).isEqualTo(3);
+        for (int offset = 0; offset < code.length(); offset++) {
+            ScopeIndex chunk = offset < cut ? first : second;
+            assertThat(chunk.isInCodeBody(offset)).isEqualTo(whole.isInCodeBody(offset));
+            assertThat(chunk.braceDepth(offset)).isEqualTo(whole.braceDepth(offset));
+        }
+        assertThat(open.count()).isZero();
+    }
+}
@@ -0,0 +1,111 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypeSymbolTableTest {
+
+    @Test
+    void shouldReturnSameIdForSameName() {
+        // Given
+        TypeSymbolTable symbols = new TypeSymbolTable();
+        String source = "List<String> names = new ArrayList<String>();";
+
+        // When
+        int id = symbols.id("java.util.List<java.lang.String>");
+        int again = symbols.id(new StringBuilder("java.util.List<java.lang.String>"));
+        int region = symbols.id(source, 0, source.indexOf(' '));
+        int other = symbols.id("java.lang.String");
+
+        // Then
+        assertThat(again).isEqualTo(id);
+        assertThat(other).isNotEqualTo(id);
+        assertThat(symbols.name(region)).isEqualTo("List<String>");
+        assertThat(symbols.id("List<String>")).isEqualTo(region);
+        assertThat(symbols.size()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldStopAddingNamesWhenFull() {
+        // Given
+        TypeSymbolTable symbols = new TypeSymbolTable(2);
+        int first = symbols.id("A");
+        symbols.id("B");
+
+        // When
+        int overflow = symbols.id("C");
+
+        // Then
+        assertThat(overflow).isEqualTo(TypeSymbolTable.NO_ID);
+        assertThat(symbols.id("A")).isEqualTo(first);
+        assertThat(symbols.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDecideByIdsLikeByNames() {
+        // Given
+        TypeSymbolTable symbols = new TypeSymbolTable();
+        String[] names = {"int", "long", "String", "List<>", "Map<String, List<>>", "boolean", "java.lang.Object"};
+        RefactoringOptions options = new RefactoringOptions();
+        options.setAllowPrimitiveTypes(false);
+        options.setAllowDiamondOperator(false);
+        VarEligibilityChecker checker = new VarEligibilityChecker(options);
+
+        for (String declared : names) {
+            for (String initializer : names) {
+                for (int flags = 0; flags < 4; flags++) {
+                    boolean isLocal = (flags & 1) != 0;
+                    boolean isLoopVariable = (flags & 2) != 0;
+
+                    // When
+                    boolean byIds = checker.isEligibleForVarReplacement(
+                        symbols.id(declared), symbols.id(initializer), isLocal, isLoopVariable);
+
+                    // Then
+                    assertThat(byIds).isEqualTo(
+                        checker.isEligibleForVarReplacement(declared, initializer, isLocal, isLoopVariable));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldAssignOneIdPerNameAcrossThreads() throws Exception {
+        // Given
+        TypeSymbolTable symbols = new TypeSymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> results = new ArrayList<>();
+
+        // When every thread interns the same names in a different order
+        try {
+            for (int t = 0; t < 4; t++) {
+                int offset = t * 250;
+                results.add(executor.submit(() -> {
+                    int[] ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++) {
+                        int name = (i + offset) % ids.length;
+                        ids[name] = symbols.id("Type" + name);
+                    }
+                    return ids;
+                }));
+            }
+
+            // Then
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                assertThat(result.get()).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(symbols.size()).isEqualTo(1000);
+        assertThat(symbols.name(symbols.id("Type999"))).isEqualTo("Type999");
+    }
+}
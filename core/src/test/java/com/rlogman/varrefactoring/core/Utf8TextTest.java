@@ -0,0 +1,146 @@
+package com.rlogman.varrefactoring.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Utf8TextTest {
+
+    private VarRefactoringProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        RefactoringOptions defaultOptions = new RefactoringOptions();
+        processor = new VarRefactoringProcessor(defaultOptions);
+    }
+
+    @ParameterizedTest
+    @MethodSource("utf8Sources")
+    void shouldProcessUtf8BytesLikeDecodedContent(String code) {
+        // Given
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.put(new byte[3]).put(bytes).position(3);
+
+        // When
+        byte[] result = processor.processFile(bytes, "11");
+        EditScript edits = processor.computeEdits(buffer, "11");
+
+        // Then
+        String expected = processor.processFile(code, "11");
+        assertThat(new String(result, StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(new String(edits.applyTo(buffer), StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(buffer.position()).isEqualTo(3);
+    }
+
+    @ParameterizedTest
+    @MethodSource("utf8Sources")
+    void shouldAnalyzeUtf8BytesLikeDecodedContent(String code) {
+        // Given
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+
+        // When
+        CandidateReport report = processor.analyze(ByteBuffer.wrap(bytes), "11");
+
+        // Then
+        CandidateReport expected = processor.analyze(code, "11");
+        assertThat(report.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(new String(bytes, 0, report.typeStart(i), StandardCharsets.UTF_8).length())
+                .isEqualTo(expected.typeStart(i));
+            assertThat(new String(bytes, report.typeStart(i), report.typeEnd(i) - report.typeStart(i),
+                StandardCharsets.UTF_8)).isEqualTo(code.substring(expected.typeStart(i), expected.typeEnd(i)));
+            assertThat(report.rejectionReason(i)).isEqualTo(expected.rejectionReason(i));
+        }
+    }
+
+    static Stream<String> utf8Sources() {
+        return Stream.of(
+            "class A { void m() { String s = \"s\"; int i = 1; } }",
+            // Non-ASCII only in comments and literals: scanned as bytes
+            "class A { void m() { // gr\u00fc\u00dfe \u2713\n String s = \"\ud83d\ude00\"; char c = '\u00e9'; } }",
+            // Non-ASCII identifiers: decoded
+            "class A { void m() { Stra\u00dfe a = new Stra\u00dfe(); Stra\u00dfe b = new Stra\u00dff(); String s = \"s\"; } }");
+    }
+
+    @Test
+    void shouldProcessUnchangedUtf8BytesWithoutCopying() {
+        // Given
+        byte[] bytes = "class A { int field = 1; }".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        byte[] result = processor.processFile(bytes, "11");
+
+        // Then
+        assertThat(result).isSameAs(bytes);
+    }
+
+    @Test
+    void shouldViewEveryByteAsOneCharacter() throws Exception {
+        // Given
+        String code = "a\u00e9\uD83D\uDE00b";
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+
+        // When
+        Utf8Text text = new Utf8Text(ByteBuffer.wrap(bytes));
+
+        // Then
+        assertThat(text.length()).isEqualTo(bytes.length);
+        assertThat(text.charAt(0)).isEqualTo('a');
+        assertThat(text.charAt(1)).isEqualTo(Utf8Text.NON_ASCII);
+        assertThat(text.charAt(bytes.length - 1)).isEqualTo('b');
+        assertThat(text.decodedLength()).isEqualTo(code.length());
+        assertThat(text.decode()).isEqualTo(code);
+    }
+
+    @Test
+    void shouldBeFaithfulOnlyWithoutNonAsciiCode() {
+        // When / Then
+        assertThat(view("class A { String s = \"s\"; }").isFaithful()).isTrue();
+        assertThat(view("class A { /* \u00e9 */ String s = \"\u00fc\"; char c = '\u00e9'; }").isFaithful()).isTrue();
+        assertThat(view("class A { String \u00e9t\u00e9 = \"s\"; }").isFaithful()).isFalse();
+    }
+
+    @Test
+    void shouldConvertCharacterOffsetsToByteOffsets() {
+        // Given
+        String comment = "// \u00e9\uD83D\uDE00\n";
+        String code = comment + "String s = \"\u2713\"; String t = \"t\";";
+        int first = code.indexOf("String s");
+        int second = code.indexOf("String t");
+        EditScript edits = new EditScript();
+        edits.add(first, "String".length());
+        edits.add(second, "String".length());
+        CandidateReport report = new CandidateReport();
+        report.add(first, first + "String".length(), code.indexOf(" String t"), null);
+        report.addUndecided(second, second + "String".length(), code.length());
+
+        // When
+        EditScript byteEdits = Utf8Text.toByteOffsets(edits, code);
+        CandidateReport byteReport = Utf8Text.toByteOffsets(report, code);
+
+        // Then
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        int shift = comment.getBytes(StandardCharsets.UTF_8).length - comment.length();
+        assertThat(byteEdits.offset(0)).isEqualTo(first + shift);
+        assertThat(byteEdits.length(0)).isEqualTo("String".length());
+        assertThat(new String(byteEdits.applyTo(ByteBuffer.wrap(bytes)), StandardCharsets.UTF_8))
+            .isEqualTo(edits.applyTo(code));
+        assertThat(byteReport.typeStart(0)).isEqualTo(first + shift);
+        assertThat(byteReport.isAccepted(0)).isTrue();
+        assertThat(byteReport.typeStart(1)).isEqualTo(byteEdits.offset(1));
+        assertThat(byteReport.statementEnd(1)).isEqualTo(bytes.length);
+        assertThat(byteReport.isUndecided(1)).isTrue();
+    }
+
+    private static Utf8Text view(String code) {
+        return new Utf8Text(ByteBuffer.wrap(code.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class VarEligibilityCheckerTest {
@@ -156,4 +158,59 @@ class VarEligibilityCheckerTest {
         assertThat(checker.isEligibleForVarReplacement(
             "String", "String", true, false)).isTrue(); // Regular local var should be allowed
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldDecideLikeRuleChainForAllOptionsAndDeclarations() {
+        // Given every combination of options and a mix of declarations
+        String[][] types = {
+            {"String", "String"}, {"int", "int"}, {"int", "long"}, {"boolean", "Object"},
+            {"List<>", "ArrayList<String>"}, {"Map<String, List<>>", "Map<String, List<>>"},
+            {"List<String>", "ArrayList<String>"}, {"CharSequence", "String"}
+        };
+
+        for (int optionBits = 0; optionBits < 16; optionBits++) {
+            RefactoringOptions combination = new RefactoringOptions(
+                (optionBits & 1) != 0, (optionBits & 2) != 0, (optionBits & 4) != 0, (optionBits & 8) != 0,
+                false, false);
+            VarEligibilityChecker compiled = new VarEligibilityChecker(combination);
+
+            for (String[] pair : types) {
+                for (int flags = 0; flags < 4; flags++) {
+                    boolean isLocal = (flags & 1) != 0;
+                    boolean isLoopVariable = (flags & 2) != 0;
+
+                    // When
+                    boolean result = compiled.isEligibleForVarReplacement(pair[0], pair[1], isLocal, isLoopVariable);
+
+                    // Then
+                    assertThat(result)
+                        .as("%s %s local=%s loop=%s options=%s", pair[0], pair[1], isLocal, isLoopVariable,
+                            combination.fingerprint())
+                        .isEqualTo(ruleChain(combination, pair[0], pair[1], isLocal, isLoopVariable));
+                }
+            }
+        }
+    }
+
+    /**
+     * The eligibility rules as they were written before they were compiled into a table.
+     */
+    private static boolean ruleChain(RefactoringOptions options, String declarationType, String initializerType,
+            boolean isLocal, boolean isLoopVariable) {
+        if (!isLocal) {
+            return false;
+        }
+        if (isLoopVariable && !options.isAllowForLoopVars()) {
+            return false;
+        }
+        if (declarationType.contains("<>") && !options.isAllowDiamondOperator()) {
+            return false;
+        }
+        boolean primitive = List.of("int", "long", "short", "byte", "char", "float", "double", "boolean")
+            .contains(declarationType);
+        if (primitive && !options.isAllowPrimitiveTypes()) {
+            return false;
+        }
+        return options.isAllowDifferentTypes() || declarationType.equals(initializerType);
+    }
+}
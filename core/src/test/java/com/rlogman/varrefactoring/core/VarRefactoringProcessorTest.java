@@ -1,15 +1,47 @@
 package com.rlogman.varrefactoring.core;
 
+import com.rlogman.varrefactoring.common.CacheKey;
+import com.rlogman.varrefactoring.common.CachedEdits;
+import com.rlogman.varrefactoring.common.ResultCache;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 class VarRefactoringProcessorTest {
@@ -147,4 +179,399 @@ class VarRefactoringProcessorTest {
         // Then
         assertThat(result).isEqualTo(expected);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldProcessFilesInParallelInInputOrder() {
+        // Given
+        List<String> files = generatedFiles(200);
+        String javaVersion = "11";
+        List<String> expected = processor.processFiles(files, javaVersion);
+
+        // When
+        List<FileResult> results = processor.processFilesInParallel(files, javaVersion, 4);
+
+        // Then
+        assertThat(results).hasSize(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertThat(results.get(i).isSuccess()).isTrue();
+            assertThat(results.get(i).getContent()).isEqualTo(expected.get(i));
+        }
+    }
+
+    @Test
+    void shouldReportErrorsPerFile() {
+        // Given
+        List<String> files = Arrays.asList(
+                "class Test1 { void method() { String text = \"hello\"; } }",
+                null,
+                "class Test2 { void method() { int value = 42; } }"
+        );
+
+        // When
+        List<FileResult> results = processor.processFilesInParallel(files, "11", 2);
+
+        // Then
+        assertThat(results.get(0).getContent()).isEqualTo("class Test1 { void method() { var text = \"hello\"; } }");
+        assertThat(results.get(0).isModified()).isTrue();
+        assertThat(results.get(1).isSuccess()).isFalse();
+        assertThat(results.get(1).getError()).isInstanceOf(NullPointerException.class);
+        assertThat(results.get(1).getContent()).isNull();
+        assertThat(results.get(2).getContent()).isEqualTo("class Test2 { void method() { var value = 42; } }");
+    }
+
+    @Test
+    void shouldBeSafeForConcurrentUse() throws Exception {
+        // Given
+        List<String> files = generatedFiles(64);
+        List<String> expected = processor.processFiles(files, "11");
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+
+        // When: every thread processes every file through the same processor
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<String> results = new ArrayList<>();
+                    for (String file : files) {
+                        results.add(processor.processFile(file, "11"));
+                    }
+                    return results;
+                }));
+            }
+            start.countDown();
+
+            // Then
+            for (Future<List<String>> future : futures) {
+                assertThat(future.get(30, TimeUnit.SECONDS)).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldStreamFilesWithBoundedMemory() throws Exception {
+        // Given
+        List<String> contents = generatedFiles(500);
+        List<String> expected = processor.processFiles(contents, "11");
+        int parallelism = 3;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Map<String, String> results = new ConcurrentHashMap<>();
+        Stream<SourceFile> files = IntStream.range(0, contents.size()).mapToObj(i -> new SourceFile() {
+            @Override
+            public String getName() {
+                return "File" + i + ".java";
+            }
+
+            @Override
+            public String readContent() {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return contents.get(i);
+            }
+        });
+
+        // When
+        processor.processFiles(files, "11", parallelism, (file, result) -> {
+            results.put(file.getName(), result.getContent());
+            inFlight.decrementAndGet();
+        });
+
+        // Then
+        assertThat(results).hasSize(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            assertThat(results.get("File" + i + ".java")).isEqualTo(expected.get(i));
+        }
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2 * parallelism);
+    }
+
+    @Test
+    void shouldAnalyzeFilesWithoutRewritingThem() throws Exception {
+        // Given
+        List<String> contents = generatedFiles(50);
+        Map<String, CandidateReport> reports = new ConcurrentHashMap<>();
+        Iterator<SourceFile> files = IntStream.range(0, contents.size())
+            .mapToObj(i -> SourceFile.of("File" + i + ".java", contents.get(i)))
+            .iterator();
+
+        // When
+        processor.analyzeFiles(files, "11", 2, (file, result) -> {
+            assertThat(result.getContent()).isNull();
+            reports.put(file.getName(), result.getReport());
+        });
+
+        // Then
+        assertThat(reports).hasSize(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            String content = contents.get(i);
+            CandidateReport report = reports.get("File" + i + ".java");
+            assertThat(report.toEditScript().applyTo(content)).isEqualTo(processor.processFile(content, "11"));
+            assertThat(report.acceptedCount()).isEqualTo(processor.computeEdits(content, "11").size());
+        }
+    }
+
+    @Test
+    void shouldReportUnreadableFilesToSink() throws Exception {
+        // Given
+        SourceFile unreadable = new SourceFile() {
+            @Override
+            public String getName() {
+                return "Missing.java";
+            }
+
+            @Override
+            public String readContent() throws IOException {
+                throw new IOException("gone");
+            }
+        };
+        SourceFile readable = SourceFile.of("Test.java", "class Test { void method() { int value = 42; } }");
+        Map<String, FileResult> results = new ConcurrentHashMap<>();
+
+        // When
+        processor.processFiles(List.of(unreadable, readable).iterator(), "11", 2, (file, result) -> results.put(file.getName(), result));
+
+        // Then
+        assertThat(results.get("Missing.java").getError()).isInstanceOf(IOException.class);
+        assertThat(results.get("Test.java").getContent()).isEqualTo("class Test { void method() { var value = 42; } }");
+        assertThat(results.get("Test.java").isModified()).isTrue();
+        assertThat(results.get("Missing.java").isModified()).isFalse();
+    }
+
+    @Test
+    void shouldRethrowSinkFailure() {
+        // Given
+        List<SourceFile> files = List.of(SourceFile.of("Test.java", "class Test { }"));
+        IllegalStateException failure = new IllegalStateException("sink");
+
+        // When / Then
+        assertThatThrownBy(() -> processor.processFiles(files.iterator(), "11", 1, (file, result) -> {
+            throw failure;
+        })).isSameAs(failure);
+    }
+
+    @Test
+    void shouldRethrowErrorOfEngine() {
+        // Given
+        AssertionError error = new AssertionError("engine");
+        RefactoringEngine failing = new RefactoringEngine() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public Set<Capability> getCapabilities() {
+                return EnumSet.of(Capability.SYNTACTIC);
+            }
+
+            @Override
+            public EditScript findReplacements(String fileContent, EligibilityPredicate eligibilityPredicate,
+                                               IntPredicate scope, IntConsumer undecided) {
+                if (fileContent.contains("Broken")) {
+                    throw error;
+                }
+                return EditScript.EMPTY;
+            }
+        };
+        VarRefactoringProcessor failingProcessor = new VarRefactoringProcessor(
+            new RefactoringOptions(), failing, null, null);
+        List<SourceFile> files = List.of(
+            SourceFile.of("Test.java", "class Test { }"),
+            SourceFile.of("Broken.java", "class Broken { }"));
+        List<String> results = new ArrayList<>();
+
+        // When / Then
+        assertThatThrownBy(() -> failingProcessor.processFiles(files.iterator(), "11", 1,
+            (file, result) -> results.add(file.getName()))).isSameAs(error);
+        assertThat(results).containsExactly("Test.java");
+    }
+
+    @Test
+    void shouldCompleteWithinDeadline() {
+        // Given
+        String code = "class Test { void method() { String text = \"hello\"; List<String> list = new ArrayList<String>(); } }";
+
+        // When
+        ProcessingResult result = processor.processFile(code, "11", Duration.ofMinutes(1), CancellationToken.NONE);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(ProcessingResult.Status.COMPLETED);
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getContent()).isEqualTo(processor.processFile(code, "11"));
+    }
+
+    @Test
+    void shouldReturnUnmodifiedContentWhenDeadlineHasPassed() {
+        // Given
+        String code = "class Test { void method() { String text = \"hello\"; } }";
+
+        // When
+        ProcessingResult result = processor.processFile(code, "11", Duration.ZERO, null);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(ProcessingResult.Status.TIMED_OUT);
+        assertThat(result.isModified()).isFalse();
+        assertThat(result.getContent()).isSameAs(code);
+    }
+
+    @Test
+    void shouldReturnPartialResultWhenCancelled() {
+        // Given
+        StringBuilder code = new StringBuilder("class Test { void method() {\n");
+        for (int i = 0; i < 100; i++) {
+            code.append("    String s").append(i).append(" = \"value\";\n");
+        }
+        code.append("} }\n");
+        AtomicInteger polls = new AtomicInteger();
+        CancellationToken cancelledAfterThreePolls = () -> polls.incrementAndGet() > 3;
+
+        // When
+        ProcessingResult result = processor.processFile(code.toString(), "11", null, cancelledAfterThreePolls);
+
+        // Then
+        assertThat(result.getStatus()).isEqualTo(ProcessingResult.Status.CANCELLED);
+        assertThat(result.getEdits().size()).isBetween(1, 99);
+        assertThat(result.getContent()).contains("var s0 = ", "String s99 = ");
+    }
+
+    @ParameterizedTest
+    @MethodSource("charSequences")
+    void shouldProcessCharSequenceIntoAppendable(CharSequence content) throws IOException {
+        // Given
+        StringWriter writer = new StringWriter();
+        StringBuilder builder = new StringBuilder();
+
+        // When
+        processor.processFile(content, "11", writer);
+        processor.processFile(content, "11", builder);
+
+        // Then
+        String expected = processor.processFile(content.toString(), "11");
+        assertThat(writer.toString()).isEqualTo(expected);
+        assertThat(builder.toString()).isEqualTo(expected);
+    }
+
+    static Stream<CharSequence> charSequences() {
+        String code = "class A {\n    String field = \"f\";\n"
+            + "    void m() { // \u00fc\n        String s = \"s\";\n        int i = 1;\n"
+            + "        List<String> list = new ArrayList<>();\n    }\n}\n";
+        CharBuffer offsetBuffer = CharBuffer.wrap(("//\n" + code).toCharArray());
+        offsetBuffer.position(3);
+        return Stream.of(
+            code,
+            new StringBuilder(code),
+            CharBuffer.wrap(code.toCharArray()),
+            // A slice starts past the beginning of its array
+            offsetBuffer.slice(),
+            // No backing array: copied through a buffer
+            CharBuffer.wrap(code));
+    }
+
+    @Test
+    void shouldProcessStreamLikeWholeFile() throws IOException {
+        // Given: several windows of code, with a statement longer than a window
+        StringBuilder code = new StringBuilder("class Generated {\n    static final int[] TABLE = {");
+        for (int i = 0; i < 20000; i++) {
+            code.append(i).append(", ");
+        }
+        code.append("};\n");
+        for (int i = 0; i < 2000; i++) {
+            code.append("    String field").append(i).append(" = \"f\";\n")
+                .append("    void method").append(i).append("() { // \u00e9\n")
+                .append("        String s = \"{\";\n")
+                .append("        Runnable r = new Runnable() { public void run() { int x = 1; } };\n")
+                .append("        for (int j = 0; j < 2; j++) { long l = 2L; }\n")
+                .append("    }\n");
+        }
+        code.append("}\n");
+        StringWriter out = new StringWriter();
+
+        // When
+        processor.processStream(new StringReader(code.toString()), "11", out);
+
+        // Then
+        String expected = processor.processFile(code.toString(), "11");
+        assertThat(out.toString()).isEqualTo(expected);
+        assertThat(expected).contains("var x = 1;", "String field1999 = ");
+    }
+
+    @Test
+    void shouldProcessUtf8Channels() throws IOException {
+        // Given
+        String code = "class A { void m() { // gr\u00fc\u00dfe\n String s = \"\u2713\"; } }";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // When
+        processor.processStream(Channels.newChannel(new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8))),
+            "11", Channels.newChannel(bytes));
+
+        // Then
+        assertThat(bytes.toString(StandardCharsets.UTF_8)).isEqualTo(processor.processFile(code, "11"));
+    }
+
+    @Test
+    void shouldProcessOnlyDeclarationsInRange() {
+        // Given
+        String code = "class Test { void method() {\n"
+            + "    String first = \"a\";\n"
+            + "    String second = \"b\";\n"
+            + "    String third = \"c\";\n"
+            + "} }";
+        int start = code.indexOf("String second");
+
+        // When
+        String result = processor.processRange(code, "11", start, start + 1);
+
+        // Then
+        assertThat(result).contains("String first", "var second", "String third");
+    }
+
+    @Test
+    void shouldReuseCachedResults(@TempDir Path directory) throws IOException {
+        // Given
+        String code = "class Test { void method() { String text = \"hello\"; int value = 42; } }";
+        String unchanged = "class Test { String text = \"hello\"; }";
+        RefactoringOptions options = new RefactoringOptions();
+        CacheKey key = CacheKey.of(code, options.fingerprint(), "11", VarRefactoringProcessor.ENGINE_VERSION);
+
+        try (ResultCache cache = ResultCache.open(directory.resolve("cache.bin"), 1 << 20)) {
+            VarRefactoringProcessor cachingProcessor = new VarRefactoringProcessor(options, cache);
+
+            // When
+            String first = cachingProcessor.processFile(code, "11");
+            String second = cachingProcessor.processFile(code, "11");
+            cachingProcessor.processFile(unchanged, "11");
+
+            // Then
+            assertThat(first).isEqualTo("class Test { void method() { var text = \"hello\"; var value = 42; } }");
+            assertThat(second).isEqualTo(first);
+            assertThat(cache.size()).isEqualTo(2);
+            assertThat(cache.get(key).size()).isEqualTo(2);
+            assertThat(cachingProcessor.computeEdits(unchanged, "11")).isSameAs(EditScript.EMPTY);
+
+            // A cached entry is used instead of analyzing the file again
+            cache.put(key, new CachedEdits(new int[] {0}, new int[] {5}));
+            assertThat(cachingProcessor.processFile(code, "11")).startsWith("var Test");
+        }
+    }
+
+    private static List<String> generatedFiles(int count) {
+        List<String> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder file = new StringBuilder("class Test" + i + " {\n    String field = \"f\";\n");
+            // Vary the size so that the schedule differs from the input order
+            for (int m = 0; m < (i * 7) % 13 + 1; m++) {
+                file.append("    void method").append(m).append("() {\n")
+                    .append("        String text = \"t").append(m).append("\";\n")
+                    .append("        long count = ").append(i).append("L;\n")
+                    .append("        List<Type").append(i % 5).append("> list = new ArrayList<>();\n")
+                    .append("    }\n");
+            }
+            files.add(file.append("}\n").toString());
+        }
+        return files;
+    }
+}
@@ -5,7 +5,6 @@ plugins {
 
 dependencies {
     implementation(project(":core"))
-    implementation(project(":common"))
     
     // IntelliJ platform dependencies
     implementation("org.jetbrains:annotations:24.0.1")
@@ -3,6 +3,7 @@ package com.rlogman.varrefactoring.intellij;
 import com.rlogman.varrefactoring.core.RefactoringOptions;
 import com.rlogman.varrefactoring.core.VarEligibilityChecker;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiTreeUtil;
@@ -44,8 +45,9 @@ public class IntellijVarRefactoringProcessor {
         // Find all local variable declarations
         Collection<PsiLocalVariable> localVariables = PsiTreeUtil.findChildrenOfType(javaFile, PsiLocalVariable.class);
 
-        // Process each local variable
+        // Process each local variable; a cancelled progress indicator stops the batch here
         for (PsiLocalVariable variable : localVariables) {
+            ProgressManager.checkCanceled();
             boolean modified = processVariable(variable);
             wasModified = wasModified || modified;
         }
@@ -56,6 +58,7 @@ public class IntellijVarRefactoringProcessor {
                 PsiTreeUtil.findChildrenOfType(javaFile, PsiForeachStatement.class);
 
             for (PsiForeachStatement foreachStatement : foreachStatements) {
+                ProgressManager.checkCanceled();
                 boolean modified = processForEachVariable(foreachStatement);
                 wasModified = wasModified || modified;
             }
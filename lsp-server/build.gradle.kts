@@ -25,12 +25,20 @@ sourceSets {
 
 dependencies {
     implementation(project(":core"))
-    implementation(project(":common"))
 
     // Eclipse LSP4J for Language Server Protocol implementation
     implementation("org.eclipse.lsp4j:org.eclipse.lsp4j:0.21.1")
     implementation("org.eclipse.lsp4j:org.eclipse.lsp4j.jsonrpc:0.21.1")
     implementation("org.eclipse.lsp4j:org.eclipse.lsp4j.debug:0.21.1")
+
+    // Test dependencies
+    testImplementation("org.junit.jupiter:junit-jupiter-api:5.10.1")
+    testImplementation("org.junit.jupiter:junit-jupiter-engine:5.10.1")
+    testImplementation("org.assertj:assertj-core:3.24.2")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 application {
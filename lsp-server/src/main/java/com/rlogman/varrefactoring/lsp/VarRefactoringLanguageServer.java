@@ -1,13 +1,17 @@
 package com.rlogman.varrefactoring.lsp;
 
+import org.eclipse.lsp4j.ExecuteCommandOptions;
 import org.eclipse.lsp4j.InitializeParams;
 import org.eclipse.lsp4j.InitializeResult;
 import org.eclipse.lsp4j.ServerCapabilities;
 import org.eclipse.lsp4j.TextDocumentSyncKind;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.LanguageClientAware;
 import org.eclipse.lsp4j.services.LanguageServer;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.services.WorkspaceService;
 
+import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -15,14 +19,14 @@ import java.util.concurrent.CompletableFuture;
  * This can be used to provide the refactoring functionality to editors
  * that support Language Server Protocol.
  */
-public class VarRefactoringLanguageServer implements LanguageServer {
+public class VarRefactoringLanguageServer implements LanguageServer, LanguageClientAware {
     
     private final VarRefactoringTextDocumentService textDocumentService;
     private final VarRefactoringWorkspaceService workspaceService;
     
     public VarRefactoringLanguageServer() {
         this.textDocumentService = new VarRefactoringTextDocumentService();
-        this.workspaceService = new VarRefactoringWorkspaceService();
+        this.workspaceService = new VarRefactoringWorkspaceService(textDocumentService);
     }
     
     @Override
@@ -36,6 +40,10 @@ public class VarRefactoringLanguageServer implements LanguageServer {
         // Support code actions for refactoring
         capabilities.setCodeActionProvider(true);
         
+        // The whole-document code action runs as a command, applied through the client
+        capabilities.setExecuteCommandProvider(
+            new ExecuteCommandOptions(Collections.singletonList(VarRefactoringWorkspaceService.REFACTOR_COMMAND)));
+        
         InitializeResult result = new InitializeResult(capabilities);
         return CompletableFuture.completedFuture(result);
     }
@@ -52,6 +60,11 @@ public class VarRefactoringLanguageServer implements LanguageServer {
         System.exit(0);
     }
     
+    @Override
+    public void connect(LanguageClient client) {
+        workspaceService.connect(client);
+    }
+    
     @Override
     public TextDocumentService getTextDocumentService() {
         return textDocumentService;
@@ -77,6 +90,8 @@ public class VarRefactoringLanguageServer implements LanguageServer {
             System.out
         );
         
+        server.connect(launcher.getRemoteProxy());
+        
         // Start listening for requests
         launcher.startListening();
     }
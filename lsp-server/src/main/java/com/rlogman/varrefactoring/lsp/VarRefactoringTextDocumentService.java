@@ -1,17 +1,25 @@
 package com.rlogman.varrefactoring.lsp;
 
+import com.rlogman.varrefactoring.core.CancellationToken;
+import com.rlogman.varrefactoring.core.CandidateReport;
+import com.rlogman.varrefactoring.core.EditScript;
+import com.rlogman.varrefactoring.core.ProcessingResult;
 import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.ScopeIndex;
 import com.rlogman.varrefactoring.core.VarRefactoringProcessor;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.TextDocumentService;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * LSP text document service for handling Java var refactoring operations.
@@ -19,8 +27,13 @@ import java.util.concurrent.CompletableFuture;
 public class VarRefactoringTextDocumentService implements TextDocumentService {
     
     private final VarRefactoringProcessor processor;
-    private final Map<String, String> documentContents = new HashMap<>();
+    // Read by worker threads of asynchronous requests
+    private final Map<String, String> documentContents = new ConcurrentHashMap<>();
+    // Scope index of the current content of a document, built on the first code action
+    private final Map<String, ScopeIndex> scopeIndexes = new ConcurrentHashMap<>();
     private final String javaVersion = "11"; // Default Java version
+    /** Time a document may take; after that the edits found so far are returned. */
+    private static final Duration PROCESSING_TIMEOUT = Duration.ofSeconds(5);
     
     public VarRefactoringTextDocumentService() {
         // Create refactoring processor with default options
@@ -42,12 +55,21 @@ public class VarRefactoringTextDocumentService implements TextDocumentService {
             return CompletableFuture.completedFuture(codeActions);
         }
         
+        // Offer to convert just the selection when it holds eligible declarations
+        String content = documentContents.get(uri);
+        if (content != null) {
+            CodeAction selectionAction = convertSelection(uri, content, params.getRange());
+            if (selectionAction != null) {
+                codeActions.add(Either.forRight(selectionAction));
+            }
+        }
+        
         // Create a code action for converting to var
         CodeAction convertToVarAction = new CodeAction("Convert to 'var'");
         convertToVarAction.setKind(CodeActionKind.RefactorRewrite);
         
         // Create a command for this action
-        Command command = new Command("Convert to 'var'", "java.var.refactor", 
+        Command command = new Command("Convert to 'var'", VarRefactoringWorkspaceService.REFACTOR_COMMAND, 
                                       Collections.singletonList(uri));
         convertToVarAction.setCommand(command);
         
@@ -56,11 +78,36 @@ public class VarRefactoringTextDocumentService implements TextDocumentService {
         return CompletableFuture.completedFuture(codeActions);
     }
     
+    /**
+     * Create a code action that converts the eligible declarations in a range.
+     * Only the statements around the range are analyzed, with the cached scope index of
+     * the document, so the cost does not grow with the size of the document.
+     * 
+     * @return The code action, or null if no declaration in the range is eligible
+     */
+    private CodeAction convertSelection(String uri, String content, Range range) {
+        int start = offsetOf(content, range.getStart());
+        int end = Math.max(start, offsetOf(content, range.getEnd()));
+        ScopeIndex scopes = scopeIndexes.computeIfAbsent(uri, key -> ScopeIndex.build(content));
+        CandidateReport report = processor.analyzeRange(content, javaVersion, start, end, scopes);
+        if (report.acceptedCount() == 0) {
+            return null;
+        }
+        
+        CodeAction action = new CodeAction("Convert to 'var' in selection");
+        action.setKind(CodeActionKind.RefactorRewrite);
+        WorkspaceEdit edit = new WorkspaceEdit();
+        edit.setChanges(Collections.singletonMap(uri, toTextEdits(content, report.toEditScript())));
+        action.setEdit(edit);
+        return action;
+    }
+    
     @Override
     public void didOpen(DidOpenTextDocumentParams params) {
         // Store the document content
         documentContents.put(params.getTextDocument().getUri(), 
                            params.getTextDocument().getText());
+        scopeIndexes.remove(params.getTextDocument().getUri());
     }
     
     @Override
@@ -71,6 +118,7 @@ public class VarRefactoringTextDocumentService implements TextDocumentService {
             // Use the latest change's full content
             String newContent = changes.get(changes.size() - 1).getText();
             documentContents.put(params.getTextDocument().getUri(), newContent);
+            scopeIndexes.remove(params.getTextDocument().getUri());
         }
     }
     
@@ -78,6 +126,7 @@ public class VarRefactoringTextDocumentService implements TextDocumentService {
     public void didClose(DidCloseTextDocumentParams params) {
         // Remove document from the cache
         documentContents.remove(params.getTextDocument().getUri());
+        scopeIndexes.remove(params.getTextDocument().getUri());
     }
     
     @Override
@@ -93,31 +142,123 @@ public class VarRefactoringTextDocumentService implements TextDocumentService {
      * @return WorkspaceEdit with the changes
      */
     public WorkspaceEdit processDocument(String uri) {
+        return processDocument(uri, CancellationToken.NONE);
+    }
+    
+    /**
+     * Process a document on a worker thread. Cancelling the request from the client
+     * stops processing at the next declaration. Used by the {@code java.var.refactor}
+     * command of {@link VarRefactoringWorkspaceService}.
+     * 
+     * @param uri Document URI
+     * @return WorkspaceEdit with the changes
+     */
+    public CompletableFuture<WorkspaceEdit> processDocumentAsync(String uri) {
+        return CompletableFutures.computeAsync(cancelChecker -> processDocument(uri, cancelChecker::isCanceled));
+    }
+    
+    private WorkspaceEdit processDocument(String uri, CancellationToken cancellation) {
         String content = documentContents.get(uri);
         if (content == null) {
             return new WorkspaceEdit();
         }
         
-        // Process the content to replace explicit types with 'var'
-        String processedContent = processor.processFile(content, javaVersion);
+        // Compute only the spans that change instead of rewriting the whole document;
+        // a document that takes too long still gets the edits found so far
+        ProcessingResult result = processor.processFile(content, javaVersion, PROCESSING_TIMEOUT, cancellation);
+        EditScript script = result.getEdits();
         
         // Create a workspace edit with the changes
         WorkspaceEdit edit = new WorkspaceEdit();
         
-        // Create a text edit for the entire document
-        TextEdit textEdit = new TextEdit(
-            new Range(new Position(0, 0), new Position(Integer.MAX_VALUE, 0)),
-            processedContent
-        );
-        
-        // Add the edit to the workspace edit
+        // Add the edits to the workspace edit
         Map<String, List<TextEdit>> changes = new HashMap<>();
-        changes.put(uri, Collections.singletonList(textEdit));
+        changes.put(uri, toTextEdits(content, script));
         edit.setChanges(changes);
         
         return edit;
     }
     
+    /**
+     * Convert an edit script into LSP text edits.
+     * Offsets are mapped to line/character positions in a single forward pass, which
+     * works because the script is sorted by offset.
+     * 
+     * @param content Document content the script was computed from
+     * @param script Edits in ascending offset order
+     * @return One text edit per replaced span
+     */
+    static List<TextEdit> toTextEdits(String content, EditScript script) {
+        if (script.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<TextEdit> edits = new ArrayList<>(script.size());
+        int line = 0;
+        int lineStart = 0;
+        int scanned = 0;
+        for (int i = 0; i < script.size(); i++) {
+            int start = script.offset(i);
+            int end = start + script.length(i);
+            
+            // Advance the line counter up to the start of the edit
+            for (; scanned < start; scanned++) {
+                if (endsLine(content, scanned)) {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+            Position startPosition = new Position(line, start - lineStart);
+            
+            // A type may span lines, e.g. a generic argument list split after a comma
+            for (; scanned < end; scanned++) {
+                if (endsLine(content, scanned)) {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+            Position endPosition = new Position(line, end - lineStart);
+            
+            edits.add(new TextEdit(new Range(startPosition, endPosition), script.replacement(i)));
+        }
+        return edits;
+    }
+    
+    /**
+     * Convert an LSP position into an offset, clamped to the content.
+     * A character past the end of its line is clamped to the line terminator, as the
+     * protocol specifies, instead of running into the following lines.
+     * 
+     * @param content Document content
+     * @param position Line and character, with the same line terminators as {@link #endsLine}
+     * @return The character offset
+     */
+    static int offsetOf(String content, Position position) {
+        int offset = 0;
+        for (int line = 0; line < position.getLine() && offset < content.length(); offset++) {
+            if (endsLine(content, offset)) {
+                line++;
+            }
+        }
+        int end = Math.min(content.length(), offset + position.getCharacter());
+        for (; offset < end; offset++) {
+            char c = content.charAt(offset);
+            if (c == '\n' || c == '\r') {
+                return offset;
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Check whether the character at the given offset terminates a line.
+     * LSP treats \n, \r\n and a lone \r as line terminators.
+     */
+    private static boolean endsLine(String content, int offset) {
+        char c = content.charAt(offset);
+        return c == '\n' || (c == '\r' && (offset + 1 >= content.length() || content.charAt(offset + 1) != '\n'));
+    }
+    
     // Required methods from TextDocumentService interface with minimal implementations
     
     @Override
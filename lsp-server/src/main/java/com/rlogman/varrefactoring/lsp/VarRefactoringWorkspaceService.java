@@ -1,12 +1,16 @@
 package com.rlogman.varrefactoring.lsp;
 
+import com.google.gson.JsonPrimitive;
+import org.eclipse.lsp4j.ApplyWorkspaceEditParams;
 import org.eclipse.lsp4j.DidChangeConfigurationParams;
 import org.eclipse.lsp4j.DidChangeWatchedFilesParams;
 import org.eclipse.lsp4j.ExecuteCommandParams;
 import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.WorkspaceEdit;
 import org.eclipse.lsp4j.WorkspaceSymbol;
 import org.eclipse.lsp4j.WorkspaceSymbolParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.WorkspaceService;
 
 import java.util.ArrayList;
@@ -18,6 +22,23 @@ import java.util.concurrent.CompletableFuture;
  */
 public class VarRefactoringWorkspaceService implements WorkspaceService {
     
+    /** Command that converts every eligible declaration of the document given as argument. */
+    static final String REFACTOR_COMMAND = "java.var.refactor";
+    
+    private final VarRefactoringTextDocumentService textDocumentService;
+    private volatile LanguageClient client;
+    
+    public VarRefactoringWorkspaceService(VarRefactoringTextDocumentService textDocumentService) {
+        this.textDocumentService = textDocumentService;
+    }
+    
+    /**
+     * Set the client that commands apply their edits through.
+     */
+    public void connect(LanguageClient client) {
+        this.client = client;
+    }
+    
     @Override
     public CompletableFuture<Either<List<? extends SymbolInformation>, List<? extends WorkspaceSymbol>>> symbol(WorkspaceSymbolParams params) {
         // Return an empty list of SymbolInformation
@@ -42,15 +63,23 @@ public class VarRefactoringWorkspaceService implements WorkspaceService {
     @Override
     public CompletableFuture<Object> executeCommand(ExecuteCommandParams params) {
         String command = params.getCommand();
+        LanguageClient client = this.client;
         
-        if ("java.var.refactor".equals(command) && !params.getArguments().isEmpty()) {
-            // Extract the document URI from the arguments
-            String uri = params.getArguments().get(0).toString();
+        if (REFACTOR_COMMAND.equals(command) && !params.getArguments().isEmpty() && client != null) {
+            // Extract the document URI from the arguments; lsp4j passes them as JSON elements
+            Object argument = params.getArguments().get(0);
+            String uri = argument instanceof JsonPrimitive
+                ? ((JsonPrimitive) argument).getAsString()
+                : argument.toString();
             
-            // Process the document
-            // In a real implementation, we would need access to the TextDocumentService
-            // This is simplified for demonstration
-            return CompletableFuture.completedFuture(null);
+            // Process the document on a worker thread and ask the client to apply the edits
+            CompletableFuture<WorkspaceEdit> edit = textDocumentService.processDocumentAsync(uri);
+            CompletableFuture<Object> result = edit
+                .thenCompose(changes -> client.applyEdit(new ApplyWorkspaceEditParams(changes, "Convert to 'var'")))
+                .thenApply(response -> null);
+            // Cancelling the request stops processing; a finished edit is not affected
+            result.whenComplete((ignored, error) -> edit.cancel(true));
+            return result;
         }
         
         return CompletableFuture.completedFuture(null);
@@ -0,0 +1,100 @@
+package com.rlogman.varrefactoring.lsp;
+
+import com.rlogman.varrefactoring.core.EditScript;
+import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.VarRefactoringProcessor;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VarRefactoringTextDocumentServiceTest {
+
+    private final VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions());
+
+    @Test
+    void shouldMapEditsAcrossCrlfLines() {
+        // Given
+        String content = "class A {\r\n    void m() {\r\n        String s = new String(\"x\");\r\n    }\r\n}\r\n";
+
+        // When
+        List<TextEdit> edits = VarRefactoringTextDocumentService.toTextEdits(content, processor.computeEdits(content, "11"));
+
+        // Then
+        assertThat(edits).hasSize(1);
+        assertThat(edits.get(0).getRange()).isEqualTo(range(2, 8, 2, 14));
+        assertThat(edits.get(0).getNewText()).isEqualTo("var");
+    }
+
+    @Test
+    void shouldMapEditsAcrossLoneCrLines() {
+        // Given
+        String content = "class A {\r    void m() {\r        String s = new String(\"x\");\r    }\r}\r";
+
+        // When
+        List<TextEdit> edits = VarRefactoringTextDocumentService.toTextEdits(content, processor.computeEdits(content, "11"));
+
+        // Then
+        assertThat(edits).hasSize(1);
+        assertThat(edits.get(0).getRange()).isEqualTo(range(2, 8, 2, 14));
+    }
+
+    @Test
+    void shouldMapTypesSpanningLines() {
+        // Given
+        String lf = "class A {\n    void m() {\n        ArrayList<\n            String> list = new ArrayList<String>();\n    }\n}\n";
+        String crlf = lf.replace("\n", "\r\n");
+
+        // When
+        List<TextEdit> lfEdits = VarRefactoringTextDocumentService.toTextEdits(lf, processor.computeEdits(lf, "11"));
+        List<TextEdit> crlfEdits = VarRefactoringTextDocumentService.toTextEdits(crlf, processor.computeEdits(crlf, "11"));
+
+        // Then
+        assertThat(lfEdits).hasSize(1);
+        assertThat(lfEdits.get(0).getRange()).isEqualTo(range(2, 8, 3, 19));
+        assertThat(crlfEdits).hasSize(1);
+        assertThat(crlfEdits.get(0).getRange()).isEqualTo(range(2, 8, 3, 19));
+    }
+
+    @Test
+    void shouldMapPositionsBackToScriptOffsets() {
+        // Given
+        String content = "class A {\r\n    void m() {\r        ArrayList<\r\n            String> list = new ArrayList<String>();\n"
+            + "        String s = new String(\"x\");\r\n    }\r\n}\r\n";
+        EditScript script = processor.computeEdits(content, "11");
+
+        // When
+        List<TextEdit> edits = VarRefactoringTextDocumentService.toTextEdits(content, script);
+
+        // Then
+        assertThat(edits).hasSize(script.size());
+        for (int i = 0; i < script.size(); i++) {
+            Range range = edits.get(i).getRange();
+            assertThat(VarRefactoringTextDocumentService.offsetOf(content, range.getStart())).isEqualTo(script.offset(i));
+            assertThat(VarRefactoringTextDocumentService.offsetOf(content, range.getEnd()))
+                .isEqualTo(script.offset(i) + script.length(i));
+        }
+    }
+
+    @Test
+    void shouldClampCharacterToLineTerminator() {
+        // Given
+        String content = "ab\r\ncd\ref\ngh";
+
+        // When / Then
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(0, 10))).isEqualTo(2);
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(1, 10))).isEqualTo(6);
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(2, 10))).isEqualTo(9);
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(2, 1))).isEqualTo(8);
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(3, 10))).isEqualTo(content.length());
+        assertThat(VarRefactoringTextDocumentService.offsetOf(content, new Position(7, 0))).isEqualTo(content.length());
+    }
+
+    private static Range range(int startLine, int startCharacter, int endLine, int endCharacter) {
+        return new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter));
+    }
+}
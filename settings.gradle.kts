@@ -7,6 +7,10 @@ include("core")
 include("common")
 include("intellij-plugin")
 include("lsp-server")
+include("cli")
+
+// Microbenchmarks - not part of production artifacts
+include("benchmarks")
 
 // Test data module - not part of production artifacts
 include("test-data")
\ No newline at end of file
@@ -15,5 +15,18 @@ sourceSets {
 dependencies {
     // Direct dependency on core module
     implementation(project(":core"))
-    implementation(project(":common"))
+}
+
+// Generate a synthetic source tree, e.g.
+// ./gradlew :test-data:generateCorpus -Pcorpus.dir=/tmp/corpus -Pcorpus.files=100000 -Pcorpus.seed=1
+tasks.register<JavaExec>("generateCorpus") {
+    group = "verification"
+    description = "Generates a synthetic Java source tree for scale and stress testing"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("test.com.rlogman.varrefactoring.CorpusGenerator")
+    args(
+        findProperty("corpus.dir")?.toString() ?: layout.buildDirectory.dir("corpus").get().asFile.path,
+        findProperty("corpus.files")?.toString() ?: "1000",
+        findProperty("corpus.seed")?.toString() ?: "0"
+    )
 }
@@ -0,0 +1,287 @@
+package test.com.rlogman.varrefactoring;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates synthetic Java source trees for scale and stress testing.
+ * <p>
+ * Every file is derived from the seed and its index only, so a corpus is reproducible
+ * without being checked in, and any single file can be regenerated on its own. Files
+ * mix field, local, for and for-each declarations, deeply nested blocks, generics,
+ * lambdas, anonymous classes, comments and strings that look like declarations, and
+ * pathologically long lines. All generated files are valid Java 17.
+ * <p>
+ * Usage: {@code CorpusGenerator <output directory> <file count> [seed]}
+ */
+public class CorpusGenerator {
+    /** Files per generated package, so that no directory grows too large. */
+    public static final int FILES_PER_PACKAGE = 1000;
+
+    private static final int MAX_NESTING = 5;
+
+    /** One in this many statements is a long line, so that an average file stays a few KB. */
+    private static final int LONG_LINE_ODDS = 150;
+
+    private static final String[][] TYPED_INITIALIZERS = {
+        {"String", "\"value\""},
+        {"int", "42"},
+        {"long", "42L"},
+        {"double", "0.5"},
+        {"char", "'c'"},
+        {"boolean", "true"},
+        {"StringBuilder", "new StringBuilder()"},
+        {"List<String>", "new ArrayList<String>()"},
+        {"Map<String, List<Integer>>", "new HashMap<String, List<Integer>>()"},
+        {"Map<String, Integer>", "new HashMap<>()"},
+        {"Object", "\"text\""},
+        {"CharSequence", "new StringBuilder()"},
+        {"String", "compute()"},
+        {"int[]", "new int[] { 1, 2, 3 }"},
+        {"Integer", "Integer.valueOf(7)"},
+    };
+
+    private final long seed;
+
+    /**
+     * @param seed Seed of the corpus; the same seed always produces the same files
+     */
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <output directory> <file count> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+        int files = Integer.parseInt(args[1]);
+        new CorpusGenerator(seed).writeTree(Paths.get(args[0]), files);
+        System.out.println("Generated " + files + " files in " + args[0]);
+    }
+
+    /**
+     * Write a source tree of {@code fileCount} files below {@code root}.
+     *
+     * @param root The source root to write to
+     * @param fileCount The number of files
+     */
+    public void writeTree(Path root, int fileCount) throws IOException {
+        for (int i = 0; i < fileCount; i++) {
+            Path file = root.resolve(relativePath(i));
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, generate(i));
+        }
+    }
+
+    /**
+     * @return The path of a file relative to the source root, e.g. {@code gen/p0/C17.java}
+     */
+    public String relativePath(int index) {
+        return "gen/" + packageName(index).substring(4) + "/" + className(index) + ".java";
+    }
+
+    /**
+     * Generate the content of one file.
+     *
+     * @param index The index of the file in the corpus
+     * @return The Java source of the file
+     */
+    public String generate(int index) {
+        // Mixing the index into the seed keeps files independent of each other
+        FileWriter writer = new FileWriter(new Random(seed * 0x9E3779B97F4A7C15L + index));
+        return writer.write(packageName(index), className(index));
+    }
+
+    private static String packageName(int index) {
+        return "gen.p" + index / FILES_PER_PACKAGE;
+    }
+
+    private static String className(int index) {
+        return "C" + index;
+    }
+
+    /**
+     * Writes one file; names are numbered per file so they never clash.
+     */
+    private static final class FileWriter {
+        private final Random random;
+        private final StringBuilder out = new StringBuilder(4096);
+        private int names;
+
+        FileWriter(Random random) {
+            this.random = random;
+        }
+
+        String write(String packageName, String className) {
+            out.append("package ").append(packageName).append(";\n\n")
+                .append("import java.util.*;\n")
+                .append("import java.util.function.*;\n\n")
+                .append("/**\n * Generated. Example: {@code String text = \"value\";}\n */\n")
+                .append("public class ").append(className).append(" {\n");
+            int fields = 1 + random.nextInt(6);
+            for (int i = 0; i < fields; i++) {
+                field("    ");
+            }
+            out.append("\n    static String compute() { return \"computed\"; }\n");
+            int methods = 1 + random.nextInt(8);
+            for (int i = 0; i < methods; i++) {
+                method("    ");
+            }
+            if (random.nextInt(4) == 0) {
+                nestedClass();
+            }
+            return out.append("}\n").toString();
+        }
+
+        private void field(String indent) {
+            String[] typed = typed();
+            switch (random.nextInt(4)) {
+                case 0:
+                    out.append(indent).append("private static final ");
+                    break;
+                case 1:
+                    // Several declarators can never become 'var'
+                    out.append(indent).append("int ").append(name()).append(" = 1, ")
+                        .append(name()).append(" = 2;\n");
+                    return;
+                default:
+                    out.append(indent).append("private ");
+            }
+            out.append(typed[0]).append(' ').append(name()).append(" = ").append(typed[1]).append(";\n");
+        }
+
+        private void method(String indent) {
+            out.append('\n').append(indent).append("void ").append(name()).append("(List<String> input) {\n");
+            block(indent + "    ", random.nextInt(MAX_NESTING));
+            out.append(indent).append("}\n");
+        }
+
+        private void nestedClass() {
+            out.append("\n    static class Inner").append(names++).append(" {\n");
+            field("        ");
+            method("        ");
+            out.append("    }\n");
+        }
+
+        private void block(String indent, int depth) {
+            int statements = 1 + random.nextInt(4);
+            for (int i = 0; i < statements; i++) {
+                statement(indent, depth);
+            }
+        }
+
+        private void statement(String indent, int depth) {
+            if (random.nextInt(LONG_LINE_ODDS) == 0) {
+                longLine(indent);
+                return;
+            }
+            int kind = random.nextInt(depth > 0 ? 14 : 9);
+            switch (kind) {
+                case 0:
+                    out.append(indent).append("// ").append(typed()[0]).append(' ').append(name())
+                        .append(" = ").append(typed()[1]).append(";\n");
+                    break;
+                case 1:
+                    out.append(indent).append("/* ").append(typed()[0]).append(' ').append(name())
+                        .append(" = ").append(typed()[1]).append("; */\n");
+                    break;
+                case 2:
+                    out.append(indent).append("String ").append(name())
+                        .append(" = \"int ").append(name()).append(" = 1; { }\";\n");
+                    break;
+                case 3:
+                    out.append(indent).append("final ");
+                    local(indent, false);
+                    break;
+                default:
+                    if (kind < 9) {
+                        local(indent, true);
+                    } else {
+                        nested(indent, depth - 1, kind);
+                    }
+            }
+        }
+
+        private void local(String indent, boolean indented) {
+            String[] typed = typed();
+            if (indented) {
+                out.append(indent);
+            }
+            out.append(typed[0]).append(' ').append(name()).append(" = ").append(typed[1]).append(";\n");
+        }
+
+        private void nested(String indent, int depth, int kind) {
+            String inner = indent + "    ";
+            switch (kind) {
+                case 9:
+                    out.append(indent).append("for (int ").append(name()).append(" = 0; ")
+                        .append("input.size() > 0; ) {\n");
+                    block(inner, depth);
+                    out.append(inner).append("break;\n").append(indent).append("}\n");
+                    break;
+                case 10:
+                    out.append(indent).append("for (String ").append(name()).append(" : input) {\n");
+                    block(inner, depth);
+                    out.append(indent).append("}\n");
+                    break;
+                case 11:
+                    out.append(indent).append("Runnable ").append(name()).append(" = () -> {\n");
+                    block(inner, depth);
+                    out.append(indent).append("};\n");
+                    break;
+                case 12:
+                    out.append(indent).append("Comparator<String> ").append(name())
+                        .append(" = new Comparator<String>() {\n")
+                        .append(inner).append("private String ").append(name()).append(" = \"field\";\n\n")
+                        .append(inner).append("@Override\n")
+                        .append(inner).append("public int compare(String left, String right) {\n");
+                    block(inner + "    ", depth);
+                    out.append(inner).append("    return 0;\n")
+                        .append(inner).append("}\n")
+                        .append(indent).append("};\n");
+                    break;
+                default:
+                    out.append(indent).append("if (!input.isEmpty()) {\n");
+                    block(inner, depth);
+                    out.append(indent).append("} else {\n");
+                    block(inner, depth);
+                    out.append(indent).append("}\n");
+            }
+        }
+
+        /**
+         * A statement of several thousand characters on a single line.
+         */
+        private void longLine(String indent) {
+            out.append(indent);
+            if (random.nextBoolean()) {
+                int declarations = 50 + random.nextInt(200);
+                for (int i = 0; i < declarations; i++) {
+                    String[] typed = typed();
+                    out.append(typed[0]).append(' ').append(name()).append(" = ").append(typed[1]).append("; ");
+                }
+            } else {
+                out.append("String ").append(name()).append(" = \"\"");
+                int terms = 200 + random.nextInt(800);
+                for (int i = 0; i < terms; i++) {
+                    out.append(" + \"").append(i).append('"');
+                }
+                out.append(';');
+            }
+            out.append('\n');
+        }
+
+        private String[] typed() {
+            return TYPED_INITIALIZERS[random.nextInt(TYPED_INITIALIZERS.length)];
+        }
+
+        private String name() {
+            return "v" + names++;
+        }
+    }
+}
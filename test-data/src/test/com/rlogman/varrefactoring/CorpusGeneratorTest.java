@@ -0,0 +1,93 @@
+package test.com.rlogman.varrefactoring;
+
+import com.rlogman.varrefactoring.core.RefactoringOptions;
+import com.rlogman.varrefactoring.core.VarRefactoringProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorpusGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldGenerateSameFilesForSameSeed() {
+        // Given
+        CorpusGenerator first = new CorpusGenerator(7);
+        CorpusGenerator second = new CorpusGenerator(7);
+        CorpusGenerator other = new CorpusGenerator(8);
+
+        // When / Then
+        for (int i = 0; i < 20; i++) {
+            assertThat(first.generate(i)).isEqualTo(second.generate(i));
+            assertThat(first.generate(i)).isNotEqualTo(other.generate(i));
+        }
+    }
+
+    @Test
+    void shouldWriteTreeOfPackages() throws IOException {
+        // Given
+        CorpusGenerator generator = new CorpusGenerator(1);
+        int files = CorpusGenerator.FILES_PER_PACKAGE + 5;
+
+        // When
+        generator.writeTree(directory, files);
+
+        // Then
+        assertThat(Files.readString(directory.resolve("gen/p0/C0.java"))).isEqualTo(generator.generate(0));
+        assertThat(Files.readString(directory.resolve("gen/p1/C1004.java"))).startsWith("package gen.p1;");
+        try (Stream<Path> paths = Files.walk(directory)) {
+            assertThat(paths.filter(Files::isRegularFile).count()).isEqualTo(files);
+        }
+    }
+
+    @Test
+    void shouldGenerateValidJavaThatStaysValidAfterRefactoring() throws IOException {
+        // Given
+        CorpusGenerator generator = new CorpusGenerator(42);
+        VarRefactoringProcessor processor = new VarRefactoringProcessor(new RefactoringOptions());
+        List<Path> original = new ArrayList<>();
+        List<Path> refactored = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String content = generator.generate(i);
+            original.add(write("original/" + generator.relativePath(i), content));
+            refactored.add(write("refactored/" + generator.relativePath(i), processor.processFile(content, "17")));
+        }
+
+        // When / Then
+        assertThat(compile(original)).isEmpty();
+        assertThat(compile(refactored)).isEmpty();
+    }
+
+    private Path write(String relativePath, String content) throws IOException {
+        Path file = directory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+
+    /**
+     * @return The compiler's diagnostics, empty if the files compile
+     */
+    private String compile(List<Path> files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Path classes = Files.createTempDirectory(directory, "classes");
+        List<String> arguments = new ArrayList<>(List.of("-nowarn", "-d", classes.toString()));
+        arguments.addAll(files.stream().map(Path::toString).collect(Collectors.toList()));
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        compiler.run(null, null, diagnostics, arguments.toArray(new String[0]));
+        return diagnostics.toString();
+    }
+}